@@ -0,0 +1,77 @@
+package bench;
+
+import dao.DbManager;
+import dao.ProductDao;
+import dao.ProductDaoImpl;
+import model.Product;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A throwaway SQLite file seeded with a synthetic catalog. Every benchmark
+ * trial gets its own, so runs never touch warehouse.db or each other.
+ */
+final class BenchDb implements AutoCloseable {
+
+    private final Path file;
+
+    private BenchDb(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates the schema and {@code rows} products: SKU-00000001..., names from
+     * a small vocabulary, and every tenth product at or below its min_stock.
+     */
+    static BenchDb create(int rows, int poolSize) throws Exception {
+        Path file = Files.createTempFile("wms-bench-", ".db");
+        DbManager.useDatabase("jdbc:sqlite:" + file.toAbsolutePath(), poolSize);
+        DbManager.initDatabase();
+        ProductDao dao = new ProductDaoImpl();
+        List<Product> chunk = new ArrayList<>(ProductDao.BATCH_CHUNK);
+        for (int i = 1; i <= rows; i++) {
+            chunk.add(product(i));
+            if (chunk.size() == ProductDao.BATCH_CHUNK) {
+                dao.createAll(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) dao.createAll(chunk);
+        return new BenchDb(file);
+    }
+
+    static String sku(int i) {
+        return String.format("SKU-%08d", i);
+    }
+
+    private static final String[] WORDS = {
+            "steel", "bolt", "washer", "cable", "widget", "bracket", "hinge", "panel",
+            "screw", "valve", "gasket", "spring", "clamp", "relay", "switch", "sensor"};
+
+    private static Product product(int i) {
+        String name = WORDS[i % WORDS.length] + " " + WORDS[(i / 16) % WORDS.length] + " " + (i % 997);
+        int min = 10;
+        int qty = i % 10 == 0 ? 5 : 100 + i % 50;
+        Product p = new Product(sku(i), name, 1 + (i % 500) / 10.0, qty, min);
+        p.setDescription("bench item " + i);
+        return p;
+    }
+
+    @Override
+    public void close() throws IOException {
+        DbManager.shutdown();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Path.of(file + "-wal"));
+        Files.deleteIfExists(Path.of(file + "-shm"));
+        Files.deleteIfExists(Path.of(file + ".snapshot"));
+        // site databases created by the trial
+        try (DirectoryStream<Path> sites = Files.newDirectoryStream(file.getParent(), file.getFileName() + ".site-*")) {
+            for (Path site : sites) Files.deleteIfExists(site);
+        }
+    }
+}
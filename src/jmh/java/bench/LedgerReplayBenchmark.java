@@ -0,0 +1,66 @@
+package bench;
+
+import dao.ProductDao;
+import dao.ProductDaoImpl;
+import dao.StockLedgerDaoImpl;
+import model.StockDrift;
+import model.StockMovement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock reconciliation: a full replay of the ledger tail (every movement
+ * since the last stock snapshot) against product.quantity, per replay thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LedgerReplayBenchmark {
+
+    @Param({"100000"})
+    int rows;
+
+    @Param({"1000000", "5000000"})
+    int movements;
+
+    @Param({"1", "4"})
+    int threads;
+
+    private BenchDb db;
+    private StockLedgerDaoImpl ledger;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, 4);
+        ProductDao dao = new ProductDaoImpl();
+        Random random = new Random(42);
+        List<StockMovement> batch = new ArrayList<>(ProductDao.BATCH_CHUNK);
+        for (int i = 0; i < movements; i++) {
+            batch.add(new StockMovement(1 + random.nextInt(rows), 1 + random.nextInt(5), "receive", null));
+            if (batch.size() == ProductDao.BATCH_CHUNK) {
+                dao.changeQuantities(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) dao.changeQuantities(batch);
+        System.setProperty("wms.ledger.replayThreads", String.valueOf(threads));
+        ledger = new StockLedgerDaoImpl();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Benchmark
+    public List<StockDrift> findDrift() throws Exception {
+        return ledger.findDrift();
+    }
+}
@@ -0,0 +1,44 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import service.WarehouseService;
+
+import java.util.concurrent.TimeUnit;
+
+/** Full cache reloads (as after an import) per catalog size and cache store; bounded only starts cold. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadCacheBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int rows;
+
+    @Param({"map", "columnar", "bounded"})
+    String store;
+
+    private BenchDb db;
+    private WarehouseService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, 4);
+        System.setProperty("wms.cache.store", store);
+        service = new WarehouseService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.shutdown();
+        db.close();
+    }
+
+    @Benchmark
+    public int loadCache() throws Exception {
+        service.loadCache();
+        return service.productCount();
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import dao.ProductDao;
+import dao.ProductDaoImpl;
+import model.Product;
+import org.openjdk.jmh.annotations.*;
+import service.WarehouseService;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Single-product reads from SQLite (pooled or not) and from the service cache. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"100000"})
+    int rows;
+
+    @Param({"0", "4"})
+    int poolSize;
+
+    private BenchDb db;
+    private ProductDao dao;
+    private WarehouseService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, poolSize);
+        dao = new ProductDaoImpl();
+        service = new WarehouseService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.shutdown();
+        db.close();
+    }
+
+    private int randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(rows);
+    }
+
+    @Benchmark
+    public Optional<Product> findById() throws Exception {
+        return dao.findById(randomId());
+    }
+
+    @Benchmark
+    public Optional<Product> findBySku() throws Exception {
+        return dao.findBySku(BenchDb.sku(randomId()));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<Product> findByIdConcurrent() throws Exception {
+        return dao.findById(randomId());
+    }
+
+    @Benchmark
+    public Optional<Product> findProductCached() {
+        return service.findProduct(randomId());
+    }
+}
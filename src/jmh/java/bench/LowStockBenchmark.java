@@ -0,0 +1,41 @@
+package bench;
+
+import model.Product;
+import org.openjdk.jmh.annotations.*;
+import service.WarehouseService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** The low-stock list; BenchDb seeds every tenth product at or below its minimum. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class LowStockBenchmark {
+
+    @Param({"100000"})
+    int rows;
+
+    private BenchDb db;
+    private WarehouseService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, 4);
+        service = new WarehouseService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.shutdown();
+        db.close();
+    }
+
+    @Benchmark
+    public List<Product> findLowStock() {
+        return service.findLowStock();
+    }
+}
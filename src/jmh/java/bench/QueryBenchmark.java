@@ -0,0 +1,50 @@
+package bench;
+
+import model.Product;
+import org.openjdk.jmh.annotations.*;
+import service.WarehouseService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** In-memory catalog search, ranked, unbounded and top-50. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"100000"})
+    int rows;
+
+    // exact SKU, SKU prefix, common word, rare substring, no match
+    @Param({"SKU-00004242", "SKU-0000", "bolt", "ket 99", "zzz"})
+    String query;
+
+    private BenchDb db;
+    private WarehouseService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, 4);
+        service = new WarehouseService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.shutdown();
+        db.close();
+    }
+
+    @Benchmark
+    public List<Product> searchByName() {
+        return service.searchByName(query);
+    }
+
+    @Benchmark
+    public List<Product> searchTop50() {
+        return service.search(query, 50);
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import model.BinStock;
+import model.Location;
+import org.openjdk.jmh.annotations.*;
+import service.WarehouseService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bin-level receipts from 8 threads spread over 1 or 4 sites. Each site is
+ * its own database file, so with more sites fewer writers share a lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class SiteMoveBenchmark {
+
+    private static final int BINS_PER_SITE = 50;
+
+    @Param({"10000"})
+    int rows;
+
+    @Param({"1", "4"})
+    int sites;
+
+    private BenchDb db;
+    private WarehouseService service;
+    private final List<List<Location>> bins = new ArrayList<>();
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, 4);
+        service = new WarehouseService();
+        for (int s = 0; s < sites; s++) {
+            String code = "S" + s;
+            service.createSite(code, "Site " + s);
+            List<Location> locations = new ArrayList<>(BINS_PER_SITE);
+            for (int b = 0; b < BINS_PER_SITE; b++) locations.add(service.createLocation(code, "A", "A-" + b));
+            bins.add(locations);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.shutdown();
+        db.close();
+    }
+
+    /** The site a benchmark thread works at, assigned round-robin. */
+    @State(Scope.Thread)
+    public static class Site {
+        int index = -1;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public BinStock receiveConcurrent(Site site) throws Exception {
+        if (site.index < 0) site.index = nextThread.getAndIncrement() % sites;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Location> locations = bins.get(site.index);
+        return service.moveBinStock(locations.get(random.nextInt(locations.size())), 1 + random.nextInt(rows), 1, "bench", null);
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import dao.ProductDao;
+import dao.ProductDaoImpl;
+import model.Product;
+import model.StockLevel;
+import org.openjdk.jmh.annotations.*;
+import service.WarehouseService;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Barcode scans: SKU lookups through the cache's SKU index against the
+ * indexed SQLite query, and a full scan (lookup plus stock write).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SkuScanBenchmark {
+
+    @Param({"1000000"})
+    int rows;
+
+    @Param({"map", "columnar"})
+    String store;
+
+    private BenchDb db;
+    private ProductDao dao;
+    private WarehouseService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, 4);
+        System.setProperty("wms.cache.store", store);
+        dao = new ProductDaoImpl();
+        service = new WarehouseService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.shutdown();
+        db.close();
+    }
+
+    /** Receives then dispatches one unit per thread, so quantities stay put. */
+    @State(Scope.Thread)
+    public static class Direction {
+        boolean in;
+    }
+
+    private String randomSku() {
+        return BenchDb.sku(1 + ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    @Benchmark
+    public Optional<Product> findProductBySku() throws Exception {
+        return service.findProductBySku(randomSku());
+    }
+
+    @Benchmark
+    public Optional<Product> findBySkuDao() throws Exception {
+        return dao.findBySku(randomSku());
+    }
+
+    @Benchmark
+    public StockLevel scan(Direction d) throws Exception {
+        d.in = !d.in;
+        String sku = randomSku();
+        return (d.in ? service.receiveBySku(sku, 1, "bench") : service.dispatchBySku(sku, 1, "bench")).get();
+    }
+}
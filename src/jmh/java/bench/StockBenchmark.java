@@ -0,0 +1,77 @@
+package bench;
+
+import dao.ProductDao;
+import dao.ProductDaoImpl;
+import model.StockLevel;
+import org.openjdk.jmh.annotations.*;
+import service.WarehouseService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock movements end to end (service, group-commit writer, SQLite) and
+ * straight through the DAO, with and without the connection pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class StockBenchmark {
+
+    @Param({"10000"})
+    int rows;
+
+    @Param({"0", "4"})
+    int poolSize;
+
+    private BenchDb db;
+    private WarehouseService service;
+    private ProductDao dao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, poolSize);
+        service = new WarehouseService();
+        dao = new ProductDaoImpl();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.shutdown();
+        db.close();
+    }
+
+    /** Alternates +1/-1 per thread, so quantities stay put however long the run. */
+    @State(Scope.Thread)
+    public static class Direction {
+        boolean up;
+
+        int next() {
+            up = !up;
+            return up ? 1 : -1;
+        }
+    }
+
+    private int randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(rows);
+    }
+
+    @Benchmark
+    public boolean changeStock(Direction d) throws Exception {
+        return service.changeStock(randomId(), d.next(), "bench", null);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean changeStockConcurrent(Direction d) throws Exception {
+        return service.changeStock(randomId(), d.next(), "bench", null);
+    }
+
+    @Benchmark
+    public StockLevel changeQuantityDao(Direction d) throws Exception {
+        return dao.changeQuantity(randomId(), d.next(), "bench", null);
+    }
+}
@@ -0,0 +1,77 @@
+package bench;
+
+import app.UI.ProductTableModel;
+import model.Product;
+import org.openjdk.jmh.annotations.*;
+import service.WarehouseService;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The product table's model, headless: a full refresh (re-count plus the first
+ * visible page) and jumps to random rows, which load their page on demand.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx4g"})
+public class TableModelBenchmark {
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    private BenchDb db;
+    private WarehouseService service;
+    private ProductTableModel model;
+    private final AtomicReference<CountDownLatch> refreshed = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, 4);
+        service = new WarehouseService();
+        model = new ProductTableModel(service);
+        model.addTableModelListener(e -> {
+            CountDownLatch l = refreshed.get();
+            if (l != null && e.getLastRow() == Integer.MAX_VALUE && e.getType() == TableModelEvent.UPDATE) l.countDown();
+        });
+        refreshCatalog();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.shutdown();
+        db.close();
+    }
+
+    @Benchmark
+    public Product refreshCatalog() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        refreshed.set(done);
+        SwingUtilities.invokeAndWait(model::showCatalog);
+        done.await();
+        return awaitRow(0);
+    }
+
+    @Benchmark
+    public Product jumpToRow() throws Exception {
+        return awaitRow(ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    // productAt starts the page load; poll on the EDT until the page has arrived
+    private Product awaitRow(int row) throws Exception {
+        Product[] p = new Product[1];
+        while (true) {
+            SwingUtilities.invokeAndWait(() -> p[0] = model.productAt(row));
+            if (p[0] != null) return p[0];
+            LockSupport.parkNanos(20_000);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package bench;
+
+import dao.DbManager;
+import org.openjdk.jmh.annotations.*;
+import service.WarehouseService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service start against a schema that is already current and a cache
+ * snapshot left by the previous shutdown, per catalog size and cache store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WarmStartBenchmark {
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    @Param({"map", "columnar"})
+    String store;
+
+    private BenchDb db;
+    private WarehouseService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDb.create(rows, 4);
+        System.setProperty("wms.cache.store", store);
+        new WarehouseService().shutdown(); // writes the snapshot
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        service.shutdown(); // nothing changed, so the snapshot is kept as it is
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Benchmark
+    public int start() throws Exception {
+        DbManager.initDatabase();
+        service = new WarehouseService();
+        return service.productCount();
+    }
+}
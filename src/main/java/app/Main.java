@@ -1,24 +1,164 @@
 package app;
 
 import app.UI.MainFrame;
+import app.server.ApiServer;
 import dao.DbManager;
-import util.SimpleLogger;
+import model.LocatedStockDrift;
+import model.StockDrift;
+import service.ImportReport;
+import service.WarehouseService;
+import util.Log;
+import util.Metrics;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.List;
 
 public class    Main {
+    private static final int DEFAULT_PORT = 8080;
+
     public static void main(String[] args) {
-        SimpleLogger.info("Starting Warehouse Management System");
+        Log.info("Starting Warehouse Management System");
         try {
             DbManager.initDatabase();
         } catch (Exception e) {
-            SimpleLogger.error("DB init failed: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("DB init failed: {}", e.getMessage(), e);
             System.exit(1);
         }
+
+        Metrics.startPeriodicDump();
+
+        // Headless API server: --server [port]
+        if (args.length >= 1 && args[0].equals("--server")) {
+            int port = args.length > 1 ? parsePort(args[1]) : DEFAULT_PORT;
+            if (port < 0) {
+                Log.error("Invalid port: {} (expected 0-65535)", args[1]);
+                System.exit(1);
+            }
+            runServer(port);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(DbManager::shutdown));
+
+        // Headless catalog transfer: --import <file.csv> or --export <file.csv>
+        if (args.length == 2 && (args[0].equals("--import") || args[0].equals("--export"))) {
+            System.exit(transferCatalog(args[0], Paths.get(args[1])));
+        }
+
+        // Stock history: --export-history <file.csv> writes every transaction (archived ones too),
+        // --archive-before <yyyy-mm-dd> moves older transactions into monthly archive tables
+        if (args.length == 2 && (args[0].equals("--export-history") || args[0].equals("--archive-before"))) {
+            System.exit(maintainHistory(args[0], args[1]));
+        }
+
+        // Stock ledger: --reconcile-stock reports products whose quantity drifts from the ledger, or whose stock
+        // in site bins disagrees with the catalog (exit 2 if any), --repair-stock also resets the former to the ledger, --snapshot-stock folds the ledger tail into stock_snapshot
+        if (args.length == 1 && (args[0].equals("--reconcile-stock") || args[0].equals("--repair-stock")
+                || args[0].equals("--snapshot-stock"))) {
+            System.exit(maintainStock(args[0]));
+        }
+
         SwingUtilities.invokeLater(() -> {
             MainFrame frame = new MainFrame();
             frame.setVisible(true);
         });
     }
+
+    private static void runServer(int port) {
+        WarehouseService service = new WarehouseService();
+        try {
+            ApiServer server = new ApiServer(service, port);
+            // one hook, so the steps run in order: no new requests, flush stock movements, close the DB
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(2);
+                service.shutdown();
+                DbManager.shutdown();
+            }));
+            server.start();
+        } catch (IOException e) {
+            Log.error("Cannot start API server on port {}: {}", port, e.getMessage());
+            service.shutdown();
+            System.exit(1);
+        }
+    }
+
+    // -1 if s is not a port number
+    private static int parsePort(String s) {
+        try {
+            int port = Integer.parseInt(s);
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int maintainHistory(String mode, String arg) {
+        WarehouseService service = new WarehouseService();
+        try {
+            if (mode.equals("--export-history")) {
+                try (Writer out = Files.newBufferedWriter(Paths.get(arg), StandardCharsets.UTF_8)) {
+                    service.exportHistory(out, null, null);
+                }
+            } else {
+                int moved = service.archiveHistoryBefore(LocalDate.parse(arg).atStartOfDay());
+                Log.info("Archived {} transactions older than {}", moved, arg);
+            }
+            return 0;
+        } catch (Exception e) {
+            Log.error("History {} failed: {}", mode.substring(2), e.getMessage());
+            return 1;
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static int maintainStock(String mode) {
+        WarehouseService service = new WarehouseService();
+        try {
+            if (mode.equals("--snapshot-stock")) {
+                service.snapshotStock();
+                return 0;
+            }
+            boolean repair = mode.equals("--repair-stock");
+            List<StockDrift> drift = service.reconcileStock(repair);
+            if (!repair) for (StockDrift d : drift) Log.warn("Stock drift: {}", d);
+            List<LocatedStockDrift> located = service.checkLocatedStock();
+            for (LocatedStockDrift d : located) Log.warn("Located stock drift: {}", d);
+            return (drift.isEmpty() || repair) && located.isEmpty() ? 0 : 2;
+        } catch (Exception e) {
+            Log.error("Stock {} failed: {}", mode.substring(2), e.getMessage());
+            return 1;
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static int transferCatalog(String mode, Path file) {
+        WarehouseService service = new WarehouseService();
+        try {
+            if (mode.equals("--import")) {
+                try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    ImportReport report = service.importCatalog(in);
+                    for (ImportReport.Reject r : report.getRejects()) Log.error("Rejected {}", r);
+                }
+            } else {
+                try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    service.exportCatalog(out);
+                }
+            }
+            return 0;
+        } catch (Exception e) {
+            Log.error("Catalog {} failed: {}", mode.substring(2), e.getMessage());
+            return 1;
+        } finally {
+            service.shutdown();
+        }
+    }
 }
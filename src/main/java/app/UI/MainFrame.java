@@ -1,28 +1,26 @@
 package app.UI;
 
 import model.Product;
+import service.LowStockEvent;
 import service.WarehouseService;
-import util.SimpleLogger;
 
 import javax.swing.*;
 import java.awt.BorderLayout;
-import java.util.List;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 
 public class MainFrame extends JFrame {
 
+    private static final int MAX_ALERT_LINES = 20;
+
     private final WarehouseService service = new WarehouseService();
     private ProductPanel productPanel;
 
-    private final ScheduledExecutorService scheduler =
-            Executors.newSingleThreadScheduledExecutor();
-
-    // 🔴 Tracks products already shown in low-stock alert
-    private final Set<Integer> alertedLowStockIds =
-            ConcurrentHashMap.newKeySet();
+    // 🔴 Crossings waiting to be shown; a burst of them becomes one dialog
+    private final StringBuilder pendingAlerts = new StringBuilder();
+    private int pendingCount;
+    private final Timer alertDelay = new Timer(300, e -> showPendingAlerts());
 
     public MainFrame() {
         setTitle("Warehouse Management System");
@@ -33,48 +31,55 @@ public class MainFrame extends JFrame {
         productPanel = new ProductPanel(service);
         add(productPanel, BorderLayout.CENTER);
 
-        // Check every 20 seconds
-        scheduler.scheduleAtFixedRate(this::checkLowStock, 5, 20, TimeUnit.SECONDS);
-    }
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                service.shutdown(); // flush queued stock movements before exit
+            }
+        });
 
-    private void checkLowStock() {
-        try {
-            List<Product> low = service.findLowStock();
+        alertDelay.setRepeats(false);
 
-            // 🔁 Reset alerts if stock becomes normal again
-            Set<Integer> currentLowIds = new HashSet<>();
-            for (Product p : low) {
-                currentLowIds.add(p.getProductId());
-            }
-            alertedLowStockIds.retainAll(currentLowIds);
+        // Products already low at startup are reported once
+        for (Product p : service.findLowStock()) {
+            queueAlert(p.getSku(), p.getName(), p.getQuantity());
+        }
 
-            // 🔔 Build alert ONLY for newly low products
-            StringBuilder sb = new StringBuilder();
-            for (Product p : low) {
-                if (!alertedLowStockIds.contains(p.getProductId())) {
-                    sb.append(p.getSku())
-                            .append(" - ")
-                            .append(p.getName())
-                            .append(" qty=")
-                            .append(p.getQuantity())
-                            .append("\n");
-                    alertedLowStockIds.add(p.getProductId());
-                }
-            }
+        // Crossings are pushed the moment a change commits, no polling
+        service.addLowStockListener(e -> {
+            if (e.getType() != LowStockEvent.Type.BECAME_LOW) return;
+            Product p = e.getProduct();
+            String sku = p == null ? "#" + e.getProductId() : p.getSku();
+            String name = p == null ? "" : p.getName();
+            SwingUtilities.invokeLater(() -> queueAlert(sku, name, e.getQuantity()));
+        });
+    }
 
-            if (sb.length() > 0) {
-                SwingUtilities.invokeLater(() ->
-                        JOptionPane.showMessageDialog(
-                                this,
-                                "Low stock items:\n" + sb,
-                                "Low stock alert",
-                                JOptionPane.WARNING_MESSAGE
-                        )
-                );
-            }
+    private void queueAlert(String sku, String name, int qty) {
+        // started by the first alert of a batch, not restarted, so a steady stream still shows within 300 ms
+        if (!alertDelay.isRunning()) alertDelay.start();
+        if (++pendingCount > MAX_ALERT_LINES) return;
+        pendingAlerts.append(sku)
+                .append(" - ")
+                .append(name)
+                .append(" qty=")
+                .append(qty)
+                .append("\n");
+    }
 
-        } catch (Exception e) {
-            SimpleLogger.error("Low stock check failed: " + e.getMessage());
+    private void showPendingAlerts() {
+        if (pendingCount == 0) return;
+        if (pendingCount > MAX_ALERT_LINES) {
+            pendingAlerts.append("... and ").append(pendingCount - MAX_ALERT_LINES).append(" more\n");
         }
+        String text = pendingAlerts.toString();
+        pendingAlerts.setLength(0);
+        pendingCount = 0;
+        JOptionPane.showMessageDialog(
+                this,
+                "Low stock items:\n" + text,
+                "Low stock alert",
+                JOptionPane.WARNING_MESSAGE
+        );
     }
 }
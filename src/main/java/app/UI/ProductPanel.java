@@ -2,26 +2,31 @@ package app.UI;
 
 import model.Product;
 import service.WarehouseService;
-import util.SimpleLogger;
+import util.Log;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.BorderLayout;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class ProductPanel extends JPanel {
 
+    private static final int SEARCH_LIMIT = 500;
+
     private final WarehouseService service;
     private JTable table;
-    private DefaultTableModel tableModel;
+    private ProductTableModel tableModel;
     private JTextField txtSearch;
 
     public ProductPanel(WarehouseService service) {
         this.service = service;
         setLayout(new BorderLayout());
         initComponents();
+        // apply committed changes as deltas instead of reloading the table
+        service.addChangeListener(e -> SwingUtilities.invokeLater(() -> tableModel.apply(e)));
         loadProducts();
     }
 
@@ -30,21 +35,27 @@ public class ProductPanel extends JPanel {
         txtSearch = new JTextField();
         JButton btnSearch = new JButton("Search");
         btnSearch.addActionListener(e -> doSearch());
+
+        // Search as the user types, once typing pauses briefly
+        Timer searchDelay = new Timer(150, e -> doSearch());
+        searchDelay.setRepeats(false);
+        txtSearch.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { searchDelay.restart(); }
+            public void removeUpdate(DocumentEvent e) { searchDelay.restart(); }
+            public void changedUpdate(DocumentEvent e) { searchDelay.restart(); }
+        });
         top.add(txtSearch, BorderLayout.CENTER);
         top.add(btnSearch, BorderLayout.EAST);
         add(top, BorderLayout.NORTH);
 
-        tableModel = new DefaultTableModel(
-                new String[]{"No.", "SKU", "Name", "Price", "Qty", "Min Stock", "_id"}, 0
-        ) {
-            public boolean isCellEditable(int r, int c) {
-                return false;
-            }
-        };
+        tableModel = new ProductTableModel(service);
 
         table = new JTable(tableModel);
         table.setFillsViewportHeight(true);
 
+        // Hide DB id column (still readable from the model)
+        table.removeColumn(table.getColumnModel().getColumn(ProductTableModel.ID_COLUMN));
+
         // Tooltip for DB id
         table.addMouseMotionListener(new MouseMotionAdapter() {
             @Override
@@ -55,8 +66,8 @@ public class ProductPanel extends JPanel {
                     return;
                 }
                 int modelRow = table.convertRowIndexToModel(viewRow);
-                Object val = tableModel.getValueAt(modelRow, 6);
-                table.setToolTipText("DB id: " + val);
+                Object val = tableModel.getValueAt(modelRow, ProductTableModel.ID_COLUMN);
+                table.setToolTipText(val == null ? null : "DB id: " + val);
             }
         });
 
@@ -85,43 +96,7 @@ public class ProductPanel extends JPanel {
     }
 
     private void loadProducts() {
-        SwingWorker<List<Product>, Void> w = new SwingWorker<>() {
-            @Override
-            protected List<Product> doInBackground() throws Exception {
-                return service.listAll();
-            }
-
-            @Override
-            protected void done() {
-                try {
-                    refreshTable(get());
-                } catch (Exception e) {
-                    SimpleLogger.error("Load failed: " + e.getMessage());
-                }
-            }
-        };
-        w.execute();
-    }
-
-    private void refreshTable(List<Product> list) {
-        tableModel.setRowCount(0);
-        int idx = 1;
-        for (Product p : list) {
-            tableModel.addRow(new Object[]{
-                    idx++,
-                    p.getSku(),
-                    p.getName(),
-                    p.getPrice(),
-                    p.getQuantity(),
-                    p.getMinStock(),
-                    p.getProductId()
-            });
-        }
-
-        // Hide DB id column
-        if (table.getColumnCount() > 6) {
-            table.removeColumn(table.getColumnModel().getColumn(6));
-        }
+        tableModel.showCatalog();
     }
 
     private void doSearch() {
@@ -131,22 +106,27 @@ public class ProductPanel extends JPanel {
             return;
         }
 
-        SwingWorker<List<Product>, Void> w = new SwingWorker<>() {
-            @Override
-            protected List<Product> doInBackground() {
-                return service.searchByName(q);
+        service.searchAsync(q, SEARCH_LIMIT).whenComplete((found, err) -> SwingUtilities.invokeLater(() -> {
+            if (!q.equals(txtSearch.getText().trim())) return; // superseded by newer typing
+            if (err != null) {
+                Log.error("Search failed");
+                return;
             }
+            tableModel.showList(found);
+        }));
+    }
 
-            @Override
-            protected void done() {
-                try {
-                    refreshTable(get());
-                } catch (Exception e) {
-                    SimpleLogger.error("Search failed");
-                }
-            }
-        };
-        w.execute();
+    // Runs a service call off the EDT and shows its failure, if any, once it completes
+    private void runInBackground(CompletableFuture<?> call) {
+        call.whenComplete((ignored, err) -> {
+            if (err == null) return;
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+                    this,
+                    ProductTableModel.rootCause(err).getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE
+            ));
+        });
     }
 
     private void showAddDialog() {
@@ -154,12 +134,7 @@ public class ProductPanel extends JPanel {
         dlg.setLocationRelativeTo(this);
         dlg.setVisible(true);
         if (dlg.getProduct() != null) {
-            try {
-                service.createProduct(dlg.getProduct());
-                loadProducts();
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(this, e.getMessage());
-            }
+            runInBackground(service.createProductAsync(dlg.getProduct()));
         }
     }
 
@@ -167,23 +142,22 @@ public class ProductPanel extends JPanel {
         int id = getSelectedProductId();
         if (id < 0) return;
 
-        Product p = service.listAll().stream()
-                .filter(x -> x.getProductId() == id)
-                .findFirst().orElse(null);
-
+        Product p = service.findProduct(id).orElse(null);
         if (p == null) return;
 
-        ProductFormDialog dlg = new ProductFormDialog(p);
+        // the dialog edits in place, so give it a copy of the frozen cached product
+        ProductFormDialog dlg = new ProductFormDialog(p.copy());
         dlg.setLocationRelativeTo(this);
         dlg.setVisible(true);
 
-        if (dlg.getProduct() != null) {
-            try {
-                service.updateProduct(dlg.getProduct());
-                loadProducts();
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(this, e.getMessage());
-            }
+        Product edited = dlg.getProduct();
+        if (edited != null) {
+            // a changed quantity is a stock count: applied only if no movement landed while the dialog was open
+            int loaded = p.getQuantity();
+            int counted = edited.getQuantity();
+            runInBackground(service.updateProductAsync(edited).thenCompose(v -> counted == loaded
+                    ? CompletableFuture.completedFuture(null)
+                    : service.adjustStockAsync(id, loaded, counted, "stock count")));
         }
     }
 
@@ -191,7 +165,8 @@ public class ProductPanel extends JPanel {
         int viewRow = table.getSelectedRow();
         if (viewRow < 0) return -1;
         int modelRow = table.convertRowIndexToModel(viewRow);
-        return (int) tableModel.getValueAt(modelRow, 6);
+        Product p = tableModel.productAt(modelRow);
+        return p == null ? -1 : p.getProductId();
     }
 
     private void deleteSelected() {
@@ -199,7 +174,9 @@ public class ProductPanel extends JPanel {
         if (viewRow < 0) return;
 
         int modelRow = table.convertRowIndexToModel(viewRow);
-        int dbId = (int) tableModel.getValueAt(modelRow, 6);
+        Product selected = tableModel.productAt(modelRow);
+        if (selected == null) return;
+        int dbId = selected.getProductId();
         Object no = tableModel.getValueAt(modelRow, 0);
 
         int ok = JOptionPane.showConfirmDialog(
@@ -211,12 +188,7 @@ public class ProductPanel extends JPanel {
 
         if (ok != JOptionPane.YES_OPTION) return;
 
-        try {
-            service.deleteProduct(dbId);
-            loadProducts();
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, e.getMessage());
-        }
+        runInBackground(service.deleteProductAsync(dbId));
     }
 
     // =================== MODIFIED PART ===================
@@ -236,50 +208,14 @@ public class ProductPanel extends JPanel {
         try {
             int q = Integer.parseInt(qtyStr);
 
-            SwingWorker<Void, Void> w = new SwingWorker<>() {
-                boolean lowTriggered = false;
-                Exception error;
-
-                @Override
-                protected Void doInBackground() {
-                    try {
-                        lowTriggered = service.changeStock(
-                                selectedDbId,
-                                sign * q,
-                                sign > 0 ? "receive" : "dispatch",
-                                "UI operation"
-                        );
-                    } catch (Exception e) {
-                        error = e;
-                    }
-                    return null;
-                }
-
-                @Override
-                protected void done() {
-                    if (error != null) {
-                        JOptionPane.showMessageDialog(
-                                ProductPanel.this,
-                                error.getMessage(),
-                                "Error",
-                                JOptionPane.ERROR_MESSAGE
-                        );
-                        return;
-                    }
-
-                    loadProducts();
-
-                    if (lowTriggered) {
-                        JOptionPane.showMessageDialog(
-                                ProductPanel.this,
-                                "⚠ Stock has fallen below minimum level!",
-                                "Low Stock Alert",
-                                JOptionPane.WARNING_MESSAGE
-                        );
-                    }
-                }
-            };
-            w.execute();
+            // the table row is repainted by the QUANTITY_CHANGED event, and a
+            // low-stock crossing is reported once by MainFrame's alert
+            runInBackground(service.submitStockChange(
+                    selectedDbId,
+                    sign * q,
+                    sign > 0 ? "receive" : "dispatch",
+                    "UI operation"
+            ));
 
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Invalid number");
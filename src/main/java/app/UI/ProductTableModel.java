@@ -0,0 +1,230 @@
+package app.UI;
+
+import model.Product;
+import service.ProductChangeEvent;
+import service.WarehouseService;
+import util.Log;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Table model that only holds the pages of the catalog the user has looked at.
+ * Rows are fetched in name order PAGE_SIZE at a time when the table first asks
+ * for them, and cells are read straight from the Product objects. A page
+ * boundary row is kept as a keyset anchor, so scrolling on from a seen page
+ * is an index seek rather than an OFFSET scan. Rows may be frozen snapshot
+ * products, so changes replace them instead of editing them.
+ *
+ * All methods must be called on the EDT.
+ */
+public class ProductTableModel extends AbstractTableModel {
+    static final int ID_COLUMN = 6;
+    private static final String[] COLUMNS = {"No.", "SKU", "Name", "Price", "Qty", "Min Stock", "_id"};
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES = 64;
+
+    private final WarehouseService service;
+
+    // catalog mode: LRU of loaded pages plus the last row of every page seen
+    private final Map<Integer, List<Product>> pages = new LinkedHashMap<Integer, List<Product>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Product>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final TreeMap<Integer, Product> anchors = new TreeMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private int rowCount;
+    private int generation;
+
+    // search mode: a fixed result list
+    private List<Product> results;
+
+    public ProductTableModel(WarehouseService service) {
+        this.service = service;
+    }
+
+    /** Switches to the full catalog and re-reads its size; pages load as they become visible. */
+    public void showCatalog() {
+        int gen = ++generation;
+        service.countProductsAsync().whenComplete((count, err) -> SwingUtilities.invokeLater(() -> {
+            if (gen != generation) return;
+            if (err != null) {
+                Log.error("Load failed: {}", rootCause(err).getMessage());
+                return;
+            }
+            results = null;
+            pages.clear();
+            anchors.clear();
+            loading.clear();
+            rowCount = count;
+            fireTableDataChanged();
+        }));
+    }
+
+    public void showList(List<Product> list) {
+        generation++;
+        results = new ArrayList<>(list);
+        pages.clear();
+        anchors.clear();
+        loading.clear();
+        rowCount = list.size();
+        fireTableDataChanged();
+    }
+
+    /** The product at a model row, or null if its page has not arrived yet. */
+    public Product productAt(int row) {
+        if (row < 0 || row >= rowCount) return null;
+        if (results != null) return results.get(row);
+        List<Product> page = pages.get(row / PAGE_SIZE);
+        if (page == null) {
+            load(row / PAGE_SIZE);
+            return null;
+        }
+        int i = row % PAGE_SIZE;
+        return i < page.size() ? page.get(i) : null;
+    }
+
+    /**
+     * Applies one committed change. Quantity and field edits repaint only the
+     * affected row, and only if it is loaded. Inserts and deletes shift catalog
+     * rows, so the catalog view re-counts and drops its pages; only the
+     * visible pages are then fetched again.
+     */
+    public void apply(ProductChangeEvent e) {
+        switch (e.getType()) {
+            case QUANTITY_CHANGED: {
+                int row = rowOf(e.getProductId());
+                if (row < 0) return;
+                Product p = e.getProduct();
+                if (p == null) {
+                    p = productAt(row).copy();
+                    p.setQuantity(e.getNewQuantity());
+                    p.setMinStock(e.getMinStock());
+                }
+                replace(row, p);
+                fireTableRowsUpdated(row, row);
+                return;
+            }
+            case UPDATED: {
+                int row = rowOf(e.getProductId());
+                if (row < 0) return;
+                replace(row, e.getProduct());
+                fireTableRowsUpdated(row, row);
+                return;
+            }
+            case DELETED:
+                if (results != null) {
+                    int row = rowOf(e.getProductId());
+                    if (row < 0) return;
+                    results.remove(row);
+                    rowCount--;
+                    fireTableRowsDeleted(row, row);
+                    return;
+                }
+                showCatalog();
+                return;
+            case CREATED:
+            case RELOADED:
+                if (results == null) showCatalog();
+                return;
+            default:
+        }
+    }
+
+    private void replace(int row, Product p) {
+        if (results != null) {
+            results.set(row, p);
+        } else {
+            pages.get(row / PAGE_SIZE).set(row % PAGE_SIZE, p);
+        }
+    }
+
+    private int rowOf(int productId) {
+        if (results != null) {
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).getProductId() == productId) return i;
+            }
+            return -1;
+        }
+        for (Map.Entry<Integer, List<Product>> e : pages.entrySet()) {
+            List<Product> page = e.getValue();
+            for (int i = 0; i < page.size(); i++) {
+                if (page.get(i).getProductId() == productId) return e.getKey() * PAGE_SIZE + i;
+            }
+        }
+        return -1;
+    }
+
+    private void load(int pageIndex) {
+        if (!loading.add(pageIndex)) return;
+        int gen = generation;
+        // resume from the nearest page boundary we have seen, skipping whole pages in between
+        Map.Entry<Integer, Product> anchor = anchors.floorEntry(pageIndex - 1);
+        String afterName = anchor == null ? null : anchor.getValue().getName();
+        int afterId = anchor == null ? 0 : anchor.getValue().getProductId();
+        int skip = (anchor == null ? pageIndex : pageIndex - anchor.getKey() - 1) * PAGE_SIZE;
+        service.listPageAsync(afterName, afterId, skip, PAGE_SIZE).whenComplete((page, err) -> SwingUtilities.invokeLater(() -> {
+            if (gen != generation) return;
+            loading.remove(pageIndex);
+            if (err != null) {
+                Log.error("Page load failed: {}", rootCause(err).getMessage());
+                return;
+            }
+            pages.put(pageIndex, page);
+            if (!page.isEmpty()) anchors.put(pageIndex, page.get(page.size() - 1));
+            int first = pageIndex * PAGE_SIZE;
+            int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+            if (last >= first) fireTableRowsUpdated(first, last);
+        }));
+    }
+
+    /** The exception behind a failed service future. */
+    static Throwable rootCause(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == 0) return row + 1;
+        Product p = productAt(row);
+        if (p == null) return null;
+        switch (column) {
+            case 1: return p.getSku();
+            case 2: return p.getName();
+            case 3: return p.getPrice();
+            case 4: return p.getQuantity();
+            case 5: return p.getMinStock();
+            case ID_COLUMN: return p.getProductId();
+            default: return null;
+        }
+    }
+}
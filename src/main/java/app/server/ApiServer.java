@@ -0,0 +1,561 @@
+package app.server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import model.BinStock;
+import model.InventoryTransaction;
+import model.Location;
+import model.Product;
+import model.StockLevel;
+import service.CatalogSnapshot;
+import service.ServiceExecutors;
+import service.WarehouseService;
+import util.Log;
+import util.Metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Headless HTTP/JSON front end over WarehouseService, for scanners and the ERP.
+ * Built on the JDK's com.sun.net.httpserver, which keeps HTTP/1.1 connections
+ * alive between requests.
+ *
+ * <pre>
+ * GET  /health
+ * GET  /api/products                  whole catalog, streamed in id order (?after=id&amp;limit=n)
+ * GET  /api/products?sku=S            one product by SKU
+ * GET  /api/products/{id}             one product
+ * POST /api/products/receive?sku=S&amp;qty=n[&amp;note=..]    barcode scan by SKU
+ * POST /api/products/dispatch?sku=S&amp;qty=n[&amp;note=..]
+ * POST /api/products/{id}/receive?qty=n[&amp;note=..]
+ * POST /api/products/{id}/dispatch?qty=n[&amp;note=..]
+ * GET  /api/products/{id}/history    stock transactions, oldest first (?from=..&amp;to=..&amp;after=cursor&amp;limit=n)
+ * GET  /api/products/{id}/velocity   average units per day (?type=dispatch&amp;days=30)
+ * POST /api/movements                 batch: [{"productId":1,"delta":-2,"type":"dispatch","note":".."}, ...]
+ * GET  /api/search?q=..[&amp;limit=n]
+ * GET  /api/low-stock                 most depleted first
+ * GET  /api/products/{id}/locations  stock per bin, across sites
+ * GET  /api/sites                     site codes
+ * POST /api/sites?code=C&amp;name=..       registers a site and creates its shard
+ * GET  /api/locations?site=C          the site's bins, as SITE/ZONE/BIN
+ * POST /api/locations?code=SITE/ZONE/BIN
+ * POST /api/locations/receive?location=SITE/ZONE/BIN&amp;sku=S&amp;qty=n[&amp;note=..]   bin movement (or productId=)
+ * POST /api/locations/dispatch?location=SITE/ZONE/BIN&amp;sku=S&amp;qty=n[&amp;note=..]
+ * POST /api/locations/transfer?from=..&amp;to=..&amp;sku=S&amp;qty=n[&amp;note=..]
+ * GET  /metrics                       counters and latency histograms (?format=text)
+ * </pre>
+ *
+ * Errors come back as {"error": "..."} with 400, 404, 405, 409 or 500.
+ */
+public class ApiServer {
+
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    private static final int MAX_BATCH = 10_000;
+    private static final int DEFAULT_HISTORY_LIMIT = 100;
+    private static final int MAX_HISTORY_LIMIT = 1000;
+    // rows per database read when the catalog is listed from the database
+    private static final int CATALOG_PAGE = 500;
+
+    static {
+        // the JDK server writes headers and body separately; with Nagle on, kept-alive
+        // clients wait out a delayed ACK (~40 ms) on every response
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final WarehouseService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public ApiServer(WarehouseService service, int port) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = ServiceExecutors.fromSystemProperties();
+        server.setExecutor(executor);
+        server.createContext("/health", guarded("http.health", this::health));
+        server.createContext("/api/products", guarded("http.products", this::products));
+        server.createContext("/api/movements", guarded("http.movements", this::movements));
+        server.createContext("/api/search", guarded("http.search", this::search));
+        server.createContext("/api/low-stock", guarded("http.lowStock", this::lowStock));
+        server.createContext("/api/sites", guarded("http.sites", this::sites));
+        server.createContext("/api/locations", guarded("http.locations", this::locations));
+        server.createContext("/metrics", guarded("http.metrics", this::metrics));
+    }
+
+    public void start() {
+        server.start();
+        Log.info("API server listening on port {}", getPort());
+    }
+
+    /** Stops accepting requests, gives in-flight ones up to delaySeconds to finish. */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // ---------------- handlers ----------------
+
+    private void health(HttpExchange ex) throws IOException {
+        requireMethod(ex, "GET");
+        sendJson(ex, 200, "{\"status\":\"ok\",\"products\":" + service.productCount() + "}");
+    }
+
+    private void metrics(HttpExchange ex) throws IOException {
+        requireMethod(ex, "GET");
+        if ("text".equals(query(ex).get("format"))) {
+            byte[] bytes = Metrics.dumpText().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            ex.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(bytes);
+            }
+        } else {
+            sendJson(ex, 200, Metrics.dumpJson());
+        }
+    }
+
+    private void products(HttpExchange ex) throws Exception {
+        String rest = ex.getRequestURI().getPath().substring("/api/products".length());
+        Map<String, String> query = query(ex);
+        if (rest.isEmpty() || rest.equals("/")) {
+            requireMethod(ex, "GET");
+            if (query.containsKey("sku")) {
+                sendProduct(ex, service.findProductBySku(query.get("sku")));
+            } else {
+                streamCatalog(ex, intParam(query, "after", 0), intParam(query, "limit", Integer.MAX_VALUE));
+            }
+            return;
+        }
+        String[] parts = rest.substring(1).split("/");
+        if (parts.length == 1 && (parts[0].equals("receive") || parts[0].equals("dispatch"))) {
+            requireMethod(ex, "POST");
+            String sku = query.get("sku");
+            if (sku == null) throw new IllegalArgumentException("sku is required");
+            int qty = intParam(query, "qty", -1);
+            if (qty <= 0) throw new IllegalArgumentException("qty must be a positive integer");
+            StockLevel level = await(parts[0].equals("receive")
+                    ? service.receiveBySku(sku, qty, query.get("note"))
+                    : service.dispatchBySku(sku, qty, query.get("note")));
+            sendJson(ex, 200, Json.stockLevel(new StringBuilder(), level).toString());
+            return;
+        }
+        int id = parseInt(parts[0], "product id");
+        if (parts.length == 1) {
+            requireMethod(ex, "GET");
+            sendProduct(ex, service.findProduct(id));
+        } else if (parts.length == 2 && (parts[1].equals("receive") || parts[1].equals("dispatch"))) {
+            requireMethod(ex, "POST");
+            int qty = intParam(query, "qty", -1);
+            if (qty <= 0) throw new IllegalArgumentException("qty must be a positive integer");
+            boolean receive = parts[1].equals("receive");
+            StockLevel level = await(service.submitStockChange(id, receive ? qty : -qty, parts[1], query.get("note")));
+            sendJson(ex, 200, Json.stockLevel(new StringBuilder(), level).toString());
+        } else if (parts.length == 2 && parts[1].equals("locations")) {
+            requireMethod(ex, "GET");
+            sendJson(ex, 200, binStockArray(service.findBinStock(id)));
+        } else if (parts.length == 2 && parts[1].equals("history")) {
+            requireMethod(ex, "GET");
+            history(ex, id, query);
+        } else if (parts.length == 2 && parts[1].equals("velocity")) {
+            requireMethod(ex, "GET");
+            String type = query.getOrDefault("type", "dispatch");
+            int days = intParam(query, "days", 30);
+            double perDay = service.unitsPerDay(id, type, days);
+            StringBuilder out = new StringBuilder("{\"productId\":").append(id).append(",\"type\":");
+            Json.string(out, type).append(",\"days\":").append(days).append(",\"unitsPerDay\":").append(perDay);
+            sendJson(ex, 200, out.append('}').toString());
+        } else {
+            throw new NotFound("No such resource: " + ex.getRequestURI().getPath());
+        }
+    }
+
+    // Times are UTC; "next" is the cursor for the following page, null after the last one
+    private void history(HttpExchange ex, int id, Map<String, String> query) throws Exception {
+        int limit = Math.min(intParam(query, "limit", DEFAULT_HISTORY_LIMIT), MAX_HISTORY_LIMIT);
+        if (limit <= 0) throw new IllegalArgumentException("limit must be a positive integer");
+        LocalDateTime afterTime = null;
+        long afterId = 0;
+        String after = query.get("after");
+        if (after != null) {
+            int comma = after.lastIndexOf(',');
+            if (comma < 0) throw new IllegalArgumentException("Invalid after cursor: " + after);
+            afterTime = timeParam(after.substring(0, comma), "after");
+            afterId = parseInt(after.substring(comma + 1), "after");
+        }
+        List<InventoryTransaction> page = service.productHistory(id,
+                timeParam(query.get("from"), "from"), timeParam(query.get("to"), "to"), afterTime, afterId, limit);
+        StringBuilder out = new StringBuilder(page.size() * 128 + 64).append("{\"transactions\":[");
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) out.append(',');
+            Json.transaction(out, page.get(i));
+        }
+        out.append("],\"next\":");
+        if (page.size() < limit) {
+            out.append("null");
+        } else {
+            InventoryTransaction last = page.get(page.size() - 1);
+            Json.string(out, last.getTxTime() + "," + last.getTxId());
+        }
+        sendJson(ex, 200, out.append('}').toString());
+    }
+
+    // Every movement joins the group-commit queue at once, so a batch usually costs one transaction
+    private void movements(HttpExchange ex) throws Exception {
+        requireMethod(ex, "POST");
+        Object body = Json.parse(readBody(ex));
+        if (!(body instanceof List)) throw new IllegalArgumentException("Expected a JSON array of movements");
+        List<?> items = (List<?>) body;
+        if (items.size() > MAX_BATCH) throw new IllegalArgumentException("At most " + MAX_BATCH + " movements per batch");
+
+        List<CompletableFuture<StockLevel>> pending = new ArrayList<>(items.size());
+        for (Object item : items) {
+            pending.add(submit(item));
+        }
+        StringBuilder out = new StringBuilder(items.size() * 128).append('[');
+        for (int i = 0; i < pending.size(); i++) {
+            if (i > 0) out.append(',');
+            try {
+                Json.stockLevel(out, await(pending.get(i)));
+            } catch (SQLException | IllegalArgumentException e) {
+                out.append(Json.error(e.getMessage()));
+            }
+        }
+        sendJson(ex, 200, out.append(']').toString());
+    }
+
+    private void sites(HttpExchange ex) throws Exception {
+        Map<String, String> query = query(ex);
+        if (ex.getRequestMethod().equals("POST")) {
+            String code = query.get("code");
+            if (code == null) throw new IllegalArgumentException("code is required");
+            service.createSite(code, query.getOrDefault("name", code));
+        } else {
+            requireMethod(ex, "GET");
+        }
+        StringBuilder out = new StringBuilder("[");
+        for (String code : service.siteCodes()) {
+            if (out.length() > 1) out.append(',');
+            Json.string(out, code);
+        }
+        sendJson(ex, 200, out.append(']').toString());
+    }
+
+    // Bin movements write only the site's shard; product quantities follow at the next site sync
+    private void locations(HttpExchange ex) throws Exception {
+        String rest = ex.getRequestURI().getPath().substring("/api/locations".length());
+        Map<String, String> query = query(ex);
+        if (rest.isEmpty() || rest.equals("/")) {
+            List<Location> locations;
+            if (ex.getRequestMethod().equals("POST")) {
+                String[] parts = Location.parseCode(query.get("code"));
+                locations = List.of(service.createLocation(parts[0], parts[1], parts[2]));
+            } else {
+                requireMethod(ex, "GET");
+                String site = query.get("site");
+                if (site == null) throw new IllegalArgumentException("site is required");
+                locations = service.findLocations(site);
+            }
+            StringBuilder out = new StringBuilder("[");
+            for (Location l : locations) {
+                if (out.length() > 1) out.append(',');
+                Json.string(out, l.getCode());
+            }
+            sendJson(ex, 200, out.append(']').toString());
+            return;
+        }
+        requireMethod(ex, "POST");
+        int qty = intParam(query, "qty", -1);
+        if (qty <= 0) throw new IllegalArgumentException("qty must be a positive integer");
+        int id = productParam(query);
+        String action = rest.substring(1);
+        if (action.equals("receive") || action.equals("dispatch")) {
+            Location at = service.findLocation(query.get("location"));
+            BinStock stock = service.moveBinStock(at, id, action.equals("receive") ? qty : -qty, action, query.get("note"));
+            sendJson(ex, 200, Json.binStock(new StringBuilder(), stock).toString());
+        } else if (action.equals("transfer")) {
+            Location from = service.findLocation(query.get("from"));
+            Location to = service.findLocation(query.get("to"));
+            service.transferStock(from, to, id, qty, query.get("note"));
+            sendJson(ex, 200, binStockArray(service.findBinStock(id)));
+        } else {
+            throw new NotFound("No such resource: " + ex.getRequestURI().getPath());
+        }
+    }
+
+    private int productParam(Map<String, String> query) throws SQLException {
+        if (query.containsKey("productId")) return parseInt(query.get("productId"), "productId");
+        String sku = query.get("sku");
+        if (sku == null) throw new IllegalArgumentException("sku or productId is required");
+        return service.findProductBySku(sku).orElseThrow(() -> new SQLException("Product not found")).getProductId();
+    }
+
+    private void search(HttpExchange ex) throws IOException {
+        requireMethod(ex, "GET");
+        Map<String, String> query = query(ex);
+        List<Product> found = service.search(query.getOrDefault("q", ""), intParam(query, "limit", DEFAULT_SEARCH_LIMIT));
+        sendJson(ex, 200, productArray(found));
+    }
+
+    private void lowStock(HttpExchange ex) throws IOException {
+        requireMethod(ex, "GET");
+        sendJson(ex, 200, productArray(service.findLowStock()));
+    }
+
+    // ---------------- helpers ----------------
+
+    private CompletableFuture<StockLevel> submit(Object item) {
+        try {
+            if (!(item instanceof Map)) throw new IllegalArgumentException("Each movement must be a JSON object");
+            Map<?, ?> m = (Map<?, ?>) item;
+            int id = m.get("productId") instanceof Double ? integral((Double) m.get("productId")) : 0;
+            if (id <= 0 && m.get("sku") instanceof String) {
+                id = service.findProductBySku((String) m.get("sku"))
+                        .orElseThrow(() -> new SQLException("Product not found")).getProductId();
+            }
+            if (id <= 0) throw new IllegalArgumentException("Movement needs a positive integer productId or a sku");
+            int delta = m.get("delta") instanceof Double ? integral((Double) m.get("delta")) : 0;
+            if (delta == 0) throw new IllegalArgumentException("Movement needs a non-zero integer delta");
+            String type = m.get("type") instanceof String ? (String) m.get("type") : (delta >= 0 ? "receive" : "dispatch");
+            String note = m.get("note") instanceof String ? (String) m.get("note") : null;
+            return service.submitStockChange(id, delta, type, note);
+        } catch (SQLException | IllegalArgumentException e) {
+            CompletableFuture<StockLevel> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    // JSON numbers arrive as doubles: 0 for fractions and values outside int, which callers reject
+    private static int integral(double v) {
+        return v == Math.rint(v) && Math.abs(v) <= Integer.MAX_VALUE ? (int) v : 0;
+    }
+
+    private static StockLevel await(CompletableFuture<StockLevel> f) throws SQLException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof IllegalArgumentException) throw (IllegalArgumentException) cause;
+            throw new SQLException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for stock change", e);
+        }
+    }
+
+    private static void sendProduct(HttpExchange ex, Optional<Product> p) throws IOException {
+        if (!p.isPresent()) throw new NotFound("Product not found");
+        sendJson(ex, 200, Json.product(new StringBuilder(), p.get()).toString());
+    }
+
+    // Chunked, so the catalog is never held as one response body
+    private void streamCatalog(HttpExchange ex, int afterId, int limit) throws IOException, SQLException {
+        if (limit < 0) throw new IllegalArgumentException("limit must not be negative");
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (!service.isCatalogCached() || !service.hasCatalogSnapshots()) {
+            // a bounded cache holds only part of the catalog and a columnar one would copy all of it,
+            // so list from the database, holding a connection only while a page is read
+            int want = Math.min(limit, CATALOG_PAGE);
+            List<Product> page = service.listAfterId(afterId, want);
+            ex.sendResponseHeaders(200, 0);
+            try (Writer out = catalogWriter(ex)) {
+                int written = 0;
+                while (true) {
+                    written = writeProducts(out, page, written, limit);
+                    if (page.size() < want || written >= limit) break;
+                    want = Math.min(limit - written, CATALOG_PAGE);
+                    page = service.listAfterId(page.get(page.size() - 1).getProductId(), want);
+                }
+                out.write(']');
+            }
+            return;
+        }
+        CatalogSnapshot snapshot = service.snapshot();
+        ex.getResponseHeaders().set("X-Catalog-Version", Long.toString(snapshot.version()));
+        ex.sendResponseHeaders(200, 0);
+        try (Writer out = catalogWriter(ex)) {
+            writeProducts(out, snapshot.after(afterId), 0, limit);
+            out.write(']');
+        }
+    }
+
+    private static Writer catalogWriter(HttpExchange ex) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8), 1 << 16);
+        out.write('[');
+        return out;
+    }
+
+    // appends products after the written ones already out, up to limit in all; returns the new total
+    private static int writeProducts(Writer out, Iterable<Product> products, int written, int limit) throws IOException {
+        StringBuilder buf = new StringBuilder(256);
+        for (Product p : products) {
+            if (written >= limit) break;
+            if (written++ > 0) out.write(',');
+            buf.setLength(0);
+            out.append(Json.product(buf, p));
+        }
+        return written;
+    }
+
+    private static String productArray(List<Product> products) {
+        StringBuilder out = new StringBuilder(products.size() * 160 + 2).append('[');
+        for (int i = 0; i < products.size(); i++) {
+            if (i > 0) out.append(',');
+            Json.product(out, products.get(i));
+        }
+        return out.append(']').toString();
+    }
+
+    private static String binStockArray(List<BinStock> stock) {
+        StringBuilder out = new StringBuilder(stock.size() * 64 + 2).append('[');
+        for (int i = 0; i < stock.size(); i++) {
+            if (i > 0) out.append(',');
+            Json.binStock(out, stock.get(i));
+        }
+        return out.append(']').toString();
+    }
+
+    private static void sendJson(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        Headers h = ex.getResponseHeaders();
+        h.set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void requireMethod(HttpExchange ex, String method) {
+        if (!ex.getRequestMethod().equals(method)) throw new MethodNotAllowed(method);
+    }
+
+    private static String readBody(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> params = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    // yyyy-MM-dd or yyyy-MM-ddTHH:mm[:ss]; null when absent
+    private static LocalDateTime timeParam(String v, String name) {
+        if (v == null || v.isEmpty()) return null;
+        try {
+            return v.length() == 10 ? LocalDate.parse(v).atStartOfDay() : LocalDateTime.parse(v);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + name + " time: " + v);
+        }
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String v = query.get(name);
+        return v == null ? defaultValue : parseInt(v, name);
+    }
+
+    private static int parseInt(String s, String what) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + what + ": " + s);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange ex) throws Exception;
+    }
+
+    // Maps failures to status codes and always finishes the exchange, so the connection can be reused;
+    // the time per request, errors included, goes to the named timer
+    private static HttpHandler guarded(String metric, Handler h) {
+        Metrics.Histogram timer = Metrics.timer(metric);
+        return ex -> {
+            long start = System.nanoTime();
+            try {
+                h.handle(ex);
+            } catch (NotFound e) {
+                sendError(ex, 404, e.getMessage());
+            } catch (MethodNotAllowed e) {
+                ex.getResponseHeaders().set("Allow", e.getMessage());
+                sendError(ex, 405, "Use " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                sendError(ex, 400, e.getMessage());
+            } catch (SQLException e) {
+                sendError(ex, statusFor(e), e.getMessage());
+            } catch (Exception e) {
+                Log.error("API {} {} failed", ex.getRequestMethod(), ex.getRequestURI(), e);
+                sendError(ex, 500, "Internal error");
+            } finally {
+                ex.close();
+                timer.recordSince(start);
+            }
+        };
+    }
+
+    private static int statusFor(SQLException e) {
+        String msg = String.valueOf(e.getMessage());
+        if (msg.startsWith("Product not found") || msg.startsWith("Location not found")
+                || msg.startsWith("Site not found")) return 404;
+        if (msg.startsWith("Insufficient stock") || msg.contains("UNIQUE constraint")) return 409;
+        return 500;
+    }
+
+    private static void sendError(HttpExchange ex, int status, String message) {
+        try {
+            sendJson(ex, status, Json.error(message));
+        } catch (IOException | IllegalStateException ignored) {
+            // headers already sent (e.g. mid-stream) or client gone; nothing left to tell it
+        }
+    }
+
+    private static final class NotFound extends RuntimeException {
+        NotFound(String message) {
+            super(message);
+        }
+    }
+
+    private static final class MethodNotAllowed extends RuntimeException {
+        MethodNotAllowed(String allowed) {
+            super(allowed);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package app.server;
+
+import model.BinStock;
+import model.InventoryTransaction;
+import model.Product;
+import model.StockLevel;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the API: writers for the few shapes we return and a
+ * small parser for request bodies. Parsed objects are Maps, arrays are Lists,
+ * numbers are Doubles.
+ */
+final class Json {
+    private Json() {}
+
+    static StringBuilder product(StringBuilder out, Product p) {
+        out.append("{\"id\":").append(p.getProductId())
+                .append(",\"sku\":");
+        string(out, p.getSku()).append(",\"name\":");
+        string(out, p.getName()).append(",\"description\":");
+        string(out, p.getDescription())
+                .append(",\"price\":").append(p.getPrice())
+                .append(",\"quantity\":").append(p.getQuantity())
+                .append(",\"minStock\":").append(p.getMinStock())
+                .append(",\"supplierId\":").append(p.getSupplierId())
+                .append(",\"low\":").append(p.getQuantity() <= p.getMinStock())
+                .append('}');
+        return out;
+    }
+
+    static StringBuilder stockLevel(StringBuilder out, StockLevel l) {
+        return out.append("{\"id\":").append(l.getProductId())
+                .append(",\"previousQuantity\":").append(l.getPreviousQuantity())
+                .append(",\"quantity\":").append(l.getQuantity())
+                .append(",\"minStock\":").append(l.getMinStock())
+                .append(",\"low\":").append(l.isLow())
+                .append(",\"crossedBelowMin\":").append(l.crossedBelowMin())
+                .append('}');
+    }
+
+    static StringBuilder binStock(StringBuilder out, BinStock b) {
+        out.append("{\"location\":");
+        return string(out, b.getLocation().getCode())
+                .append(",\"productId\":").append(b.getProductId())
+                .append(",\"quantity\":").append(b.getQuantity())
+                .append('}');
+    }
+
+    static StringBuilder transaction(StringBuilder out, InventoryTransaction t) {
+        out.append("{\"txId\":").append(t.getTxId())
+                .append(",\"productId\":").append(t.getProductId())
+                .append(",\"change\":").append(t.getChange())
+                .append(",\"type\":");
+        string(out, t.getTxType()).append(",\"note\":");
+        string(out, t.getNote()).append(",\"time\":");
+        return string(out, t.getTxTime() == null ? null : DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(t.getTxTime())).append('}');
+    }
+
+    static String error(String message) {
+        return string(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    static StringBuilder string(StringBuilder out, String s) {
+        if (s == null) return out.append("null");
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                    else out.append(c);
+            }
+        }
+        return out.append('"');
+    }
+
+    static Object parse(String text) {
+        Parser p = new Parser(text);
+        Object value = p.value();
+        p.skipSpace();
+        if (p.pos != text.length()) throw p.fail("trailing characters");
+        return value;
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int pos;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Object value() {
+            skipSpace();
+            if (pos == s.length()) throw fail("unexpected end");
+            char c = s.charAt(pos);
+            switch (c) {
+                case '{': return object();
+                case '[': return array();
+                case '"': return string();
+                case 't': return literal("true", Boolean.TRUE);
+                case 'f': return literal("false", Boolean.FALSE);
+                case 'n': return literal("null", null);
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) return number();
+                    throw fail("unexpected '" + c + "'");
+            }
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            pos++;
+            skipSpace();
+            if (peek() == '}') {
+                pos++;
+                return m;
+            }
+            while (true) {
+                skipSpace();
+                if (peek() != '"') throw fail("expected a key");
+                String key = string();
+                skipSpace();
+                expect(':');
+                m.put(key, value());
+                skipSpace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    return m;
+                }
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> list = new ArrayList<>();
+            pos++;
+            skipSpace();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                list.add(value());
+                skipSpace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect(']');
+                    return list;
+                }
+            }
+        }
+
+        private String string() {
+            StringBuilder out = new StringBuilder();
+            pos++;
+            while (true) {
+                if (pos >= s.length()) throw fail("unterminated string");
+                char c = s.charAt(pos++);
+                if (c == '"') return out.toString();
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (pos >= s.length()) throw fail("unterminated string");
+                char e = s.charAt(pos++);
+                switch (e) {
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    case 't': out.append('\t'); break;
+                    case 'b': out.append('\b'); break;
+                    case 'f': out.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > s.length()) throw fail("bad escape");
+                        out.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: out.append(e);
+                }
+            }
+        }
+
+        private Double number() {
+            int start = pos;
+            while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) pos++;
+            try {
+                return Double.valueOf(s.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw fail("bad number");
+            }
+        }
+
+        private Object literal(String word, Object value) {
+            if (!s.startsWith(word, pos)) throw fail("unexpected token");
+            pos += word.length();
+            return value;
+        }
+
+        private char peek() {
+            return pos < s.length() ? s.charAt(pos) : '\0';
+        }
+
+        private void expect(char c) {
+            if (peek() != c) throw fail("expected '" + c + "'");
+            pos++;
+        }
+
+        void skipSpace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        IllegalArgumentException fail(String why) {
+            return new IllegalArgumentException("Invalid JSON at " + pos + ": " + why);
+        }
+    }
+}
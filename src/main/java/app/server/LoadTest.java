@@ -0,0 +1,136 @@
+package app.server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for a running ApiServer. Each worker thread loops over a mix
+ * of requests on kept-alive connections: 70% product lookups, 15% searches,
+ * 10% single receive/dispatch and 5% ten-movement batches.
+ *
+ * Usage: LoadTest [baseUrl] [threads] [seconds], default
+ * http://localhost:8080 16 10. Prints throughput and latency percentiles per
+ * request kind.
+ */
+public class LoadTest {
+
+    private static final String[] KINDS = {"lookup", "search", "movement", "batch"};
+    private static final String[] WORDS = {"wid", "bolt", "SKU", "pro", "10", "ab"};
+
+    public static void main(String[] args) throws Exception {
+        String base = args.length > 0 ? args[0] : "http://localhost:8080";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        int[] ids = productIds(client, base);
+        if (ids.length == 0) {
+            System.err.println("No products at " + base + "; import a catalog first");
+            System.exit(1);
+        }
+        System.out.printf("Load test: %s, %d threads, %d s, %d products%n", base, threads, seconds, ids.length);
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<long[]> latencies = new ArrayList<>();
+        AtomicLong errors = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        List<List<long[]>> perThread = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<long[]> mine = new ArrayList<>();
+            perThread.add(mine);
+            Thread w = new Thread(() -> work(client, base, ids, deadline, mine, errors), "load-" + t);
+            workers.add(w);
+            w.start();
+        }
+        for (Thread w : workers) w.join();
+        for (List<long[]> l : perThread) latencies.addAll(l);
+
+        report(latencies, errors.get(), seconds);
+    }
+
+    // each sample is {kind, nanos}
+    private static void work(HttpClient client, String base, int[] ids, long deadline, List<long[]> out, AtomicLong errors) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            int roll = rnd.nextInt(100);
+            int kind = roll < 70 ? 0 : roll < 85 ? 1 : roll < 95 ? 2 : 3;
+            HttpRequest req = request(kind, base, ids, rnd);
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> res = client.send(req, HttpResponse.BodyHandlers.ofString());
+                // 409 is a legitimate answer to a dispatch from an empty shelf
+                if (res.statusCode() != 200 && res.statusCode() != 409) errors.incrementAndGet();
+            } catch (Exception e) {
+                errors.incrementAndGet();
+            }
+            out.add(new long[]{kind, System.nanoTime() - start});
+        }
+    }
+
+    private static HttpRequest request(int kind, String base, int[] ids, ThreadLocalRandom rnd) {
+        int id = ids[rnd.nextInt(ids.length)];
+        String dir = rnd.nextBoolean() ? "receive" : "dispatch";
+        switch (kind) {
+            case 0:
+                return HttpRequest.newBuilder(URI.create(base + "/api/products/" + id)).GET().build();
+            case 1:
+                return HttpRequest.newBuilder(URI.create(base + "/api/search?limit=20&q=" + WORDS[rnd.nextInt(WORDS.length)])).GET().build();
+            case 2:
+                return HttpRequest.newBuilder(URI.create(base + "/api/products/" + id + "/" + dir + "?qty=1&note=loadtest"))
+                        .POST(HttpRequest.BodyPublishers.noBody()).build();
+            default: {
+                StringBuilder body = new StringBuilder("[");
+                for (int i = 0; i < 10; i++) {
+                    if (i > 0) body.append(',');
+                    body.append("{\"productId\":").append(ids[rnd.nextInt(ids.length)])
+                            .append(",\"delta\":").append(rnd.nextBoolean() ? 1 : -1)
+                            .append(",\"note\":\"loadtest\"}");
+                }
+                return HttpRequest.newBuilder(URI.create(base + "/api/movements"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body.append(']').toString())).build();
+            }
+        }
+    }
+
+    private static int[] productIds(HttpClient client, String base) throws Exception {
+        HttpResponse<String> res = client.send(
+                HttpRequest.newBuilder(URI.create(base + "/api/products?limit=10000")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (res.statusCode() != 200) throw new IllegalStateException("Listing failed: HTTP " + res.statusCode());
+        List<?> products = (List<?>) Json.parse(res.body());
+        int[] ids = new int[products.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = ((Double) ((Map<?, ?>) products.get(i)).get("id")).intValue();
+        return ids;
+    }
+
+    private static void report(List<long[]> samples, long errors, int seconds) {
+        System.out.printf("%-9s %9s %9s %9s %9s %9s%n", "kind", "requests", "req/s", "p50 ms", "p99 ms", "max ms");
+        for (int k = 0; k <= KINDS.length; k++) {
+            final int kind = k;
+            long[] nanos = samples.stream()
+                    .filter(s -> kind == KINDS.length || s[0] == kind)
+                    .mapToLong(s -> s[1]).sorted().toArray();
+            if (nanos.length == 0) continue;
+            System.out.printf("%-9s %9d %9.0f %9.2f %9.2f %9.2f%n",
+                    kind == KINDS.length ? "all" : KINDS[kind], nanos.length, nanos.length / (double) seconds,
+                    pct(nanos, 50), pct(nanos, 99), nanos[nanos.length - 1] / 1e6);
+        }
+        System.out.println("errors: " + errors);
+    }
+
+    private static double pct(long[] sorted, int p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * p / 100.0) - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,245 @@
+package dao;
+
+import util.Log;
+import util.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of warm SQLite connections. Pragmas are applied once when a
+ * physical connection is opened, and each connection keeps its own cache of
+ * prepared statements so DAO calls stop re-compiling the same SQL.
+ *
+ * Borrowers get a proxy: close() hands the connection back to the pool, and
+ * close() on a cached statement only clears it for the next borrower.
+ */
+class ConnectionPool {
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final long ACQUIRE_TIMEOUT_MS = 30_000;
+    private static final long WAIT_SLICE_MS = 50;
+
+    // every borrower that found the pool empty and had to wait
+    private static final Metrics.Counter WAITS = Metrics.counter("db.pool.waits");
+
+    /** Opens a physical connection with its pragmas applied. */
+    interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    private final int maxSize;
+    private final Opener opener;
+    private final BlockingQueue<PooledConnection> idle;
+    private final AtomicInteger opened = new AtomicInteger();
+    private volatile boolean closed;
+
+    ConnectionPool(int maxSize, Opener opener) {
+        this.maxSize = maxSize;
+        this.opener = opener;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    Connection acquire() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        PooledConnection pc = idle.poll();
+        if (pc == null) pc = openIfRoom();
+        if (pc == null) {
+            WAITS.increment();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACQUIRE_TIMEOUT_MS);
+            try {
+                // short slices: a discarded connection frees a slot without putting anything in idle
+                while (pc == null) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) throw new SQLException("Timed out waiting for a pooled connection");
+                    pc = idle.poll(Math.min(left, TimeUnit.MILLISECONDS.toNanos(WAIT_SLICE_MS)), TimeUnit.NANOSECONDS);
+                    if (pc == null) {
+                        if (closed) throw new SQLException("Connection pool is closed");
+                        pc = openIfRoom();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection", e);
+            }
+        }
+        return pc.checkout();
+    }
+
+    // a new physical connection if fewer than maxSize are open, else null
+    private PooledConnection openIfRoom() throws SQLException {
+        int n;
+        do {
+            n = opened.get();
+            if (n >= maxSize) return null;
+        } while (!opened.compareAndSet(n, n + 1));
+        try {
+            return new PooledConnection(opener.open());
+        } catch (SQLException e) {
+            opened.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        try {
+            pc.reset();
+        } catch (SQLException e) {
+            Log.warn("Discarding pooled connection: {}", e.getMessage());
+            discard(pc);
+            return;
+        }
+        if (closed || !idle.offer(pc)) discard(pc);
+    }
+
+    private void discard(PooledConnection pc) {
+        opened.decrementAndGet();
+        pc.closePhysical();
+    }
+
+    void close() {
+        closed = true;
+        PooledConnection pc;
+        while ((pc = idle.poll()) != null) discard(pc);
+    }
+
+    private final class PooledConnection {
+        private final Connection raw;
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() <= STATEMENT_CACHE_SIZE) return false;
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                };
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        Connection checkout() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new ConnectionHandle(this));
+        }
+
+        PreparedStatement prepare(Connection handle, String sql, int generatedKeys) throws SQLException {
+            String key = generatedKeys == Statement.NO_GENERATED_KEYS ? sql : generatedKeys + ":" + sql;
+            PreparedStatement ps = statements.get(key);
+            if (ps == null) {
+                ps = raw.prepareStatement(sql, generatedKeys);
+                statements.put(key, ps);
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new StatementHandle(handle, ps));
+        }
+
+        void reset() throws SQLException {
+            // DAO code may flip auto-commit or leave a read transaction open
+            if (raw.getAutoCommit()) raw.setAutoCommit(false);
+            else raw.rollback();
+        }
+
+        void closePhysical() {
+            for (PreparedStatement ps : statements.values()) closeQuietly(ps);
+            statements.clear();
+            try {
+                raw.close();
+            } catch (SQLException e) {
+                Log.warn("Failed to close connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private final class ConnectionHandle implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean closed;
+
+        ConnectionHandle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    release(pc);
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) return closed;
+            if (closed) throw new SQLException("Connection already returned to the pool");
+            if (name.equals("prepareStatement") && args.length == 1) {
+                return pc.prepare((Connection) proxy, (String) args[0], Statement.NO_GENERATED_KEYS);
+            }
+            if (name.equals("prepareStatement") && args.length == 2 && args[1] instanceof Integer) {
+                return pc.prepare((Connection) proxy, (String) args[0], (Integer) args[1]);
+            }
+            return delegate(pc.raw, method, args);
+        }
+    }
+
+    private static final class StatementHandle implements InvocationHandler {
+        private final Connection handle;
+        private final PreparedStatement ps;
+        private ResultSet current;
+
+        StatementHandle(Connection handle, PreparedStatement ps) {
+            this.handle = handle;
+            this.ps = ps;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (current != null) current.close();
+                    current = null;
+                    ps.clearParameters();
+                    return null;
+                case "getConnection":
+                    return handle;
+                case "executeQuery":
+                    if (current != null) current.close();
+                    current = (ResultSet) delegate(ps, method, args);
+                    return current;
+                default:
+                    return delegate(ps, method, args);
+            }
+        }
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void closeQuietly(Statement s) {
+        try {
+            s.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
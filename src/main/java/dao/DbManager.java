@@ -1,65 +1,251 @@
 package dao;
 
-import util.SimpleLogger;
+import util.Log;
+import util.Metrics;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
 public class DbManager {
-    private static final String DB_URL = "jdbc:sqlite:warehouse.db";
+    private static volatile String dbUrl = System.getProperty("wms.db.url", "jdbc:sqlite:warehouse.db");
+    // 0 disables pooling and opens a fresh connection per call
+    private static volatile int poolSize = Integer.getInteger("wms.db.poolSize", 4);
+
+    private static volatile StorageProfile profile = StorageProfile.fromSystemProperties();
+    private static ConnectionPool pool;
+
+    private static final Metrics.Histogram ACQUIRE = Metrics.timer("db.connection.acquire");
+    private static final Metrics.Histogram OPEN = Metrics.timer("db.connection.open");
+
+    // schema history under resources/sql/migrations, oldest first; append new files, never edit applied ones
+    private static final String[] MIGRATIONS = {
+            "001_schema.sql",
+            "002_catalog_meta.sql",
+            "003_stock_snapshot.sql",
+            "004_sites.sql",
+            "005_located_stock.sql",
+    };
+    private static final Pattern TRIGGER = Pattern.compile("^(--[^\\n]*\\n\\s*)*CREATE\\s+(TEMP\\s+|TEMPORARY\\s+)?TRIGGER\\b");
+    private static final Pattern ADD_COLUMN = Pattern.compile("^(--[^\\n]*\\n\\s*)*ALTER\\s+TABLE\\s+\\S+\\s+ADD\\s+(COLUMN\\s+)?");
 
     static {
         try {
             Class.forName("org.sqlite.JDBC");
         } catch (ClassNotFoundException e) {
-            SimpleLogger.error("SQLite JDBC not found");
+            Log.error("SQLite JDBC not found");
         }
     }
 
     public static Connection getConnection() throws SQLException {
-        Connection conn = DriverManager.getConnection(DB_URL);
+        long start = System.nanoTime();
+        Connection c = poolSize <= 0 ? openConnection() : pool().acquire();
+        ACQUIRE.recordSince(start);
+        return c;
+    }
+
+    private static synchronized ConnectionPool pool() {
+        if (pool == null) pool = new ConnectionPool(poolSize, DbManager::openConnection);
+        return pool;
+    }
+
+    static Connection openConnection() throws SQLException {
+        return openConnection(dbUrl);
+    }
+
+    // also used for the site shards, which share the storage profile
+    static Connection openConnection(String url) throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = DriverManager.getConnection(url);
+        // Pragmas first: foreign_keys is a no-op once setAutoCommit(false) has opened a transaction
+        profile.applyConnectionPragmas(conn);
         conn.setAutoCommit(false);
-        try (Statement s = conn.createStatement()) {
-            s.execute("PRAGMA foreign_keys = ON;");
-        }
+        OPEN.recordSince(start);
         return conn;
     }
 
+    public static StorageProfile getStorageProfile() {
+        return profile;
+    }
+
+    /** Call before initDatabase(); pooled connections opened earlier keep their old pragmas. */
+    public static void setStorageProfile(StorageProfile p) {
+        profile = p;
+    }
+
+    public static String getDatabaseUrl() {
+        return dbUrl;
+    }
+
+    /** The database file, or null if the database is in memory or not a plain SQLite file URL. */
+    public static Path getDatabaseFile() {
+        String url = dbUrl;
+        if (!url.startsWith("jdbc:sqlite:") || url.contains(":memory:") || url.contains("mode=memory")) return null;
+        String path = url.substring("jdbc:sqlite:".length());
+        if (path.startsWith("file:")) path = path.substring("file:".length());
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        return path.isEmpty() ? null : Paths.get(path);
+    }
+
+    /**
+     * Points all later connections at another database, e.g. a temporary file
+     * for benchmarks. Closes the current pool; call initDatabase() next.
+     */
+    public static synchronized void useDatabase(String url, int newPoolSize) {
+        shutdown();
+        dbUrl = url;
+        poolSize = newPoolSize;
+    }
+
+    public static synchronized void shutdown() {
+        SiteShards.shutdown();
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    /**
+     * Brings the schema up to date. The database's PRAGMA user_version is the
+     * number of MIGRATIONS applied; each one runs in its own transaction with
+     * the version bump, so a current database costs a single pragma read.
+     * Migration 1 is written with IF NOT EXISTS, so databases created before
+     * versioning (user_version 0) take it as a no-op. SQLite has no ADD COLUMN
+     * IF NOT EXISTS, so a column a later migration adds that is already there
+     * is skipped, keeping every migration safe to apply again.
+     */
     public static void initDatabase() throws Exception {
-        // Try to find resources/sql/schema.sql in classpath; fallback to file path in project resources
-        InputStream in = DbManager.class.getResourceAsStream("/sql/schema.sql");
-        String sql = null;
+        try (Connection c = DriverManager.getConnection(dbUrl)) {
+            profile.applyJournalMode(c);
+            profile.applyConnectionPragmas(c);
+            Log.info("Storage profile: {}", profile);
+            if (!migrate(c, "migrations", MIGRATIONS)) return;
+            StockRollups.backfillIfEmpty(c);
+            c.commit();
+        }
+    }
+
+    /**
+     * Applies the scripts of resources/sql/{dir} that the database has not had
+     * yet, each in its own transaction with the version bump; false if it was
+     * already current. Leaves c in manual-commit mode.
+     */
+    static boolean migrate(Connection c, String dir, String[] migrations) throws SQLException, IOException {
+        int version = userVersion(c);
+        if (version >= migrations.length) {
+            Log.debug("Schema is current (version {})", version);
+            return false;
+        }
+        c.setAutoCommit(false);
+        for (int v = version; v < migrations.length; v++) {
+            String sql = readMigration(dir, migrations[v]);
+            if (sql == null) {
+                Log.warn("Migration {} not found; schema left at version {}", migrations[v], v);
+                c.rollback();
+                return false;
+            }
+            try (Statement st = c.createStatement()) {
+                for (String stmt : splitStatements(sql)) execute(st, stmt);
+                // takes effect with the commit, so a failed migration leaves the version as it was
+                st.execute("PRAGMA user_version = " + (v + 1));
+            }
+            c.commit();
+            Log.info("Schema migrated to version {} ({})", v + 1, migrations[v]);
+        }
+        return true;
+    }
+
+    /**
+     * Ends the driver's deferred transaction on c and opens one with BEGIN
+     * IMMEDIATE, which takes the database write lock before anything is read.
+     * Finish it with commitImmediate or rollbackImmediate.
+     */
+    static void beginImmediate(Connection c) throws SQLException {
+        c.setAutoCommit(true);
+        try (Statement st = c.createStatement()) {
+            st.execute("BEGIN IMMEDIATE");
+        }
+    }
+
+    static void commitImmediate(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("COMMIT");
+        }
+        c.setAutoCommit(false);
+    }
+
+    // also safe when beginImmediate failed part-way
+    static void rollbackImmediate(Connection c) throws SQLException {
+        if (!c.getAutoCommit()) {
+            c.rollback();
+            return;
+        }
+        try (Statement st = c.createStatement()) {
+            st.execute("ROLLBACK");
+        } catch (SQLException e) {
+            Log.debug("Nothing to roll back: {}", e.getMessage());
+        }
+        c.setAutoCommit(false);
+    }
+
+    private static void execute(Statement st, String stmt) throws SQLException {
+        try {
+            st.execute(stmt);
+        } catch (SQLException e) {
+            String msg = String.valueOf(e.getMessage());
+            if (!ADD_COLUMN.matcher(stmt.toUpperCase(Locale.ROOT)).find() || !msg.contains("duplicate column name")) throw e;
+            Log.debug("Column already present, skipped: {}", msg);
+        }
+    }
+
+    private static int userVersion(Connection c) throws SQLException {
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // Classpath first; fall back to the project's resources directory when run from the source tree
+    private static String readMigration(String dir, String name) throws IOException {
+        InputStream in = DbManager.class.getResourceAsStream("/sql/" + dir + "/" + name);
         if (in != null) {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
                 StringBuilder sb = new StringBuilder();
                 String line;
                 while ((line = reader.readLine()) != null) sb.append(line).append("\n");
-                sql = sb.toString();
-            }
-        } else {
-            // fallback to project file path
-            String fallback = "src/main/resources/sql/schema.sql";
-            if (Files.exists(Paths.get(fallback))) {
-                sql = new String(Files.readAllBytes(Paths.get(fallback)));
+                return sb.toString();
             }
         }
-        if (sql == null) {
-            SimpleLogger.info("No schema.sql found; skipping DB initialization");
-            return;
-        }
-        try (Connection c = DriverManager.getConnection(DB_URL)) {
-            c.setAutoCommit(false);
-            for (String stmt : sql.split(";")) {
-                String s = stmt.trim();
-                if (!s.isEmpty()) try (Statement st = c.createStatement()) {
-                    st.execute(s);
-                }
+        Path fallback = Paths.get("src/main/resources/sql", dir, name);
+        return Files.exists(fallback) ? new String(Files.readAllBytes(fallback), StandardCharsets.UTF_8) : null;
+    }
+
+    // Splits on ';', except inside a trigger body, which runs up to its END
+    private static List<String> splitStatements(String sql) {
+        List<String> out = new ArrayList<>();
+        StringBuilder stmt = new StringBuilder();
+        for (String part : sql.split(";")) {
+            stmt.append(part);
+            String s = stmt.toString().trim();
+            String upper = s.toUpperCase(Locale.ROOT);
+            if (TRIGGER.matcher(upper).find() && !upper.endsWith("END")) {
+                stmt.append(';');
+                continue;
             }
-            c.commit();
+            if (!s.isEmpty()) out.add(s);
+            stmt.setLength(0);
         }
+        return out;
     }
 }
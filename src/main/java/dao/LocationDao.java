@@ -0,0 +1,51 @@
+package dao;
+
+import model.BinStock;
+import model.LocatedStockDrift;
+import model.Location;
+import model.StockLevel;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Sites, their locations (zone and bin) and the stock in each bin. A site's
+ * locations, bin stock and bin movements live in its own shard file (see
+ * SiteShards), so bin movements at one site never contend with another's.
+ * product.quantity in the catalog remains the total: readUnsynced() and
+ * fold() bring it up to date with each site's bin movements, in batches,
+ * and keep product.located_quantity, the part of it in bins, alongside.
+ * Catalog movements, counts and imports only act on quantity minus
+ * located_quantity, so stock in a bin leaves only through a bin movement.
+ */
+public interface LocationDao {
+    void createSite(String code, String name) throws SQLException;
+    List<String> siteCodes() throws SQLException;
+
+    // returns the existing location if the site already has this zone and bin
+    Location createLocation(String site, String zone, String bin) throws SQLException;
+    Optional<Location> findLocation(String site, String zone, String bin) throws SQLException;
+    List<Location> findLocations(String site) throws SQLException;
+    // the bins holding the product, across all sites
+    List<BinStock> findStock(int productId) throws SQLException;
+
+    // one movement at one bin, written to the site's shard only; a bin never goes below 0
+    BinStock moveStock(Location location, int productId, int delta, String txType, String note) throws SQLException;
+    // one transaction within a site; across sites, out of the source and then into the destination,
+    // with the source restored if the second step fails
+    void transfer(Location from, Location to, int productId, int qty, String note) throws SQLException;
+
+    // at most limit bin movements after the site's watermark, summed per product and tx_type
+    SiteMoves readUnsynced(String site, int limit) throws SQLException;
+    // applies them to product.quantity, the ledger and the rollups with the watermark in one transaction;
+    // returns the new levels, or none if another process folded them first. A product whose quantity or
+    // located_quantity would go below 0 is left out, logged and counted as rejected; findLocatedDrift() reports it
+    List<StockLevel> fold(SiteMoves moves) throws SQLException;
+    // products where located_quantity plus the unsynced bin movements differ from the bin_stock sum across
+    // sites, or where located_quantity exceeds quantity
+    List<LocatedStockDrift> findLocatedDrift() throws SQLException;
+
+    String TX_TRANSFER_OUT = "transfer_out";
+    String TX_TRANSFER_IN = "transfer_in";
+}
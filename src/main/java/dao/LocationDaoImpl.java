@@ -0,0 +1,415 @@
+package dao;
+
+import model.BinStock;
+import model.LocatedStockDrift;
+import model.Location;
+import model.StockLevel;
+import util.Log;
+import util.Metrics;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class LocationDaoImpl implements LocationDao {
+
+    private static final String SQL_RECEIVE = "INSERT INTO bin_stock (location_id, product_id, quantity) VALUES (?,?,?)"
+            + " ON CONFLICT(location_id, product_id) DO UPDATE SET quantity = quantity + excluded.quantity RETURNING quantity";
+    private static final String SQL_DISPATCH = "UPDATE bin_stock SET quantity = quantity + ?"
+            + " WHERE location_id = ? AND product_id = ? AND quantity + ? >= 0 RETURNING quantity";
+    private static final String SQL_INSERT_MOVE =
+            "INSERT INTO bin_movement (location_id, product_id, change, tx_type, note, tx_time) VALUES (?,?,?,?,?,?)";
+    private static final String SQL_FOLD_PRODUCT = "UPDATE product SET quantity = quantity + ?, located_quantity = located_quantity + ?"
+            + " WHERE product_id = ? AND quantity + ? >= 0 AND located_quantity + ? >= 0 RETURNING quantity, min_stock";
+    private static final String SQL_FOLD_TX =
+            "INSERT INTO inventory_transaction (product_id, change, tx_type, note, tx_time) VALUES (?,?,?,?,?)";
+
+    private static final Metrics.Histogram T_MOVE = Metrics.timer("dao.location.move");
+    private static final Metrics.Histogram T_FOLD = Metrics.timer("dao.location.fold");
+    private static final Metrics.Counter FOLDED = Metrics.counter("site.moves.folded");
+    private static final Metrics.Counter REJECTED = Metrics.counter("site.moves.rejected");
+
+    @Override
+    public void createSite(String code, String name) throws SQLException {
+        SiteShards.checkCode(code);
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO site (code, name) VALUES (?,?)")) {
+            ps.setString(1, code);
+            ps.setString(2, name);
+            ps.executeUpdate();
+            c.commit();
+        }
+        // creates the shard file now rather than on the first movement
+        SiteShards.getConnection(code).close();
+        Log.info("Site created: {} ({})", code, name);
+    }
+
+    @Override
+    public List<String> siteCodes() throws SQLException {
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT code FROM site ORDER BY code");
+             ResultSet rs = ps.executeQuery()) {
+            List<String> codes = new ArrayList<>();
+            while (rs.next()) codes.add(rs.getString(1));
+            c.commit();
+            return codes;
+        }
+    }
+
+    @Override
+    public Location createLocation(String site, String zone, String bin) throws SQLException {
+        try (Connection c = SiteShards.getConnection(site)) {
+            try (PreparedStatement ps = c.prepareStatement("INSERT OR IGNORE INTO location (zone, bin) VALUES (?,?)")) {
+                ps.setString(1, zone);
+                ps.setString(2, bin);
+                ps.executeUpdate();
+            }
+            Location l = findLocation(c, site, zone, bin).orElseThrow(() -> new SQLException("Location not created"));
+            c.commit();
+            return l;
+        }
+    }
+
+    @Override
+    public Optional<Location> findLocation(String site, String zone, String bin) throws SQLException {
+        try (Connection c = SiteShards.getConnection(site)) {
+            Optional<Location> l = findLocation(c, site, zone, bin);
+            c.commit();
+            return l;
+        }
+    }
+
+    private static Optional<Location> findLocation(Connection c, String site, String zone, String bin) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT location_id FROM location WHERE zone = ? AND bin = ?")) {
+            ps.setString(1, zone);
+            ps.setString(2, bin);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? Optional.of(new Location(site, rs.getInt(1), zone, bin)) : Optional.empty();
+            }
+        }
+    }
+
+    @Override
+    public List<Location> findLocations(String site) throws SQLException {
+        try (Connection c = SiteShards.getConnection(site);
+             PreparedStatement ps = c.prepareStatement("SELECT location_id, zone, bin FROM location ORDER BY zone, bin");
+             ResultSet rs = ps.executeQuery()) {
+            List<Location> locations = new ArrayList<>();
+            while (rs.next()) locations.add(new Location(site, rs.getInt(1), rs.getString(2), rs.getString(3)));
+            c.commit();
+            return locations;
+        }
+    }
+
+    @Override
+    public List<BinStock> findStock(int productId) throws SQLException {
+        List<BinStock> stock = new ArrayList<>();
+        for (String site : siteCodes()) {
+            try (Connection c = SiteShards.getConnection(site);
+                 PreparedStatement ps = c.prepareStatement("SELECT l.location_id, l.zone, l.bin, s.quantity"
+                         + " FROM bin_stock s JOIN location l ON l.location_id = s.location_id"
+                         + " WHERE s.product_id = ? AND s.quantity > 0 ORDER BY l.zone, l.bin")) {
+                ps.setInt(1, productId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Location l = new Location(site, rs.getInt(1), rs.getString(2), rs.getString(3));
+                        stock.add(new BinStock(l, productId, rs.getInt(4)));
+                    }
+                }
+                c.commit();
+            }
+        }
+        return stock;
+    }
+
+    @Override
+    public BinStock moveStock(Location location, int productId, int delta, String txType, String note) throws SQLException {
+        if (delta == 0) throw new IllegalArgumentException("A bin movement needs a non-zero quantity");
+        long start = System.nanoTime();
+        try (Connection c = SiteShards.getConnection(location.getSite())) {
+            try {
+                int quantity = move(c, location, productId, delta, txType, note, StockRollups.now());
+                c.commit();
+                T_MOVE.recordSince(start);
+                Log.debug("Bin movement {} of product {} at {}, now {}", delta, productId, location, quantity);
+                return new BinStock(location, productId, quantity);
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // the stock write comes first, so the transaction holds the shard's write lock from its first statement
+    private static int move(Connection c, Location location, int productId, int delta, String txType, String note,
+                            String txTime) throws SQLException {
+        int quantity;
+        if (delta > 0) {
+            try (PreparedStatement ps = c.prepareStatement(SQL_RECEIVE)) {
+                ps.setInt(1, location.getLocationId());
+                ps.setInt(2, productId);
+                ps.setInt(3, delta);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    quantity = rs.getInt(1);
+                }
+            }
+        } else {
+            try (PreparedStatement ps = c.prepareStatement(SQL_DISPATCH)) {
+                ps.setInt(1, delta);
+                ps.setInt(2, location.getLocationId());
+                ps.setInt(3, productId);
+                ps.setInt(4, delta);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) throw new SQLException("Insufficient stock at " + location);
+                    quantity = rs.getInt(1);
+                }
+            }
+        }
+        try (PreparedStatement ps = c.prepareStatement(SQL_INSERT_MOVE)) {
+            ps.setInt(1, location.getLocationId());
+            ps.setInt(2, productId);
+            ps.setInt(3, delta);
+            ps.setString(4, txType);
+            ps.setString(5, note);
+            ps.setString(6, txTime);
+            ps.executeUpdate();
+        }
+        return quantity;
+    }
+
+    @Override
+    public void transfer(Location from, Location to, int productId, int qty, String note) throws SQLException {
+        if (qty <= 0) throw new IllegalArgumentException("Transfer quantity must be positive");
+        if (from.equals(to)) throw new IllegalArgumentException("Transfer needs two different locations");
+        String outNote = joinNote(note, "to " + to);
+        String inNote = joinNote(note, "from " + from);
+        if (from.getSite().equals(to.getSite())) {
+            try (Connection c = SiteShards.getConnection(from.getSite())) {
+                try {
+                    String now = StockRollups.now();
+                    move(c, from, productId, -qty, TX_TRANSFER_OUT, outNote, now);
+                    move(c, to, productId, qty, TX_TRANSFER_IN, inNote, now);
+                    c.commit();
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                }
+            }
+            return;
+        }
+        // two files cannot share a transaction (WAL commits are atomic per file), so compensate instead
+        moveStock(from, productId, -qty, TX_TRANSFER_OUT, outNote);
+        try {
+            moveStock(to, productId, qty, TX_TRANSFER_IN, inNote);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                moveStock(from, productId, qty, TX_TRANSFER_IN, joinNote(note, "returned, transfer to " + to + " failed"));
+            } catch (SQLException restore) {
+                Log.error("Transfer of {} x product {} left {} short: {}", qty, productId, from, restore.getMessage());
+                e.addSuppressed(restore);
+            }
+            throw e;
+        }
+    }
+
+    private static String joinNote(String note, String detail) {
+        return note == null || note.isEmpty() ? detail : note + "; " + detail;
+    }
+
+    @Override
+    public SiteMoves readUnsynced(String site, int limit) throws SQLException {
+        long synced;
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT synced_move_id FROM site WHERE code = ?")) {
+            ps.setString(1, site);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Site not found: " + site);
+                synced = rs.getLong(1);
+            }
+            c.commit();
+        }
+        // {units, movements} per product and tx_type, in first-seen order
+        Map<Integer, Map<String, long[]>> sums = new LinkedHashMap<>();
+        int n = 0;
+        long last = synced;
+        try (Connection c = SiteShards.getConnection(site);
+             PreparedStatement ps = c.prepareStatement("SELECT move_id, product_id, change, tx_type FROM bin_movement"
+                     + " WHERE move_id > ? ORDER BY move_id LIMIT ?")) {
+            ps.setLong(1, synced);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    last = rs.getLong(1);
+                    Map<String, long[]> byType = sums.computeIfAbsent(rs.getInt(2), k -> new LinkedHashMap<>());
+                    long[] s = byType.get(rs.getString(4));
+                    if (s == null) {
+                        byType.put(rs.getString(4), s = new long[2]);
+                        n++;
+                    }
+                    s[0] += rs.getInt(3);
+                    s[1]++;
+                }
+            }
+            c.commit();
+        }
+        int[] ids = new int[n];
+        String[] types = new String[n];
+        long[] units = new long[n];
+        long[] movements = new long[n];
+        int i = 0;
+        for (Map.Entry<Integer, Map<String, long[]>> p : sums.entrySet()) {
+            for (Map.Entry<String, long[]> t : p.getValue().entrySet()) {
+                ids[i] = p.getKey();
+                types[i] = t.getKey();
+                units[i] = t.getValue()[0];
+                movements[i] = t.getValue()[1];
+                i++;
+            }
+        }
+        return new SiteMoves(site, synced, last, ids, types, units, movements);
+    }
+
+    @Override
+    public List<StockLevel> fold(SiteMoves moves) throws SQLException {
+        if (moves.isEmpty()) return Collections.emptyList();
+        long start = System.nanoTime();
+        String now = StockRollups.now();
+        String note = "site " + moves.site;
+        // {previous, quantity, min_stock} per product
+        Map<Integer, int[]> levels = new LinkedHashMap<>();
+        StockRollups rollups = new StockRollups();
+        int rejected = 0;
+        try (Connection c = DbManager.getConnection()) {
+            try {
+                // write-first: takes the write lock and claims the batch, which fails if another process folded it
+                try (PreparedStatement ps = c.prepareStatement(
+                        "UPDATE site SET synced_move_id = ? WHERE code = ? AND synced_move_id = ?")) {
+                    ps.setLong(1, moves.toMoveId);
+                    ps.setString(2, moves.site);
+                    ps.setLong(3, moves.fromMoveId);
+                    if (ps.executeUpdate() == 0) {
+                        c.rollback();
+                        return Collections.emptyList();
+                    }
+                }
+                try (PreparedStatement product = c.prepareStatement(SQL_FOLD_PRODUCT);
+                     PreparedStatement exists = c.prepareStatement("SELECT 1 FROM product WHERE product_id = ?");
+                     PreparedStatement tx = c.prepareStatement(SQL_FOLD_TX)) {
+                    for (int i = 0; i < moves.productIds.length; i++) {
+                        long units = moves.units[i];
+                        if (units == 0) continue;
+                        int id = moves.productIds[i];
+                        product.setLong(1, units);
+                        product.setLong(2, units);
+                        product.setInt(3, id);
+                        product.setLong(4, units);
+                        product.setLong(5, units);
+                        try (ResultSet rs = product.executeQuery()) {
+                            if (!rs.next()) {
+                                // a product deleted from the catalog since is skipped, its bin rows are left as they are
+                                if (isKnown(exists, id)) {
+                                    rejected++;
+                                    Log.warn("Site {}: {} units of product {} not folded, they would take its stock"
+                                            + " below zero", moves.site, units, id);
+                                }
+                                continue;
+                            }
+                            int quantity = rs.getInt(1);
+                            int[] level = levels.computeIfAbsent(id, k -> new int[]{(int) (quantity - units), 0, 0});
+                            level[1] = quantity;
+                            level[2] = rs.getInt(2);
+                        }
+                        tx.setInt(1, id);
+                        tx.setLong(2, units);
+                        tx.setString(3, moves.txTypes[i]);
+                        tx.setString(4, note);
+                        tx.setString(5, now);
+                        tx.addBatch();
+                        rollups.add(id, moves.txTypes[i], units, moves.movements[i]);
+                    }
+                    tx.executeBatch();
+                }
+                rollups.flush(c, now);
+                c.commit();
+            } catch (SQLException e) {
+                rollups.clear();
+                c.rollback();
+                throw e;
+            }
+        }
+        List<StockLevel> result = new ArrayList<>(levels.size());
+        for (Map.Entry<Integer, int[]> e : levels.entrySet()) {
+            int[] l = e.getValue();
+            result.add(new StockLevel(e.getKey(), l[0], l[1], l[2]));
+        }
+        FOLDED.add(moves.size());
+        if (rejected > 0) REJECTED.add(rejected);
+        T_FOLD.recordSince(start);
+        Log.debug("Folded {} bin movements of site {} into {} products", moves.size(), moves.site, result.size());
+        return result;
+    }
+
+    private static boolean isKnown(PreparedStatement exists, int productId) throws SQLException {
+        exists.setInt(1, productId);
+        try (ResultSet rs = exists.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    @Override
+    public List<LocatedStockDrift> findLocatedDrift() throws SQLException {
+        Map<String, Long> watermarks = new LinkedHashMap<>();
+        // {located_quantity, quantity, unsynced, in bins} per product with located stock or a bin row
+        Map<Integer, long[]> sums = new HashMap<>();
+        try (Connection c = DbManager.getConnection(); Statement st = c.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT code, synced_move_id FROM site")) {
+                while (rs.next()) watermarks.put(rs.getString(1), rs.getLong(2));
+            }
+            try (ResultSet rs = st.executeQuery(
+                    "SELECT product_id, located_quantity, quantity FROM product WHERE located_quantity <> 0")) {
+                while (rs.next()) sums.put(rs.getInt(1), new long[]{rs.getLong(2), rs.getLong(3), 0, 0});
+            }
+            c.commit();
+        }
+        for (Map.Entry<String, Long> site : watermarks.entrySet()) {
+            // one read transaction, so the bins and the movements not yet folded agree with each other
+            try (Connection c = SiteShards.getConnection(site.getKey())) {
+                try (PreparedStatement ps = c.prepareStatement(
+                        "SELECT product_id, SUM(change) FROM bin_movement WHERE move_id > ? GROUP BY product_id")) {
+                    ps.setLong(1, site.getValue());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) sums.computeIfAbsent(rs.getInt(1), k -> new long[4])[2] += rs.getLong(2);
+                    }
+                }
+                try (Statement st = c.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT product_id, SUM(quantity) FROM bin_stock GROUP BY product_id")) {
+                    while (rs.next()) sums.computeIfAbsent(rs.getInt(1), k -> new long[4])[3] += rs.getLong(2);
+                }
+                c.commit();
+            }
+        }
+        List<LocatedStockDrift> drift = new ArrayList<>();
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT sku, quantity FROM product WHERE product_id = ?")) {
+            for (Map.Entry<Integer, long[]> e : sums.entrySet()) {
+                long[] s = e.getValue();
+                if (s[0] + s[2] == s[3] && s[0] <= s[1]) continue;
+                ps.setInt(1, e.getKey());
+                try (ResultSet rs = ps.executeQuery()) {
+                    // bins of a product deleted from the catalog are not counted against it
+                    if (!rs.next()) continue;
+                    drift.add(new LocatedStockDrift(e.getKey(), rs.getString(1), rs.getInt(2), s[0], s[2], s[3]));
+                }
+            }
+            c.commit();
+        }
+        drift.sort((a, b) -> Integer.compare(a.getProductId(), b.getProductId()));
+        return drift;
+    }
+}
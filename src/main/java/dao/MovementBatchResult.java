@@ -0,0 +1,35 @@
+package dao;
+
+import model.StockLevel;
+
+import java.sql.SQLException;
+
+/** Per-movement outcome of ProductDao.applyMovements, indexed like the input list. */
+public class MovementBatchResult {
+    private final StockLevel[] levels;
+    private final SQLException[] errors;
+    private int applied;
+
+    MovementBatchResult(int size) {
+        levels = new StockLevel[size];
+        errors = new SQLException[size];
+    }
+
+    void applied(int i, StockLevel level) {
+        levels[i] = level;
+        applied++;
+    }
+
+    void rejected(int i, SQLException e) {
+        errors[i] = e;
+    }
+
+    public int size() { return levels.length; }
+    public int appliedCount() { return applied; }
+
+    /** New stock level, or null if the movement was rejected. */
+    public StockLevel level(int i) { return levels[i]; }
+
+    /** Why the movement was rejected, or null if it was applied. */
+    public SQLException error(int i) { return errors[i]; }
+}
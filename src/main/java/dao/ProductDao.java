@@ -1,17 +1,54 @@
 package dao;
 
 import model.Product;
+import model.StockLevel;
+import model.StockMovement;
 
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ProductDao {
     Product create(Product p) throws SQLException;
     Optional<Product> findById(int id) throws SQLException;
     Optional<Product> findBySku(String sku) throws SQLException;
     List<Product> findAll() throws SQLException;
-    void update(Product p) throws SQLException;
+    int count() throws SQLException;
+    // bumped by a trigger on every product insert, update and delete (catalog_meta), from any connection
+    long changeCount() throws SQLException;
+    // keyset page ordered by (name, product_id); pass afterName=null for the first page.
+    // skip drops rows past the key first, for jumps beyond the last page a caller has seen
+    List<Product> findPage(String afterName, int afterId, int skip, int limit) throws SQLException;
+    // keyset page in id order: the first limit products with ids above afterId
+    List<Product> findAfterId(int afterId, int limit) throws SQLException;
+    default List<Product> findPage(String afterName, int afterId, int limit) throws SQLException {
+        return findPage(afterName, afterId, 0, limit);
+    }
+    // products at or below min_stock, and name/SKU substring matches (exact SKU, then prefixes, then name order);
+    // for callers that do not hold the whole catalog in memory
+    List<Product> findLowStock() throws SQLException;
+    List<Product> search(String query, int limit) throws SQLException;
+    // rows are read lazily on one connection; close the stream to release it
+    Stream<Product> streamAll() throws SQLException;
+    // everything but quantity, which only movements change; returns the stored quantity, -1 if there is no such product
+    int update(Product p) throws SQLException;
     void delete(int id) throws SQLException;
-    void changeQuantity(int productId, int delta, String txType, String note) throws SQLException;
+    StockLevel changeQuantity(int productId, int delta, String txType, String note) throws SQLException;
+    // sets quantity with an adjust row for the difference, only if it is still expectedQuantity (a stock count)
+    StockLevel adjustQuantity(int productId, int expectedQuantity, int quantity, String note) throws SQLException;
+    // all movements share one commit; a rejected movement does not abort the others
+    MovementBatchResult applyMovements(List<StockMovement> movements) throws SQLException;
+
+    // ledger rows for quantities set directly rather than moved: a new product's starting stock,
+    // and the difference when an adjustment or upsert overwrites quantity, so the ledger always sums to it
+    String TX_OPENING = "opening";
+    String TX_ADJUST = "adjust";
+
+    // bulk paths: JDBC batches committed every BATCH_CHUNK rows; on failure earlier chunks stay committed
+    int BATCH_CHUNK = 1000;
+    int createAll(List<Product> products) throws SQLException;
+    int upsertAll(List<Product> products) throws SQLException;
+    // element i is 1 if movement i was applied, 0 if it was rejected for insufficient stock or unknown product
+    int[] changeQuantities(List<StockMovement> movements) throws SQLException;
 }
@@ -1,39 +1,184 @@
 package dao;
 
 import model.Product;
-import util.SimpleLogger;
+import model.StockLevel;
+import model.StockMovement;
+import util.Log;
+import util.Metrics;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ProductDaoImpl implements ProductDao {
 
+    private static final String SQL_INSERT =
+            "INSERT INTO product (sku,name,description,price,quantity,min_stock,supplier_id) VALUES (?,?,?,?,?,?,?)";
+    private static final String SQL_UPSERT = SQL_INSERT
+            + " ON CONFLICT(sku) DO UPDATE SET name=excluded.name, description=excluded.description,"
+            + " price=excluded.price, quantity=MAX(excluded.quantity, located_quantity), min_stock=excluded.min_stock,"
+            + " supplier_id=excluded.supplier_id";
+    // catalog writers never take quantity below located_quantity, the stock in site bins (see LocationDao)
+    private static final String SQL_CHANGE_QTY = "UPDATE product SET quantity = quantity + ?"
+            + " WHERE product_id=? AND quantity + ? >= located_quantity RETURNING quantity, min_stock";
+    private static final String SQL_INSERT_TX =
+            "INSERT INTO inventory_transaction (product_id, change, tx_type, note, tx_time) VALUES (?,?,?,?,?)";
+    // compare-and-set: a movement committed since the caller read the quantity makes it match nothing
+    private static final String SQL_SET_QTY = "UPDATE product SET quantity = ?"
+            + " WHERE product_id = ? AND quantity = ? AND located_quantity <= ? RETURNING min_stock";
+
+    private static final Metrics.Histogram T_CREATE = Metrics.timer("dao.create");
+    private static final Metrics.Histogram T_WRITE_ROWS = Metrics.timer("dao.writeRows");
+    private static final Metrics.Histogram T_FIND_BY_ID = Metrics.timer("dao.findById");
+    private static final Metrics.Histogram T_FIND_BY_SKU = Metrics.timer("dao.findBySku");
+    private static final Metrics.Histogram T_FIND_ALL = Metrics.timer("dao.findAll");
+    private static final Metrics.Histogram T_COUNT = Metrics.timer("dao.count");
+    private static final Metrics.Histogram T_FIND_PAGE = Metrics.timer("dao.findPage");
+    private static final Metrics.Histogram T_FIND_AFTER_ID = Metrics.timer("dao.findAfterId");
+    private static final Metrics.Histogram T_FIND_LOW_STOCK = Metrics.timer("dao.findLowStock");
+    private static final Metrics.Histogram T_SEARCH = Metrics.timer("dao.search");
+    private static final Metrics.Histogram T_UPDATE = Metrics.timer("dao.update");
+    private static final Metrics.Histogram T_DELETE = Metrics.timer("dao.delete");
+    private static final Metrics.Histogram T_CHANGE_QTY = Metrics.timer("dao.changeQuantity");
+    private static final Metrics.Histogram T_APPLY_MOVEMENTS = Metrics.timer("dao.applyMovements");
+    private static final Metrics.Histogram T_CHANGE_QTIES = Metrics.timer("dao.changeQuantities");
+    // phases of a single stock change: connection, conditional UPDATE, ledger INSERT, rollups, COMMIT
+    private static final Metrics.Histogram P_ACQUIRE = Metrics.timer("dao.changeQuantity.acquire");
+    private static final Metrics.Histogram P_UPDATE = Metrics.timer("dao.changeQuantity.update");
+    private static final Metrics.Histogram P_INSERT = Metrics.timer("dao.changeQuantity.insert");
+    private static final Metrics.Histogram P_ROLLUP = Metrics.timer("dao.changeQuantity.rollup");
+    private static final Metrics.Histogram P_COMMIT = Metrics.timer("dao.changeQuantity.commit");
+    private static final Metrics.Histogram P_BATCH_COMMIT = Metrics.timer("dao.applyMovements.commit");
+    private static final Metrics.Counter REJECTED = Metrics.counter("dao.movements.rejected");
+
     @Override
     public Product create(Product p) throws SQLException {
-        String sql = "INSERT INTO product (sku,name,description,price,quantity,min_stock,supplier_id) VALUES (?,?,?,?,?,?,?)";
+        long start = System.nanoTime();
         try (Connection c = DbManager.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, p.getSku());
-            ps.setString(2, p.getName());
-            ps.setString(3, p.getDescription());
-            ps.setDouble(4, p.getPrice());
-            ps.setInt(5, p.getQuantity());
-            ps.setInt(6, p.getMinStock());
-            if (p.getSupplierId() == null) ps.setNull(7, Types.INTEGER);
-            else ps.setInt(7, p.getSupplierId());
+             PreparedStatement ps = c.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS)) {
+            bindRow(ps, p);
             ps.executeUpdate();
             ResultSet rs = ps.getGeneratedKeys();
             if (rs.next()) p.setProductId(rs.getInt(1));
+            if (p.getQuantity() != 0) {
+                String now = StockRollups.now();
+                insertTransaction(c, p.getProductId(), p.getQuantity(), TX_OPENING, null, now);
+                StockRollups.record(c, p.getProductId(), TX_OPENING, p.getQuantity(), now);
+            }
             c.commit();
-            SimpleLogger.info("Product created: " + p);
+            T_CREATE.recordSince(start);
+            Log.info("Product created: {} {}", p.getProductId(), p.getSku());
             return p;
         }
     }
 
+    @Override
+    public int createAll(List<Product> products) throws SQLException {
+        int n = writeRows(SQL_INSERT, products);
+        Log.info("Bulk created {} products", n);
+        return n;
+    }
+
+    @Override
+    public int upsertAll(List<Product> products) throws SQLException {
+        int n = writeRows(SQL_UPSERT, products);
+        Log.info("Bulk upserted {} products", n);
+        return n;
+    }
+
+    // Product ids are not filled in: SQLite only reports the last generated key of a batch
+    private int writeRows(String sql, List<Product> products) throws SQLException {
+        long start = System.nanoTime();
+        int written = 0;
+        StockRollups rollups = new StockRollups();
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            try {
+                for (int from = 0; from < products.size(); from += BATCH_CHUNK) {
+                    List<Product> chunk = products.subList(from, Math.min(products.size(), from + BATCH_CHUNK));
+                    // take the write lock first, so the quantities read next cannot change before the batch
+                    DbManager.beginImmediate(c);
+                    Map<String, int[]> before = idsAndQuantities(c, chunk);
+                    for (Product p : chunk) {
+                        bindRow(ps, p);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    writeQuantityChanges(c, before, idsAndQuantities(c, chunk), rollups);
+                    DbManager.commitImmediate(c);
+                    written += chunk.size();
+                }
+            } catch (SQLException e) {
+                ps.clearBatch();
+                rollups.clear();
+                DbManager.rollbackImmediate(c);
+                throw e;
+            }
+        }
+        T_WRITE_ROWS.recordSince(start);
+        return written;
+    }
+
+    // {product_id, quantity} by SKU for the chunk's products that exist
+    private Map<String, int[]> idsAndQuantities(Connection c, List<Product> chunk) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT sku, product_id, quantity FROM product WHERE sku IN (");
+        for (int i = 0; i < chunk.size(); i++) sql.append(i == 0 ? "?" : ",?");
+        Map<String, int[]> rows = new HashMap<>(chunk.size() * 2);
+        try (PreparedStatement ps = c.prepareStatement(sql.append(')').toString())) {
+            for (int i = 0; i < chunk.size(); i++) ps.setString(i + 1, chunk.get(i).getSku());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) rows.put(rs.getString(1), new int[]{rs.getInt(2), rs.getInt(3)});
+            }
+        }
+        return rows;
+    }
+
+    // opening rows for new products, adjust rows for overwritten quantities
+    private void writeQuantityChanges(Connection c, Map<String, int[]> before, Map<String, int[]> after,
+                                      StockRollups rollups) throws SQLException {
+        String now = StockRollups.now();
+        try (PreparedStatement tx = c.prepareStatement(SQL_INSERT_TX)) {
+            for (Map.Entry<String, int[]> e : after.entrySet()) {
+                int[] old = before.get(e.getKey());
+                int id = e.getValue()[0];
+                int delta = e.getValue()[1] - (old == null ? 0 : old[1]);
+                if (delta == 0) continue;
+                String type = old == null ? TX_OPENING : TX_ADJUST;
+                tx.setInt(1, id);
+                tx.setInt(2, delta);
+                tx.setString(3, type);
+                tx.setNull(4, Types.VARCHAR);
+                tx.setString(5, now);
+                tx.addBatch();
+                rollups.add(id, type, delta);
+            }
+            tx.executeBatch();
+        }
+        rollups.flush(c, now);
+    }
+
+    private void bindRow(PreparedStatement ps, Product p) throws SQLException {
+        ps.setString(1, p.getSku());
+        ps.setString(2, p.getName());
+        ps.setString(3, p.getDescription());
+        ps.setDouble(4, p.getPrice());
+        ps.setInt(5, p.getQuantity());
+        ps.setInt(6, p.getMinStock());
+        if (p.getSupplierId() == null) ps.setNull(7, Types.INTEGER);
+        else ps.setInt(7, p.getSupplierId());
+    }
+
     @Override
     public Optional<Product> findById(int id) throws SQLException {
+        long start = System.nanoTime();
         String sql = "SELECT * FROM product WHERE product_id=?";
         try (Connection c = DbManager.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
@@ -42,12 +187,14 @@ public class ProductDaoImpl implements ProductDao {
             Product p = null;
             if (rs.next()) p = map(rs);
             c.commit();
+            T_FIND_BY_ID.recordSince(start);
             return Optional.ofNullable(p);
         }
     }
 
     @Override
     public Optional<Product> findBySku(String sku) throws SQLException {
+        long start = System.nanoTime();
         String sql = "SELECT * FROM product WHERE sku=?";
         try (Connection c = DbManager.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
@@ -56,12 +203,14 @@ public class ProductDaoImpl implements ProductDao {
             Product p = null;
             if (rs.next()) p = map(rs);
             c.commit();
+            T_FIND_BY_SKU.recordSince(start);
             return Optional.ofNullable(p);
         }
     }
 
     @Override
     public List<Product> findAll() throws SQLException {
+        long start = System.nanoTime();
         String sql = "SELECT * FROM product ORDER BY name";
         try (Connection c = DbManager.getConnection();
              PreparedStatement ps = c.prepareStatement(sql);
@@ -69,95 +218,408 @@ public class ProductDaoImpl implements ProductDao {
             List<Product> list = new ArrayList<>();
             while (rs.next()) list.add(map(rs));
             c.commit();
+            T_FIND_ALL.recordSince(start);
             return list;
         }
     }
 
     @Override
-    public void update(Product p) throws SQLException {
-        String sql = "UPDATE product SET sku=?,name=?,description=?,price=?,quantity=?,min_stock=?,supplier_id=? WHERE product_id=?";
+    public int count() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM product");
+             ResultSet rs = ps.executeQuery()) {
+            int n = rs.next() ? rs.getInt(1) : 0;
+            c.commit();
+            T_COUNT.recordSince(start);
+            return n;
+        }
+    }
+
+    @Override
+    public long changeCount() throws SQLException {
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT value FROM catalog_meta WHERE key = 'product_changes'");
+             ResultSet rs = ps.executeQuery()) {
+            long n = rs.next() ? rs.getLong(1) : 0;
+            c.commit();
+            return n;
+        }
+    }
+
+    @Override
+    public List<Product> findPage(String afterName, int afterId, int skip, int limit) throws SQLException {
+        long start = System.nanoTime();
+        String sql = afterName == null
+                ? "SELECT * FROM product ORDER BY name, product_id LIMIT ? OFFSET ?"
+                : "SELECT * FROM product WHERE (name, product_id) > (?, ?) ORDER BY name, product_id LIMIT ? OFFSET ?";
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            if (afterName != null) {
+                ps.setString(i++, afterName);
+                ps.setInt(i++, afterId);
+            }
+            ps.setInt(i++, limit);
+            ps.setInt(i, skip);
+            List<Product> page = new ArrayList<>(Math.min(limit, 1024));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) page.add(map(rs));
+            }
+            c.commit();
+            T_FIND_PAGE.recordSince(start);
+            return page;
+        }
+    }
+
+    @Override
+    public List<Product> findAfterId(int afterId, int limit) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT * FROM product WHERE product_id > ? ORDER BY product_id LIMIT ?")) {
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit);
+            List<Product> page = new ArrayList<>(Math.min(limit, 1024));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) page.add(map(rs));
+            }
+            c.commit();
+            T_FIND_AFTER_ID.recordSince(start);
+            return page;
+        }
+    }
+
+    @Override
+    public List<Product> findLowStock() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT * FROM product WHERE quantity <= min_stock");
+             ResultSet rs = ps.executeQuery()) {
+            List<Product> low = new ArrayList<>();
+            while (rs.next()) low.add(map(rs));
+            c.commit();
+            T_FIND_LOW_STOCK.recordSince(start);
+            return low;
+        }
+    }
+
+    @Override
+    public List<Product> search(String query, int limit) throws SQLException {
+        long start = System.nanoTime();
+        // LIKE is case-insensitive for ASCII; % and _ in the query are matched literally
+        String q = query == null ? "" : query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        String sql = "SELECT * FROM product WHERE sku LIKE ? ESCAPE '\\' OR name LIKE ? ESCAPE '\\'"
+                + " ORDER BY CASE WHEN sku LIKE ? ESCAPE '\\' THEN 0 WHEN sku LIKE ? ESCAPE '\\' THEN 1"
+                + " WHEN name LIKE ? ESCAPE '\\' THEN 2 ELSE 3 END, name, product_id LIMIT ?";
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, "%" + q + "%");
+            ps.setString(2, "%" + q + "%");
+            ps.setString(3, q);
+            ps.setString(4, q + "%");
+            ps.setString(5, q + "%");
+            ps.setInt(6, limit);
+            List<Product> hits = new ArrayList<>(Math.min(limit, 1024));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) hits.add(map(rs));
+            }
+            c.commit();
+            T_SEARCH.recordSince(start);
+            return hits;
+        }
+    }
+
+    @Override
+    public Stream<Product> streamAll() throws SQLException {
+        Connection c = DbManager.getConnection();
+        PreparedStatement ps = null;
+        ResultSet rs;
+        try {
+            ps = c.prepareStatement("SELECT * FROM product ORDER BY product_id");
+            rs = ps.executeQuery();
+        } catch (SQLException e) {
+            if (ps != null) ps.close();
+            c.close();
+            throw e;
+        }
+        PreparedStatement stmt = ps;
+        Spliterator<Product> rows = new Spliterators.AbstractSpliterator<Product>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Product> action) {
+                try {
+                    if (!rs.next()) return false;
+                    action.accept(map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                rs.close();
+                stmt.close();
+                c.commit();
+                c.close();
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
+            }
+        });
+    }
+
+    @Override
+    public int update(Product p) throws SQLException {
+        long start = System.nanoTime();
+        // quantity is left out: the caller's copy may predate movements committed since it was read
+        String sql = "UPDATE product SET sku=?,name=?,description=?,price=?,min_stock=?,supplier_id=? WHERE product_id=?"
+                + " RETURNING quantity";
         try (Connection c = DbManager.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, p.getSku());
             ps.setString(2, p.getName());
             ps.setString(3, p.getDescription());
             ps.setDouble(4, p.getPrice());
-            ps.setInt(5, p.getQuantity());
-            ps.setInt(6, p.getMinStock());
-            if (p.getSupplierId() == null) ps.setNull(7, Types.INTEGER);
-            else ps.setInt(7, p.getSupplierId());
-            ps.setInt(8, p.getProductId());
-            ps.executeUpdate();
+            ps.setInt(5, p.getMinStock());
+            if (p.getSupplierId() == null) ps.setNull(6, Types.INTEGER);
+            else ps.setInt(6, p.getSupplierId());
+            ps.setInt(7, p.getProductId());
+            int quantity;
+            try (ResultSet rs = ps.executeQuery()) {
+                quantity = rs.next() ? rs.getInt(1) : -1;
+            }
             c.commit();
-            SimpleLogger.info("Product updated: " + p);
+            T_UPDATE.recordSince(start);
+            Log.info("Product updated: {} {}", p.getProductId(), p.getSku());
+            return quantity;
+        }
+    }
+
+    @Override
+    public StockLevel adjustQuantity(int productId, int expectedQuantity, int quantity, String note) throws SQLException {
+        if (quantity < 0) throw new IllegalArgumentException("Quantity cannot be negative: " + quantity);
+        try (Connection c = DbManager.getConnection()) {
+            try {
+                int minStock;
+                try (PreparedStatement ps = c.prepareStatement(SQL_SET_QTY)) {
+                    ps.setInt(1, quantity);
+                    ps.setInt(2, productId);
+                    ps.setInt(3, expectedQuantity);
+                    ps.setInt(4, quantity);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        minStock = rs.next() ? rs.getInt(1) : -1;
+                    }
+                }
+                if (minStock < 0) {
+                    // nothing matched: only now pay for a lookup to report why
+                    try (PreparedStatement ps = c.prepareStatement(
+                            "SELECT sku, quantity, located_quantity FROM product WHERE product_id=?")) {
+                        ps.setInt(1, productId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (!rs.next()) throw new SQLException("Product not found");
+                            if (rs.getInt(2) == expectedQuantity) {
+                                throw new SQLException("Stock of " + rs.getString(1) + " cannot be counted below the "
+                                        + rs.getInt(3) + " units in site bins");
+                            }
+                            throw new SQLException("Stock of " + rs.getString(1) + " changed to " + rs.getInt(2)
+                                    + " since it was read as " + expectedQuantity);
+                        }
+                    }
+                }
+                if (quantity != expectedQuantity) {
+                    String now = StockRollups.now();
+                    insertTransaction(c, productId, quantity - expectedQuantity, TX_ADJUST, note, now);
+                    StockRollups.record(c, productId, TX_ADJUST, quantity - expectedQuantity, now);
+                }
+                c.commit();
+                return new StockLevel(productId, expectedQuantity, quantity, minStock);
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
         }
     }
 
     @Override
     public void delete(int id) throws SQLException {
+        long start = System.nanoTime();
         String sql = "DELETE FROM product WHERE product_id=?";
         try (Connection c = DbManager.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setInt(1, id);
             ps.executeUpdate();
             c.commit();
+            T_DELETE.recordSince(start);
         }
     }
 
-    // ===================== FIXED: ATOMIC TRANSACTION =====================
+    // ===================== ATOMIC CONDITIONAL UPDATE =====================
+    // The stock check and the write are one statement, so two concurrent dispatches
+    // can no longer both pass the check; RETURNING hands back the committed level.
+
     @Override
-    public void changeQuantity(int productId, int delta, String txType, String note) throws SQLException {
+    public StockLevel changeQuantity(int productId, int delta, String txType, String note) throws SQLException {
+        long start = System.nanoTime();
         Connection c = null;
         try {
-            c = DbManager.getConnection();
-            c.setAutoCommit(false); // START ATOMIC TRANSACTION
-
-            int currentQty;
+            c = DbManager.getConnection(); // auto-commit is already off: one atomic transaction
+            long t = System.nanoTime();
+            P_ACQUIRE.record(t - start);
+            StockLevel level = applyChange(c, productId, delta);
+            P_UPDATE.record(System.nanoTime() - t);
+            t = System.nanoTime();
+            String now = StockRollups.now();
+            insertTransaction(c, productId, delta, txType, note, now);
+            P_INSERT.record(System.nanoTime() - t);
+            t = System.nanoTime();
+            StockRollups.record(c, productId, txType, delta, now);
+            P_ROLLUP.record(System.nanoTime() - t);
+            t = System.nanoTime();
+            c.commit();
+            P_COMMIT.record(System.nanoTime() - t);
+            Log.debug("Atomic quantity change for product {} delta={}", productId, delta);
+            return level;
+        } catch (SQLException e) {
+            if (c != null) c.rollback(); // ROLLBACK ON FAILURE
+            throw e;
+        } finally {
+            if (c != null) c.close(); // pooled connections go back warm, statements stay prepared
+            T_CHANGE_QTY.recordSince(start);
+        }
+    }
 
-            // 1. Read current quantity
-            try (PreparedStatement ps =
-                         c.prepareStatement("SELECT quantity FROM product WHERE product_id=?")) {
-                ps.setInt(1, productId);
-                ResultSet rs = ps.executeQuery();
-                if (!rs.next()) throw new SQLException("Product not found");
-                currentQty = rs.getInt("quantity");
+    @Override
+    public MovementBatchResult applyMovements(List<StockMovement> movements) throws SQLException {
+        long start = System.nanoTime();
+        MovementBatchResult result = new MovementBatchResult(movements.size());
+        StockRollups rollups = new StockRollups();
+        Connection c = null;
+        try {
+            c = DbManager.getConnection();
+            String now = StockRollups.now();
+            for (int i = 0; i < movements.size(); i++) {
+                StockMovement m = movements.get(i);
+                // savepoint per movement: a failure undoes only that movement
+                Savepoint sp = c.setSavepoint();
+                try {
+                    StockLevel level = applyChange(c, m.getProductId(), m.getDelta());
+                    insertTransaction(c, m.getProductId(), m.getDelta(), m.getTxType(), m.getNote(), now);
+                    result.applied(i, level);
+                    rollups.add(m.getProductId(), m.getTxType(), m.getDelta());
+                } catch (SQLException e) {
+                    c.rollback(sp);
+                    result.rejected(i, e);
+                    REJECTED.increment();
+                }
+                c.releaseSavepoint(sp);
             }
+            rollups.flush(c, now);
+            long t = System.nanoTime();
+            c.commit();
+            P_BATCH_COMMIT.recordSince(t);
+            Log.debug("Group commit: {} of {} movements applied", result.appliedCount(), movements.size());
+            return result;
+        } catch (SQLException e) {
+            if (c != null) c.rollback();
+            throw e;
+        } finally {
+            if (c != null) c.close();
+            T_APPLY_MOVEMENTS.recordSince(start);
+        }
+    }
 
-            int updatedQty = currentQty + delta;
-            if (updatedQty < 0) throw new SQLException("Insufficient stock");
-
-            // 2. Update product quantity
-            try (PreparedStatement upd =
-                         c.prepareStatement("UPDATE product SET quantity=? WHERE product_id=?")) {
-                upd.setInt(1, updatedQty);
-                upd.setInt(2, productId);
-                upd.executeUpdate();
+    @Override
+    public int[] changeQuantities(List<StockMovement> movements) throws SQLException {
+        long start = System.nanoTime();
+        int[] applied = new int[movements.size()];
+        StockRollups rollups = new StockRollups();
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement upd = c.prepareStatement(
+                     "UPDATE product SET quantity = quantity + ? WHERE product_id=? AND quantity + ? >= located_quantity");
+             PreparedStatement tx = c.prepareStatement(SQL_INSERT_TX)) {
+            try {
+                for (int from = 0; from < movements.size(); from += BATCH_CHUNK) {
+                    int to = Math.min(movements.size(), from + BATCH_CHUNK);
+                    for (int i = from; i < to; i++) {
+                        StockMovement m = movements.get(i);
+                        upd.setInt(1, m.getDelta());
+                        upd.setInt(2, m.getProductId());
+                        upd.setInt(3, m.getDelta());
+                        upd.addBatch();
+                    }
+                    int[] counts = upd.executeBatch();
+                    String now = StockRollups.now();
+                    // only movements whose conditional update matched get a ledger row
+                    for (int i = from; i < to; i++) {
+                        if (counts[i - from] <= 0) continue;
+                        StockMovement m = movements.get(i);
+                        applied[i] = 1;
+                        tx.setInt(1, m.getProductId());
+                        tx.setInt(2, m.getDelta());
+                        tx.setString(3, m.getTxType());
+                        tx.setString(4, m.getNote());
+                        tx.setString(5, now);
+                        tx.addBatch();
+                        rollups.add(m.getProductId(), m.getTxType(), m.getDelta());
+                    }
+                    tx.executeBatch();
+                    rollups.flush(c, now);
+                    c.commit();
+                }
+            } catch (SQLException e) {
+                upd.clearBatch();
+                tx.clearBatch();
+                rollups.clear();
+                c.rollback();
+                throw e;
             }
+        }
+        T_CHANGE_QTIES.recordSince(start);
+        Log.info("Bulk applied {} quantity changes", movements.size());
+        return applied;
+    }
 
-            // 3. Insert inventory transaction record
-            try (PreparedStatement tx =
-                         c.prepareStatement(
-                                 "INSERT INTO inventory_transaction (product_id, change, tx_type, note) VALUES (?,?,?,?)")) {
-                tx.setInt(1, productId);
-                tx.setInt(2, delta);
-                tx.setString(3, txType);
-                tx.setString(4, note);
-                tx.executeUpdate();
+    private StockLevel applyChange(Connection c, int productId, int delta) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(SQL_CHANGE_QTY)) {
+            ps.setInt(1, delta);
+            ps.setInt(2, productId);
+            ps.setInt(3, delta);
+            // the result set must be closed before commit, or SQLite still sees the UPDATE in progress
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    int qty = rs.getInt(1);
+                    return new StockLevel(productId, qty - delta, qty, rs.getInt(2));
+                }
             }
-
-            c.commit(); // COMMIT BOTH OPERATIONS TOGETHER
-            SimpleLogger.info("Atomic quantity change for product " + productId + " delta=" + delta);
-
-        } catch (SQLException e) {
-            if (c != null) c.rollback(); // ROLLBACK ON FAILURE
-            throw e;
-        } finally {
-            if (c != null) {
-                c.setAutoCommit(true);
-                c.close();
+        }
+        // nothing matched: only now pay for a lookup to report why
+        try (PreparedStatement ps = c.prepareStatement("SELECT quantity, located_quantity FROM product WHERE product_id=?")) {
+            ps.setInt(1, productId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Product not found");
+                int located = rs.getInt(2);
+                if (located > 0 && rs.getInt(1) + delta >= 0) {
+                    throw new SQLException("Insufficient stock outside site bins: " + located + " of " + rs.getInt(1)
+                            + " units are in bins, move them at their locations");
+                }
+                throw new SQLException("Insufficient stock");
             }
         }
     }
+
+    // txTime is set here rather than by CURRENT_TIMESTAMP so the ledger row and its rollup buckets agree
+    private void insertTransaction(Connection c, int productId, int delta, String txType, String note,
+                                   String txTime) throws SQLException {
+        try (PreparedStatement tx = c.prepareStatement(SQL_INSERT_TX)) {
+            tx.setInt(1, productId);
+            tx.setInt(2, delta);
+            tx.setString(3, txType);
+            tx.setString(4, note);
+            tx.setString(5, txTime);
+            tx.executeUpdate();
+        }
+    }
     // ====================================================================
 
     private Product map(ResultSet rs) throws SQLException {
@@ -0,0 +1,40 @@
+package dao;
+
+import java.util.Arrays;
+
+/**
+ * A site's bin movements after its catalog watermark, summed per product and
+ * tx_type: the batch LocationDao.fold() applies to product.quantity in one
+ * transaction, so a burst of bin movements costs one update per product.
+ */
+public final class SiteMoves {
+    final String site;
+    // (fromMoveId, toMoveId]: the site's synced_move_id when read, and the last movement read
+    final long fromMoveId;
+    final long toMoveId;
+    final int[] productIds;
+    final String[] txTypes;
+    final long[] units;
+    final long[] movements;
+
+    SiteMoves(String site, long fromMoveId, long toMoveId,
+              int[] productIds, String[] txTypes, long[] units, long[] movements) {
+        this.site = site;
+        this.fromMoveId = fromMoveId;
+        this.toMoveId = toMoveId;
+        this.productIds = productIds;
+        this.txTypes = txTypes;
+        this.units = units;
+        this.movements = movements;
+    }
+
+    public String getSite() { return site; }
+    public boolean isEmpty() { return toMoveId == fromMoveId; }
+    /** Number of bin movements covered. */
+    public long size() { return toMoveId - fromMoveId; }
+
+    /** The distinct products moved, e.g. to lock before fold(). */
+    public int[] productIds() {
+        return Arrays.stream(productIds).distinct().toArray();
+    }
+}
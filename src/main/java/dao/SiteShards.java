@@ -0,0 +1,105 @@
+package dao;
+
+import util.Log;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The per-site SQLite files ("site shards") holding each site's locations,
+ * bin stock and bin movements, with a small connection pool per site. Writes
+ * at different sites go to different files, so they never wait on each
+ * other's write lock, WAL or fsync.
+ *
+ * A shard is {@code <database>.site-<code>.db} next to the catalog database,
+ * or in {@code wms.sites.dir}; with an in-memory catalog the shards are in
+ * memory too. A shard is opened, and its schema brought up to date, on first
+ * use, and only for sites registered in the catalog's site table.
+ */
+final class SiteShards {
+
+    // schema history under resources/sql/site, as for the catalog's MIGRATIONS
+    private static final String[] MIGRATIONS = {
+            "001_site.sql",
+    };
+    private static final Pattern CODE = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+    // read without locking, so movements at different sites share no monitor; opened and closed under SiteShards.class
+    private static final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    private SiteShards() {
+    }
+
+    static Connection getConnection(String site) throws SQLException {
+        ConnectionPool pool = site == null ? null : pools.get(site);
+        return (pool != null ? pool : open(site)).acquire();
+    }
+
+    /** Site codes name files, so they are limited to letters, digits, '-' and '_'. */
+    static String checkCode(String site) {
+        if (site == null || !CODE.matcher(site).matches()) {
+            throw new IllegalArgumentException("Site code must be 1-32 letters, digits, '-' or '_': " + site);
+        }
+        return site;
+    }
+
+    private static synchronized ConnectionPool open(String site) throws SQLException {
+        ConnectionPool pool = pools.get(site);
+        if (pool != null) return pool;
+        checkCode(site);
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT 1 FROM site WHERE code = ?")) {
+            ps.setString(1, site);
+            boolean known;
+            try (ResultSet rs = ps.executeQuery()) {
+                known = rs.next();
+            }
+            c.commit();
+            if (!known) throw new SQLException("Site not found: " + site);
+        }
+        String url = url(site);
+        pool = new ConnectionPool(Integer.getInteger("wms.sites.poolSize", 2), () -> DbManager.openConnection(url));
+        try (Connection c = DriverManager.getConnection(url)) {
+            StorageProfile profile = DbManager.getStorageProfile();
+            profile.applyJournalMode(c);
+            profile.applyConnectionPragmas(c);
+            DbManager.migrate(c, "site", MIGRATIONS);
+            // an in-memory shard lasts while a connection is open: leave one idle in the pool before this closes
+            pool.acquire().close();
+        } catch (IOException e) {
+            pool.close();
+            throw new SQLException("Cannot read the site schema", e);
+        } catch (SQLException e) {
+            pool.close();
+            throw e;
+        }
+        pools.put(site, pool);
+        Log.info("Site {} opened: {}", site, url);
+        return pool;
+    }
+
+    private static String url(String site) {
+        Path db = DbManager.getDatabaseFile();
+        if (db == null) {
+            // shared-cache memory databases live as long as a connection to them is open, i.e. the pool
+            return "jdbc:sqlite:file:wms-site-" + site + "?mode=memory&cache=shared";
+        }
+        String dir = System.getProperty("wms.sites.dir");
+        Path parent = dir != null ? Paths.get(dir) : db.toAbsolutePath().getParent();
+        return "jdbc:sqlite:" + parent.resolve(db.getFileName() + ".site-" + site + ".db");
+    }
+
+    static synchronized void shutdown() {
+        for (ConnectionPool pool : pools.values()) pool.close();
+        pools.clear();
+    }
+}
@@ -0,0 +1,26 @@
+package dao;
+
+import model.StockDrift;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Event-sourced stock: the append-only inventory_transaction table is the
+ * source of truth, and product.quantity is a projection of it. A product's
+ * ledger quantity is its stock_snapshot row plus the transactions after the
+ * snapshot watermark; snapshots fold that tail in so replays stay short.
+ */
+public interface StockLedgerDao {
+    // one product's ledger quantity, from its snapshot and its indexed tail
+    long ledgerQuantity(int productId) throws SQLException;
+
+    // folds the transactions since the last snapshot into stock_snapshot; returns the number folded in
+    long takeSnapshot() throws SQLException;
+
+    // replays the ledger tail in parallel and returns the products whose quantity disagrees, in id order
+    List<StockDrift> findDrift() throws SQLException;
+
+    // sets each product's quantity to its ledger quantity as of the repair; returns the products changed
+    List<StockDrift> repairDrift(List<StockDrift> drift) throws SQLException;
+}
@@ -0,0 +1,289 @@
+package dao;
+
+import model.StockDrift;
+import util.Log;
+import util.Metrics;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class StockLedgerDaoImpl implements StockLedgerDao {
+
+    private static final String WATERMARK = "stock_snapshot_tx";
+    // each thread takes several ranges, so one that draws a slow range does not hold up the rest
+    private static final int RANGES_PER_THREAD = 4;
+    private static final long MIN_RANGE = 65_536;
+
+    private static final String SQL_RANGE = "SELECT (SELECT value FROM catalog_meta WHERE key = '" + WATERMARK + "'),"
+            + " (SELECT IFNULL(MAX(tx_id), 0) FROM inventory_transaction),"
+            + " (SELECT IFNULL(MAX(product_id), 0) FROM product)";
+    // tx_id is the rowid, so each range is a contiguous slice of the table
+    private static final String SQL_TAIL = "SELECT product_id, change FROM inventory_transaction WHERE tx_id > ? AND tx_id <= ?";
+    private static final String SQL_PRODUCT_LEDGER = "SELECT p.sku, p.quantity, IFNULL(s.quantity, 0)"
+            + " + IFNULL((SELECT SUM(t.change) FROM inventory_transaction t WHERE t.product_id = p.product_id AND t.tx_id > ?), 0)"
+            + " FROM product p LEFT JOIN stock_snapshot s ON s.product_id = p.product_id WHERE p.product_id = ?";
+    // products deleted since the replay are skipped; their snapshot went with them
+    private static final String SQL_FOLD = "INSERT INTO stock_snapshot (product_id, quantity, taken_at)"
+            + " SELECT ?, ?, ? WHERE EXISTS (SELECT 1 FROM product WHERE product_id = ?)"
+            + " ON CONFLICT(product_id) DO UPDATE SET quantity = quantity + excluded.quantity, taken_at = excluded.taken_at";
+
+    private static final Metrics.Histogram T_REPLAY = Metrics.timer("dao.ledger.replay");
+    private static final Metrics.Histogram T_SNAPSHOT = Metrics.timer("dao.ledger.snapshot");
+    private static final Metrics.Histogram T_FIND_DRIFT = Metrics.timer("dao.ledger.findDrift");
+    private static final Metrics.Counter REPLAYED = Metrics.counter("ledger.replay.rows");
+
+    private final int replayThreads = Math.max(1,
+            Integer.getInteger("wms.ledger.replayThreads", Runtime.getRuntime().availableProcessors()));
+
+    // (watermark, newest tx_id, highest product_id), read in the caller's transaction
+    private static long[] readRange(Connection c) throws SQLException {
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery(SQL_RANGE)) {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)};
+        }
+    }
+
+    private static long watermark(Connection c) throws SQLException {
+        return readRange(c)[0];
+    }
+
+    @Override
+    public long ledgerQuantity(int productId) throws SQLException {
+        try (Connection c = DbManager.getConnection()) {
+            StockDrift d = productLedger(c, watermark(c), productId);
+            c.commit();
+            return d == null ? 0 : d.getLedgerQuantity();
+        }
+    }
+
+    // null if the product does not exist
+    private static StockDrift productLedger(Connection c, long watermark, int productId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(SQL_PRODUCT_LEDGER)) {
+            ps.setLong(1, watermark);
+            ps.setInt(2, productId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new StockDrift(productId, rs.getString(1), rs.getInt(2), rs.getLong(3)) : null;
+            }
+        }
+    }
+
+    @Override
+    public long takeSnapshot() throws SQLException {
+        long start = System.nanoTime();
+        long[] range;
+        try (Connection c = DbManager.getConnection()) {
+            range = readRange(c);
+            c.commit();
+        }
+        long from = range[0], to = range[1];
+        if (to <= from) return 0;
+        // rows up to `to` are committed and append-only, so the sums need no lock
+        long[] delta = sumChanges(from, to, (int) range[2]);
+        String now = StockRollups.now();
+        int folded = 0;
+        try (Connection c = DbManager.getConnection()) {
+            try {
+                // write-first: takes the write lock and fails if another snapshot moved the watermark meanwhile
+                try (PreparedStatement ps = c.prepareStatement("UPDATE catalog_meta SET value = ? WHERE key = ? AND value = ?")) {
+                    ps.setLong(1, to);
+                    ps.setString(2, WATERMARK);
+                    ps.setLong(3, from);
+                    if (ps.executeUpdate() == 0) {
+                        c.rollback();
+                        Log.info("Stock snapshot skipped: another one was taken meanwhile");
+                        return 0;
+                    }
+                }
+                try (PreparedStatement ps = c.prepareStatement(SQL_FOLD)) {
+                    for (int id = 0; id < delta.length; id++) {
+                        if (delta[id] == 0) continue;
+                        ps.setInt(1, id);
+                        ps.setLong(2, delta[id]);
+                        ps.setString(3, now);
+                        ps.setInt(4, id);
+                        ps.addBatch();
+                        if (++folded % ProductDao.BATCH_CHUNK == 0) ps.executeBatch();
+                    }
+                    ps.executeBatch();
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+        T_SNAPSHOT.recordSince(start);
+        Log.info("Stock snapshot at transaction {}: {} transactions folded into {} products", to, to - from, folded);
+        return to - from;
+    }
+
+    @Override
+    public List<StockDrift> findDrift() throws SQLException {
+        long start = System.nanoTime();
+        long[] range;
+        long[] ledger;
+        int[] quantity;
+        BitSet products = new BitSet();
+        // snapshot, quantities and the tail's bounds from one read transaction, so they agree with each other
+        try (Connection c = DbManager.getConnection()) {
+            range = readRange(c);
+            int maxId = (int) range[2];
+            ledger = new long[maxId + 1];
+            quantity = new int[maxId + 1];
+            try (Statement st = c.createStatement()) {
+                try (ResultSet rs = st.executeQuery("SELECT product_id, quantity FROM stock_snapshot")) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        if (id <= maxId) ledger[id] = rs.getLong(2);
+                    }
+                }
+                try (ResultSet rs = st.executeQuery("SELECT product_id, quantity FROM product")) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        products.set(id);
+                        quantity[id] = rs.getInt(2);
+                    }
+                }
+            }
+            c.commit();
+        }
+        long[] tail = sumChanges(range[0], range[1], (int) range[2]);
+        List<Integer> suspects = new ArrayList<>();
+        for (int id = products.nextSetBit(0); id >= 0; id = products.nextSetBit(id + 1)) {
+            long sum = ledger[id] + (id < tail.length ? tail[id] : 0);
+            if (quantity[id] != sum) suspects.add(id);
+        }
+        // the replay ran outside that transaction; confirm each suspect against the database as it is now
+        List<StockDrift> drift = new ArrayList<>();
+        if (!suspects.isEmpty()) {
+            try (Connection c = DbManager.getConnection()) {
+                long watermark = watermark(c);
+                for (int id : suspects) {
+                    StockDrift d = productLedger(c, watermark, id);
+                    if (d != null && d.getDrift() != 0) drift.add(d);
+                }
+                c.commit();
+            }
+        }
+        T_FIND_DRIFT.recordSince(start);
+        Log.info("Stock reconciliation: {} of {} products drift from the ledger ({} transactions replayed, {} ms)",
+                drift.size(), products.cardinality(), range[1] - range[0], (System.nanoTime() - start) / 1_000_000);
+        return drift;
+    }
+
+    @Override
+    public List<StockDrift> repairDrift(List<StockDrift> drift) throws SQLException {
+        List<StockDrift> repaired = new ArrayList<>();
+        if (drift.isEmpty()) return repaired;
+        try (Connection c = DbManager.getConnection()) {
+            try {
+                // write lock first, so no movement can commit between the ledger read and the update
+                DbManager.beginImmediate(c);
+                long watermark = watermark(c);
+                try (PreparedStatement ps = c.prepareStatement("UPDATE product SET quantity = ? WHERE product_id = ?")) {
+                    for (StockDrift reported : drift) {
+                        StockDrift d = productLedger(c, watermark, reported.getProductId());
+                        if (d == null || d.getDrift() == 0) continue;
+                        ps.setLong(1, d.getLedgerQuantity());
+                        ps.setInt(2, d.getProductId());
+                        ps.addBatch();
+                        repaired.add(d);
+                    }
+                    ps.executeBatch();
+                }
+                DbManager.commitImmediate(c);
+            } catch (SQLException e) {
+                DbManager.rollbackImmediate(c);
+                throw e;
+            }
+        }
+        for (StockDrift d : repaired) Log.warn("Repaired stock drift: {}", d);
+        return repaired;
+    }
+
+    /**
+     * Sums inventory_transaction.change per product over tx_id in (from, to].
+     * The range is cut into slices that wms.ledger.replayThreads threads take
+     * in turn, each on its own connection (not the pool's) with its own array;
+     * the arrays are added up at the end. Returns sums indexed by product_id.
+     */
+    private long[] sumChanges(long from, long to, int maxId) throws SQLException {
+        long start = System.nanoTime();
+        long span = to - from;
+        if (span <= 0) return new long[maxId + 1];
+        int threads = (int) Math.max(1, Math.min(replayThreads, (span + MIN_RANGE - 1) / MIN_RANGE));
+        long slice = Math.max(MIN_RANGE, (span + (long) threads * RANGES_PER_THREAD - 1) / ((long) threads * RANGES_PER_THREAD));
+        AtomicLong next = new AtomicLong(from);
+        AtomicReference<SQLException> failure = new AtomicReference<>();
+        long[][] partial = new long[threads][];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
+            Runnable replay = () -> {
+                try {
+                    partial[worker] = sumSlices(next, slice, to, maxId);
+                } catch (SQLException e) {
+                    failure.compareAndSet(null, e);
+                    // the others stop at their next slice
+                    next.set(to);
+                }
+            };
+            if (threads == 1) {
+                replay.run();
+            } else {
+                workers[i] = new Thread(replay, "ledger-replay-" + (i + 1));
+                workers[i].setDaemon(true);
+                workers[i].start();
+            }
+        }
+        try {
+            for (Thread t : workers) {
+                if (t != null) t.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            next.set(to);
+            throw new SQLException("Interrupted while replaying the stock ledger", e);
+        }
+        if (failure.get() != null) throw failure.get();
+        long[] sums = partial[0];
+        for (int i = 1; i < threads; i++) {
+            long[] p = partial[i];
+            if (p.length > sums.length) sums = Arrays.copyOf(sums, p.length);
+            for (int id = 0; id < p.length; id++) sums[id] += p[id];
+        }
+        T_REPLAY.recordSince(start);
+        return sums;
+    }
+
+    private static long[] sumSlices(AtomicLong next, long slice, long to, int maxId) throws SQLException {
+        long[] sums = new long[maxId + 1];
+        long rows = 0;
+        try (Connection c = DbManager.openConnection();
+             PreparedStatement ps = c.prepareStatement(SQL_TAIL)) {
+            for (long lo = next.getAndAdd(slice); lo < to; lo = next.getAndAdd(slice)) {
+                ps.setLong(1, lo);
+                ps.setLong(2, Math.min(to, lo + slice));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        // ids above maxId cannot be in the range, but growing costs nothing when they are not
+                        if (id >= sums.length) sums = Arrays.copyOf(sums, id + 1);
+                        sums[id] += rs.getInt(2);
+                        rows++;
+                    }
+                }
+            }
+            c.commit();
+        } finally {
+            REPLAYED.add(rows);
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,161 @@
+package dao;
+
+import util.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hourly and daily sums of stock changes per product and tx_type, kept in
+ * stock_rollup_hourly (bucket 'YYYY-MM-DD HH') and stock_rollup_daily
+ * (bucket 'YYYY-MM-DD'), UTC. Writers add the movements of one transaction
+ * here and flush() just before the commit, so a batch costs one upsert per
+ * product, type and bucket instead of one per movement.
+ */
+final class StockRollups {
+
+    private static final DateTimeFormatter SQL_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String UPSERT_SUFFIX =
+            " (product_id, bucket, tx_type, units, movements) VALUES (?,?,?,?,?)"
+                    + " ON CONFLICT(product_id, bucket, tx_type) DO UPDATE SET"
+                    + " units = units + excluded.units, movements = movements + excluded.movements";
+    private static final String SQL_UPSERT_HOURLY = "INSERT INTO stock_rollup_hourly" + UPSERT_SUFFIX;
+    private static final String SQL_UPSERT_DAILY = "INSERT INTO stock_rollup_daily" + UPSERT_SUFFIX;
+
+    private static final class Key {
+        final int productId;
+        final String txType;
+
+        Key(int productId, String txType) {
+            this.productId = productId;
+            this.txType = txType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return productId == k.productId && txType.equals(k.txType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(productId, txType);
+        }
+    }
+
+    // {units, movements} per key, in first-seen order
+    private final Map<Key, long[]> pending = new LinkedHashMap<>();
+
+    /** The ledger timestamp for rows written now: UTC, second precision, like CURRENT_TIMESTAMP. */
+    static String now() {
+        return SQL_TIME.format(LocalDateTime.now(ZoneOffset.UTC));
+    }
+
+    void add(int productId, String txType, int change) {
+        add(productId, txType, change, 1);
+    }
+
+    /** Movements already summed elsewhere, e.g. a site's bin movements folded into the catalog. */
+    void add(int productId, String txType, long units, long movements) {
+        long[] sums = pending.computeIfAbsent(new Key(productId, txType), k -> new long[2]);
+        sums[0] += units;
+        sums[1] += movements;
+    }
+
+    /** Adds everything since the last flush to the buckets of txTime; the caller commits. */
+    void flush(Connection c, String txTime) throws SQLException {
+        if (pending.isEmpty()) return;
+        try (PreparedStatement hourly = c.prepareStatement(SQL_UPSERT_HOURLY);
+             PreparedStatement daily = c.prepareStatement(SQL_UPSERT_DAILY)) {
+            for (Map.Entry<Key, long[]> e : pending.entrySet()) {
+                bind(hourly, e.getKey(), hourBucket(txTime), e.getValue());
+                hourly.addBatch();
+                bind(daily, e.getKey(), dayBucket(txTime), e.getValue());
+                daily.addBatch();
+            }
+            hourly.executeBatch();
+            daily.executeBatch();
+        }
+        pending.clear();
+    }
+
+    void clear() {
+        pending.clear();
+    }
+
+    /** The single-movement path: both upserts without the pending map. */
+    static void record(Connection c, int productId, String txType, int change, String txTime) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(SQL_UPSERT_HOURLY)) {
+            bind(ps, productId, txType, hourBucket(txTime), change, 1);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = c.prepareStatement(SQL_UPSERT_DAILY)) {
+            bind(ps, productId, txType, dayBucket(txTime), change, 1);
+            ps.executeUpdate();
+        }
+    }
+
+    static String hourBucket(String txTime) {
+        return txTime.substring(0, 13);
+    }
+
+    static String dayBucket(String txTime) {
+        return txTime.substring(0, 10);
+    }
+
+    private static void bind(PreparedStatement ps, Key k, String bucket, long[] sums) throws SQLException {
+        bind(ps, k.productId, k.txType, bucket, sums[0], sums[1]);
+    }
+
+    private static void bind(PreparedStatement ps, int productId, String txType, String bucket,
+                             long units, long movements) throws SQLException {
+        ps.setInt(1, productId);
+        ps.setString(2, bucket);
+        ps.setString(3, txType);
+        ps.setLong(4, units);
+        ps.setLong(5, movements);
+    }
+
+    /**
+     * Fills empty rollup tables from the ledger, archive partitions included,
+     * so a database that has history from before rollups existed reports it too.
+     */
+    static void backfillIfEmpty(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT EXISTS (SELECT 1 FROM stock_rollup_daily)")) {
+                if (rs.next() && rs.getInt(1) == 1) return;
+            }
+            List<String> tables = new ArrayList<>();
+            try (ResultSet rs = st.executeQuery("SELECT table_name FROM tx_archive ORDER BY from_time")) {
+                while (rs.next()) tables.add(rs.getString(1));
+            }
+            tables.add("inventory_transaction");
+            long start = System.nanoTime();
+            for (String table : tables) {
+                st.executeUpdate("INSERT INTO stock_rollup_hourly (product_id, bucket, tx_type, units, movements)"
+                        + " SELECT product_id, substr(tx_time, 1, 13), tx_type, sum(change), count(*) FROM " + table
+                        + " WHERE tx_time IS NOT NULL GROUP BY 1, 2, 3 ON CONFLICT(product_id, bucket, tx_type) DO UPDATE SET"
+                        + " units = units + excluded.units, movements = movements + excluded.movements");
+            }
+            int days = st.executeUpdate("INSERT INTO stock_rollup_daily (product_id, bucket, tx_type, units, movements)"
+                    + " SELECT product_id, substr(bucket, 1, 10), tx_type, sum(units), sum(movements)"
+                    + " FROM stock_rollup_hourly GROUP BY 1, 2, 3");
+            if (days > 0) {
+                Log.info("Stock rollups backfilled: {} product-days in {} ms", days, (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+    }
+}
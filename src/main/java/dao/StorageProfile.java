@@ -0,0 +1,101 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SQLite pragma settings for warehouse.db. The journal mode is stored in the
+ * database file and is set once by DbManager.initDatabase(); the rest are
+ * per-connection and applied whenever DbManager opens a physical connection.
+ *
+ * Defaults (WAL + synchronous=NORMAL) let readers run alongside the single
+ * writer and skip the fsync on every commit; WAL still fsyncs at checkpoints,
+ * so a power cut can lose the last commits but never corrupts the file.
+ * Each value can be overridden with a wms.db.* system property.
+ */
+public final class StorageProfile {
+    private static final List<String> JOURNAL_MODES =
+            Arrays.asList("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final List<String> SYNCHRONOUS_MODES =
+            Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA");
+
+    private final String journalMode;
+    private final String synchronous;
+    private final long mmapSizeBytes;
+    private final int cacheSizeKib;
+    private final int busyTimeoutMs;
+
+    public StorageProfile(String journalMode, String synchronous, long mmapSizeBytes,
+                          int cacheSizeKib, int busyTimeoutMs) {
+        this.journalMode = checked("journal mode", journalMode, JOURNAL_MODES);
+        this.synchronous = checked("synchronous", synchronous, SYNCHRONOUS_MODES);
+        if (mmapSizeBytes < 0) throw new IllegalArgumentException("mmap size must be >= 0");
+        if (cacheSizeKib <= 0) throw new IllegalArgumentException("cache size must be > 0");
+        if (busyTimeoutMs < 0) throw new IllegalArgumentException("busy timeout must be >= 0");
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.cacheSizeKib = cacheSizeKib;
+        this.busyTimeoutMs = busyTimeoutMs;
+    }
+
+    /** WAL, synchronous=NORMAL, 256 MiB mmap, 16 MiB page cache, 5 s busy timeout. */
+    public static StorageProfile defaults() {
+        return new StorageProfile("WAL", "NORMAL", 256L * 1024 * 1024, 16 * 1024, 5000);
+    }
+
+    /** The SQLite out-of-the-box behaviour this app used before profiles existed. */
+    public static StorageProfile legacy() {
+        return new StorageProfile("DELETE", "FULL", 0, 2000, 0);
+    }
+
+    public static StorageProfile fromSystemProperties() {
+        StorageProfile d = defaults();
+        return new StorageProfile(
+                System.getProperty("wms.db.journalMode", d.journalMode),
+                System.getProperty("wms.db.synchronous", d.synchronous),
+                Long.getLong("wms.db.mmapSize", d.mmapSizeBytes),
+                Integer.getInteger("wms.db.cacheSizeKib", d.cacheSizeKib),
+                Integer.getInteger("wms.db.busyTimeoutMs", d.busyTimeoutMs));
+    }
+
+    public String getJournalMode() { return journalMode; }
+    public String getSynchronous() { return synchronous; }
+    public long getMmapSizeBytes() { return mmapSizeBytes; }
+    public int getCacheSizeKib() { return cacheSizeKib; }
+    public int getBusyTimeoutMs() { return busyTimeoutMs; }
+
+    // Must run outside a transaction: SQLite ignores these pragmas inside one
+    void applyJournalMode(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            s.execute("PRAGMA journal_mode = " + journalMode);
+        }
+    }
+
+    void applyConnectionPragmas(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            s.execute("PRAGMA foreign_keys = ON");
+            s.execute("PRAGMA busy_timeout = " + busyTimeoutMs);
+            s.execute("PRAGMA synchronous = " + synchronous);
+            s.execute("PRAGMA cache_size = -" + cacheSizeKib);
+            s.execute("PRAGMA mmap_size = " + mmapSizeBytes);
+        }
+    }
+
+    private static String checked(String what, String value, List<String> allowed) {
+        String v = value == null ? "" : value.trim().toUpperCase(Locale.ROOT);
+        if (!allowed.contains(v)) {
+            throw new IllegalArgumentException("Unsupported " + what + ": " + value);
+        }
+        return v;
+    }
+
+    @Override
+    public String toString() {
+        return "journal_mode=" + journalMode + " synchronous=" + synchronous
+                + " mmap_size=" + mmapSizeBytes + " cache_size=" + cacheSizeKib + "KiB"
+                + " busy_timeout=" + busyTimeoutMs + "ms";
+    }
+}
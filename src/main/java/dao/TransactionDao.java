@@ -0,0 +1,38 @@
+package dao;
+
+import model.InventoryTransaction;
+import model.MovementTotal;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Read side of the stock ledger. Times are UTC, like SQLite's CURRENT_TIMESTAMP,
+ * with second precision; windows are half-open [from, to), and null means
+ * unbounded. Results are ordered by (tx_time, tx_id) and span the hot
+ * inventory_transaction table and any archive partitions.
+ */
+public interface TransactionDao {
+    // keyset page: rows after (afterTime, afterId); pass afterTime=null for the first page
+    List<InventoryTransaction> findByProduct(int productId, LocalDateTime from, LocalDateTime to,
+                                             LocalDateTime afterTime, long afterId, int limit) throws SQLException;
+    List<InventoryTransaction> findByTime(LocalDateTime from, LocalDateTime to,
+                                          LocalDateTime afterTime, long afterId, int limit) throws SQLException;
+    // pages of HISTORY_PAGE rows fetched on demand, each on a short read; productId null means all products
+    Stream<InventoryTransaction> streamHistory(Integer productId, LocalDateTime from, LocalDateTime to) throws SQLException;
+
+    // moves rows older than cutoff into one table per calendar month; returns the number moved
+    int archiveBefore(LocalDateTime cutoff) throws SQLException;
+    List<String> archiveTables() throws SQLException;
+
+    // rollups: per-bucket sums that cost the same to read whatever the history size; windows are [from, to)
+    List<MovementTotal> dailyTotals(int productId, LocalDate from, LocalDate to) throws SQLException;
+    List<MovementTotal> hourlyTotals(int productId, LocalDateTime from, LocalDateTime to) throws SQLException;
+    // signed sum of one tx_type's changes over the days in [from, to)
+    long sumUnits(int productId, String txType, LocalDate from, LocalDate to) throws SQLException;
+
+    int HISTORY_PAGE = 1000;
+}
@@ -0,0 +1,303 @@
+package dao;
+
+import model.InventoryTransaction;
+import model.MovementTotal;
+import util.Log;
+import util.Metrics;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class TransactionDaoImpl implements TransactionDao {
+
+    private static final String HOT = "inventory_transaction";
+    private static final String COLUMNS = "tx_id, product_id, change, tx_type, note, tx_time";
+    private static final DateTimeFormatter SQL_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter PARTITION = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private static final Metrics.Histogram T_FIND = Metrics.timer("dao.tx.find");
+    private static final Metrics.Histogram T_ARCHIVE = Metrics.timer("dao.tx.archiveMonth");
+
+    private final StockLedgerDao ledger = new StockLedgerDaoImpl();
+
+    @Override
+    public List<InventoryTransaction> findByProduct(int productId, LocalDateTime from, LocalDateTime to,
+                                                    LocalDateTime afterTime, long afterId, int limit) throws SQLException {
+        return find(productId, from, to, afterTime, afterId, limit);
+    }
+
+    @Override
+    public List<InventoryTransaction> findByTime(LocalDateTime from, LocalDateTime to,
+                                                 LocalDateTime afterTime, long afterId, int limit) throws SQLException {
+        return find(null, from, to, afterTime, afterId, limit);
+    }
+
+    // Partitions are disjoint and older than the hot table, so reading them in
+    // time order and stopping once the page is full keeps (tx_time, tx_id) order
+    private List<InventoryTransaction> find(Integer productId, LocalDateTime from, LocalDateTime to,
+                                            LocalDateTime afterTime, long afterId, int limit) throws SQLException {
+        long start = System.nanoTime();
+        List<InventoryTransaction> page = new ArrayList<>(Math.min(limit, HISTORY_PAGE));
+        LocalDateTime lower = afterTime != null && (from == null || afterTime.isAfter(from)) ? afterTime : from;
+        try (Connection c = DbManager.getConnection()) {
+            for (String table : tablesFor(c, lower, to)) {
+                int want = limit - page.size();
+                if (want <= 0) break;
+                readPage(c, table, productId, from, to, afterTime, afterId, want, page);
+            }
+            c.commit();
+        }
+        T_FIND.recordSince(start);
+        return page;
+    }
+
+    private void readPage(Connection c, String table, Integer productId, LocalDateTime from, LocalDateTime to,
+                          LocalDateTime afterTime, long afterId, int limit, List<InventoryTransaction> out) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM ").append(table).append(" WHERE 1=1");
+        if (productId != null) sql.append(" AND product_id = ?");
+        if (from != null) sql.append(" AND tx_time >= ?");
+        if (to != null) sql.append(" AND tx_time < ?");
+        if (afterTime != null) sql.append(" AND (tx_time, tx_id) > (?, ?)");
+        sql.append(" ORDER BY tx_time, tx_id LIMIT ?");
+        try (PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            int i = 1;
+            if (productId != null) ps.setInt(i++, productId);
+            if (from != null) ps.setString(i++, format(from));
+            if (to != null) ps.setString(i++, format(to));
+            if (afterTime != null) {
+                ps.setString(i++, format(afterTime));
+                ps.setLong(i++, afterId);
+            }
+            ps.setInt(i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(map(rs));
+            }
+        }
+    }
+
+    // archive partitions that may hold rows in [lower, upper), oldest first, then the hot table
+    private List<String> tablesFor(Connection c, LocalDateTime lower, LocalDateTime upper) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT table_name FROM tx_archive WHERE (? IS NULL OR to_time > ?) AND (? IS NULL OR from_time < ?) ORDER BY from_time")) {
+            String lo = lower == null ? null : format(lower);
+            String hi = upper == null ? null : format(upper);
+            ps.setString(1, lo);
+            ps.setString(2, lo);
+            ps.setString(3, hi);
+            ps.setString(4, hi);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) tables.add(rs.getString(1));
+            }
+        }
+        tables.add(HOT);
+        return tables;
+    }
+
+    @Override
+    public Stream<InventoryTransaction> streamHistory(Integer productId, LocalDateTime from, LocalDateTime to) throws SQLException {
+        List<InventoryTransaction> first = find(productId, from, to, null, 0, HISTORY_PAGE);
+        Spliterator<InventoryTransaction> rows = new Spliterators.AbstractSpliterator<InventoryTransaction>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private List<InventoryTransaction> page = first;
+            private Iterator<InventoryTransaction> it = first.iterator();
+
+            @Override
+            public boolean tryAdvance(Consumer<? super InventoryTransaction> action) {
+                if (!it.hasNext()) {
+                    // a short page was the last one
+                    if (page.size() < HISTORY_PAGE) return false;
+                    InventoryTransaction last = page.get(page.size() - 1);
+                    try {
+                        page = find(productId, from, to, last.getTxTime(), last.getTxId(), HISTORY_PAGE);
+                    } catch (SQLException e) {
+                        throw new UncheckedSQLException(e);
+                    }
+                    it = page.iterator();
+                    if (!it.hasNext()) return false;
+                }
+                action.accept(it.next());
+                return true;
+            }
+        };
+        return StreamSupport.stream(rows, false);
+    }
+
+    @Override
+    public int archiveBefore(LocalDateTime cutoff) throws SQLException {
+        // rows committed from now on get a later tx_time, so the hot table stays newer than every partition
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC).withNano(0);
+        String cut = format(cutoff.isAfter(now) ? now : cutoff);
+        // only rows folded into the stock snapshot may leave, so the ledger tail is always in the hot table
+        ledger.takeSnapshot();
+        int moved = 0;
+        try (Connection c = DbManager.getConnection()) {
+            List<YearMonth> months = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT DISTINCT substr(tx_time, 1, 7) FROM " + HOT + " WHERE tx_time < ? ORDER BY 1")) {
+                ps.setString(1, cut);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) months.add(YearMonth.parse(rs.getString(1)));
+                }
+            }
+            c.commit();
+            // one transaction per month, so a long archival run never holds the write lock for long
+            for (YearMonth month : months) {
+                long start = System.nanoTime();
+                String lo = format(month.atDay(1).atStartOfDay());
+                String monthEnd = format(month.plusMonths(1).atDay(1).atStartOfDay());
+                String end = monthEnd.compareTo(cut) < 0 ? monthEnd : cut;
+                String table = HOT + "_" + month.format(PARTITION);
+                try {
+                    createPartition(c, table);
+                    String hi = archivableBefore(c, end);
+                    if (hi.compareTo(lo) <= 0) {
+                        c.rollback();
+                        break;
+                    }
+                    int n;
+                    try (PreparedStatement ins = c.prepareStatement("INSERT INTO " + table + " (" + COLUMNS + ") SELECT "
+                            + COLUMNS + " FROM " + HOT + " WHERE tx_time >= ? AND tx_time < ?")) {
+                        ins.setString(1, lo);
+                        ins.setString(2, hi);
+                        n = ins.executeUpdate();
+                    }
+                    try (PreparedStatement del = c.prepareStatement("DELETE FROM " + HOT + " WHERE tx_time >= ? AND tx_time < ?")) {
+                        del.setString(1, lo);
+                        del.setString(2, hi);
+                        del.executeUpdate();
+                    }
+                    try (PreparedStatement reg = c.prepareStatement(
+                            "INSERT INTO tx_archive (table_name, from_time, to_time) VALUES (?,?,?)"
+                                    + " ON CONFLICT(table_name) DO UPDATE SET to_time = max(to_time, excluded.to_time)")) {
+                        reg.setString(1, table);
+                        reg.setString(2, lo);
+                        reg.setString(3, hi);
+                        reg.executeUpdate();
+                    }
+                    c.commit();
+                    moved += n;
+                    T_ARCHIVE.recordSince(start);
+                    Log.info("Archived {} transactions into {}", n, table);
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                }
+            }
+        }
+        return moved;
+    }
+
+    // end, or earlier if a row before it is newer than the stock snapshot watermark; rows from there stay hot
+    private String archivableBefore(Connection c, String end) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT MIN(tx_time) FROM " + HOT
+                + " WHERE tx_time < ? AND tx_id > (SELECT value FROM catalog_meta WHERE key = 'stock_snapshot_tx')")) {
+            ps.setString(1, end);
+            try (ResultSet rs = ps.executeQuery()) {
+                String first = rs.next() ? rs.getString(1) : null;
+                return first == null ? end : first.substring(0, Math.min(19, first.length()));
+            }
+        }
+    }
+
+    // Partitions keep history of deleted products, so they have no foreign key
+    private void createPartition(Connection c, String table) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                    + "tx_id INTEGER PRIMARY KEY, product_id INTEGER NOT NULL, change INTEGER NOT NULL,"
+                    + " tx_type TEXT NOT NULL, note TEXT, tx_time DATETIME NOT NULL)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_product_time ON " + table + "(product_id, tx_time)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_time ON " + table + "(tx_time)");
+        }
+    }
+
+    @Override
+    public List<String> archiveTables() throws SQLException {
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT table_name FROM tx_archive ORDER BY from_time");
+             ResultSet rs = ps.executeQuery()) {
+            List<String> tables = new ArrayList<>();
+            while (rs.next()) tables.add(rs.getString(1));
+            c.commit();
+            return tables;
+        }
+    }
+
+    @Override
+    public List<MovementTotal> dailyTotals(int productId, LocalDate from, LocalDate to) throws SQLException {
+        return totals("stock_rollup_daily", productId, from.toString(), to.toString(), false);
+    }
+
+    @Override
+    public List<MovementTotal> hourlyTotals(int productId, LocalDateTime from, LocalDateTime to) throws SQLException {
+        return totals("stock_rollup_hourly", productId,
+                StockRollups.hourBucket(format(from)), StockRollups.hourBucket(format(to)), true);
+    }
+
+    private List<MovementTotal> totals(String table, int productId, String from, String to, boolean hourly) throws SQLException {
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT bucket, tx_type, units, movements FROM " + table
+                     + " WHERE product_id = ? AND bucket >= ? AND bucket < ? ORDER BY bucket, tx_type")) {
+            ps.setInt(1, productId);
+            ps.setString(2, from);
+            ps.setString(3, to);
+            List<MovementTotal> totals = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String bucket = rs.getString(1);
+                    LocalDateTime start = hourly
+                            ? LocalDateTime.parse(bucket + ":00:00", SQL_TIME)
+                            : LocalDate.parse(bucket).atStartOfDay();
+                    totals.add(new MovementTotal(productId, start, rs.getString(2), rs.getLong(3), rs.getLong(4)));
+                }
+            }
+            c.commit();
+            return totals;
+        }
+    }
+
+    @Override
+    public long sumUnits(int productId, String txType, LocalDate from, LocalDate to) throws SQLException {
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT coalesce(sum(units), 0) FROM stock_rollup_daily"
+                     + " WHERE product_id = ? AND bucket >= ? AND bucket < ? AND tx_type = ?")) {
+            ps.setInt(1, productId);
+            ps.setString(2, from.toString());
+            ps.setString(3, to.toString());
+            ps.setString(4, txType);
+            long sum;
+            try (ResultSet rs = ps.executeQuery()) {
+                sum = rs.next() ? rs.getLong(1) : 0;
+            }
+            c.commit();
+            return sum;
+        }
+    }
+
+    private static String format(LocalDateTime t) {
+        return SQL_TIME.format(t);
+    }
+
+    private InventoryTransaction map(ResultSet rs) throws SQLException {
+        String time = rs.getString("tx_time");
+        return new InventoryTransaction(
+                rs.getLong("tx_id"),
+                rs.getInt("product_id"),
+                rs.getInt("change"),
+                rs.getString("tx_type"),
+                rs.getString("note"),
+                time == null ? null : LocalDateTime.parse(time.substring(0, Math.min(19, time.length())), SQL_TIME));
+    }
+}
@@ -0,0 +1,15 @@
+package dao;
+
+import java.sql.SQLException;
+
+/** Carries a SQLException out of a lazily consumed Stream, where checked exceptions cannot pass. */
+public class UncheckedSQLException extends RuntimeException {
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
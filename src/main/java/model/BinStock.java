@@ -0,0 +1,23 @@
+package model;
+
+/** The quantity of one product in one bin. */
+public class BinStock {
+    private final Location location;
+    private final int productId;
+    private final int quantity;
+
+    public BinStock(Location location, int productId, int quantity) {
+        this.location = location;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public Location getLocation() { return location; }
+    public int getProductId() { return productId; }
+    public int getQuantity() { return quantity; }
+
+    @Override
+    public String toString() {
+        return quantity + " of product " + productId + " at " + location;
+    }
+}
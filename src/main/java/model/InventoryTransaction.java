@@ -0,0 +1,34 @@
+package model;
+
+import java.time.LocalDateTime;
+
+/** One row of the stock ledger: a committed quantity change and when it happened (UTC). */
+public class InventoryTransaction {
+    private final long txId;
+    private final int productId;
+    private final int change;
+    private final String txType;
+    private final String note;
+    private final LocalDateTime txTime;
+
+    public InventoryTransaction(long txId, int productId, int change, String txType, String note, LocalDateTime txTime) {
+        this.txId = txId;
+        this.productId = productId;
+        this.change = change;
+        this.txType = txType;
+        this.note = note;
+        this.txTime = txTime;
+    }
+
+    public long getTxId() { return txId; }
+    public int getProductId() { return productId; }
+    public int getChange() { return change; }
+    public String getTxType() { return txType; }
+    public String getNote() { return note; }
+    public LocalDateTime getTxTime() { return txTime; }
+
+    @Override
+    public String toString() {
+        return "#" + txId + " " + txTime + " " + txType + " " + change + " of product " + productId;
+    }
+}
@@ -0,0 +1,41 @@
+package model;
+
+/** A product whose located quantity and unsynced bin movements disagree with the stock in its site bins. */
+public class LocatedStockDrift {
+    private final int productId;
+    private final String sku;
+    private final int quantity;
+    private final long locatedQuantity;
+    private final long unsyncedQuantity;
+    private final long binQuantity;
+
+    public LocatedStockDrift(int productId, String sku, int quantity, long locatedQuantity,
+                             long unsyncedQuantity, long binQuantity) {
+        this.productId = productId;
+        this.sku = sku;
+        this.quantity = quantity;
+        this.locatedQuantity = locatedQuantity;
+        this.unsyncedQuantity = unsyncedQuantity;
+        this.binQuantity = binQuantity;
+    }
+
+    public int getProductId() { return productId; }
+    public String getSku() { return sku; }
+    /** product.quantity as stored, never below the located quantity when consistent. */
+    public int getQuantity() { return quantity; }
+    /** product.located_quantity: the bin movements folded into the catalog so far. */
+    public long getLocatedQuantity() { return locatedQuantity; }
+    /** Bin movements after each site's watermark, not folded yet. */
+    public long getUnsyncedQuantity() { return unsyncedQuantity; }
+    /** The sum of the product's bin_stock rows across all sites. */
+    public long getBinQuantity() { return binQuantity; }
+    /** Positive when the catalog accounts for more than the bins hold. */
+    public long getDrift() { return locatedQuantity + unsyncedQuantity - binQuantity; }
+
+    @Override
+    public String toString() {
+        return "product " + productId + " (" + sku + "): quantity " + quantity + ", located " + locatedQuantity
+                + ", unsynced " + unsyncedQuantity + ", in bins " + binQuantity
+                + ", drift " + (getDrift() > 0 ? "+" : "") + getDrift();
+    }
+}
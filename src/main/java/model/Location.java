@@ -0,0 +1,54 @@
+package model;
+
+/**
+ * A bin: site (warehouse), zone and bin code, written "SITE/ZONE/BIN".
+ * The id is only unique within the site, whose shard assigns it.
+ */
+public class Location {
+    private final String site;
+    private final int locationId;
+    private final String zone;
+    private final String bin;
+
+    public Location(String site, int locationId, String zone, String bin) {
+        this.site = site;
+        this.locationId = locationId;
+        this.zone = zone;
+        this.bin = bin;
+    }
+
+    public String getSite() { return site; }
+    public int getLocationId() { return locationId; }
+    public String getZone() { return zone; }
+    public String getBin() { return bin; }
+
+    /** Splits "SITE/ZONE/BIN" into its three parts. */
+    public static String[] parseCode(String code) {
+        String[] parts = code == null ? new String[0] : code.split("/", -1);
+        if (parts.length != 3 || parts[0].isEmpty() || parts[1].isEmpty() || parts[2].isEmpty()) {
+            throw new IllegalArgumentException("Location must be SITE/ZONE/BIN: " + code);
+        }
+        return parts;
+    }
+
+    public String getCode() {
+        return site + "/" + zone + "/" + bin;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Location)) return false;
+        Location l = (Location) o;
+        return locationId == l.locationId && site.equals(l.site);
+    }
+
+    @Override
+    public int hashCode() {
+        return site.hashCode() * 31 + locationId;
+    }
+
+    @Override
+    public String toString() {
+        return getCode();
+    }
+}
@@ -0,0 +1,32 @@
+package model;
+
+import java.time.LocalDateTime;
+
+/** Stock changes of one product and tx_type summed over an hour or a day (UTC). */
+public class MovementTotal {
+    private final int productId;
+    private final LocalDateTime bucketStart;
+    private final String txType;
+    private final long units;
+    private final long movements;
+
+    public MovementTotal(int productId, LocalDateTime bucketStart, String txType, long units, long movements) {
+        this.productId = productId;
+        this.bucketStart = bucketStart;
+        this.txType = txType;
+        this.units = units;
+        this.movements = movements;
+    }
+
+    public int getProductId() { return productId; }
+    public LocalDateTime getBucketStart() { return bucketStart; }
+    public String getTxType() { return txType; }
+    /** Sum of the signed changes: negative for dispatches. */
+    public long getUnits() { return units; }
+    public long getMovements() { return movements; }
+
+    @Override
+    public String toString() {
+        return bucketStart + " " + txType + " " + units + " in " + movements + " movements of product " + productId;
+    }
+}
@@ -1,5 +1,9 @@
 package model;
 
+/**
+ * A catalog row. Products handed out by the service cache are frozen: their
+ * setters throw, so take a {@link #copy()} to edit one.
+ */
 public class Product {
     private int productId;
     private String sku;
@@ -9,6 +13,7 @@ public class Product {
     private int quantity;
     private int minStock;
     private Integer supplierId;
+    private boolean frozen;
 
     public Product() {}
 
@@ -21,21 +26,42 @@ public class Product {
     }
 
     public int getProductId() { return productId; }
-    public void setProductId(int productId) { this.productId = productId; }
+    public void setProductId(int productId) { checkMutable(); this.productId = productId; }
     public String getSku() { return sku; }
-    public void setSku(String sku) { this.sku = sku; }
+    public void setSku(String sku) { checkMutable(); this.sku = sku; }
     public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
+    public void setName(String name) { checkMutable(); this.name = name; }
     public String getDescription() { return description; }
-    public void setDescription(String description) { this.description = description; }
+    public void setDescription(String description) { checkMutable(); this.description = description; }
     public double getPrice() { return price; }
-    public void setPrice(double price) { this.price = price; }
+    public void setPrice(double price) { checkMutable(); this.price = price; }
     public int getQuantity() { return quantity; }
-    public void setQuantity(int quantity) { this.quantity = quantity; }
+    public void setQuantity(int quantity) { checkMutable(); this.quantity = quantity; }
     public int getMinStock() { return minStock; }
-    public void setMinStock(int minStock) { this.minStock = minStock; }
+    public void setMinStock(int minStock) { checkMutable(); this.minStock = minStock; }
     public Integer getSupplierId() { return supplierId; }
-    public void setSupplierId(Integer supplierId) { this.supplierId = supplierId; }
+    public void setSupplierId(Integer supplierId) { checkMutable(); this.supplierId = supplierId; }
+
+    /** Makes this product read-only; returns it for chaining. */
+    public Product freeze() {
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() { return frozen; }
+
+    /** A mutable copy with the same field values. */
+    public Product copy() {
+        Product p = new Product(sku, name, price, quantity, minStock);
+        p.productId = productId;
+        p.description = description;
+        p.supplierId = supplierId;
+        return p;
+    }
+
+    private void checkMutable() {
+        if (frozen) throw new IllegalStateException("Product " + productId + " is a frozen snapshot; edit a copy()");
+    }
 
     @Override
     public String toString() {
@@ -0,0 +1,31 @@
+package model;
+
+/** A product whose stored quantity disagrees with the sum of its stock ledger. */
+public class StockDrift {
+    private final int productId;
+    private final String sku;
+    private final int quantity;
+    private final long ledgerQuantity;
+
+    public StockDrift(int productId, String sku, int quantity, long ledgerQuantity) {
+        this.productId = productId;
+        this.sku = sku;
+        this.quantity = quantity;
+        this.ledgerQuantity = ledgerQuantity;
+    }
+
+    public int getProductId() { return productId; }
+    public String getSku() { return sku; }
+    /** product.quantity as stored. */
+    public int getQuantity() { return quantity; }
+    /** The stock snapshot plus every later transaction. */
+    public long getLedgerQuantity() { return ledgerQuantity; }
+    /** Positive when product.quantity is above the ledger. */
+    public long getDrift() { return quantity - ledgerQuantity; }
+
+    @Override
+    public String toString() {
+        return "product " + productId + " (" + sku + "): quantity " + quantity + ", ledger " + ledgerQuantity
+                + ", drift " + (getDrift() > 0 ? "+" : "") + getDrift();
+    }
+}
@@ -0,0 +1,38 @@
+package model;
+
+/**
+ * Result of a committed stock movement: the product's quantity before and
+ * after the change together with the low-stock threshold it was checked against.
+ */
+public class StockLevel {
+    private final int productId;
+    private final int previousQuantity;
+    private final int quantity;
+    private final int minStock;
+
+    public StockLevel(int productId, int previousQuantity, int quantity, int minStock) {
+        this.productId = productId;
+        this.previousQuantity = previousQuantity;
+        this.quantity = quantity;
+        this.minStock = minStock;
+    }
+
+    public int getProductId() { return productId; }
+    public int getPreviousQuantity() { return previousQuantity; }
+    public int getQuantity() { return quantity; }
+    public int getMinStock() { return minStock; }
+
+    public boolean isLow() {
+        return quantity <= minStock;
+    }
+
+    /** True only for the movement that took the product from above its minimum to at/below it. */
+    public boolean crossedBelowMin() {
+        return previousQuantity > minStock && quantity <= minStock;
+    }
+
+    @Override
+    public String toString() {
+        return "product " + productId + " qty " + previousQuantity + " -> " + quantity + " (min " + minStock + ")";
+    }
+}
@@ -0,0 +1,26 @@
+package model;
+
+/** A requested receive/dispatch: a signed quantity change for one product. */
+public class StockMovement {
+    private final int productId;
+    private final int delta;
+    private final String txType;
+    private final String note;
+
+    public StockMovement(int productId, int delta, String txType, String note) {
+        this.productId = productId;
+        this.delta = delta;
+        this.txType = txType;
+        this.note = note;
+    }
+
+    public int getProductId() { return productId; }
+    public int getDelta() { return delta; }
+    public String getTxType() { return txType; }
+    public String getNote() { return note; }
+
+    @Override
+    public String toString() {
+        return txType + " " + delta + " of product " + productId;
+    }
+}
@@ -0,0 +1,227 @@
+package service;
+
+import model.Product;
+import util.Metrics;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A size-bounded store for catalogs too big to keep whole: holds at most
+ * {@code capacity} products and evicts with CLOCK (second chance), an LRU
+ * approximation whose hits only set a flag, so reads never lock. Products
+ * come in through put() as the service reads them through from the database.
+ *
+ * Misses the database confirmed are remembered for a short TTL (negative
+ * caching), so repeated scans of unknown SKUs do not each cost a query;
+ * put() and updateStock() clear them. snapshot() and iteration cover the
+ * resident products only. Enable with {@code -Dwms.cache.store=bounded}.
+ */
+class BoundedProductStore implements ProductStore {
+
+    private static final Metrics.Counter EVICTIONS = Metrics.counter("cache.evictions");
+    private static final Metrics.Counter NEGATIVE_HITS = Metrics.counter("cache.negative.hit");
+
+    private static final class Node {
+        final Product product;
+        // set by reads, cleared as the clock hand passes; unset nodes are evicted
+        volatile boolean referenced;
+
+        Node(Product product, boolean referenced) {
+            this.product = product;
+            this.referenced = referenced;
+        }
+    }
+
+    private final int capacity;
+    private final long missingTtlNanos;
+    private final ConcurrentHashMap<Integer, Node> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> idsBySku = new ConcurrentHashMap<>();
+    // expiry (System.nanoTime) of each negative entry
+    private final ConcurrentHashMap<Integer, Long> missingIds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> missingSkus = new ConcurrentHashMap<>();
+
+    // guarded by this
+    private Iterator<Map.Entry<Integer, Node>> hand;
+    private long modCount;
+    private CatalogSnapshot snapshot = CatalogSnapshot.empty();
+
+    BoundedProductStore(int capacity, long missingTtlMillis) {
+        if (capacity <= 0) throw new IllegalArgumentException("wms.cache.maxProducts must be positive: " + capacity);
+        this.capacity = capacity;
+        this.missingTtlNanos = Math.max(0, missingTtlMillis) * 1_000_000;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return false;
+    }
+
+    @Override
+    public Product get(int productId) {
+        Node n = byId.get(productId);
+        if (n == null) return null;
+        if (!n.referenced) n.referenced = true;
+        return n.product;
+    }
+
+    @Override
+    public Product getBySku(String sku) {
+        Integer id = idsBySku.get(sku);
+        if (id == null) return null;
+        Product p = get(id);
+        return p != null && sku.equals(p.getSku()) ? p : null;
+    }
+
+    @Override
+    public synchronized Product put(Product p) {
+        Product frozen = p.isFrozen() ? p : p.copy().freeze();
+        int id = frozen.getProductId();
+        Node old = byId.put(id, new Node(frozen, true));
+        if (old != null && old.product.getSku() != null && !old.product.getSku().equals(frozen.getSku())) {
+            idsBySku.remove(old.product.getSku(), id);
+        }
+        if (frozen.getSku() != null) {
+            idsBySku.put(frozen.getSku(), id);
+            missingSkus.remove(frozen.getSku());
+        }
+        missingIds.remove(id);
+        modCount++;
+        if (old == null) evictOverCapacity();
+        return frozen;
+    }
+
+    @Override
+    public synchronized Product remove(int productId) {
+        Node old = byId.remove(productId);
+        if (old == null) return null;
+        if (old.product.getSku() != null) idsBySku.remove(old.product.getSku(), productId);
+        modCount++;
+        return old.product;
+    }
+
+    @Override
+    public synchronized Product updateStock(int productId, int quantity, int minStock) {
+        // the movement committed, so the product exists whether or not it is resident
+        missingIds.remove(productId);
+        Node old = byId.get(productId);
+        if (old == null) return null;
+        Product p = old.product.copy();
+        p.setQuantity(quantity);
+        p.setMinStock(minStock);
+        p.freeze();
+        byId.put(productId, new Node(p, true));
+        modCount++;
+        return p;
+    }
+
+    /** Starts over with up to capacity of {@code products}; the service passes none and reads through. */
+    @Override
+    public synchronized void reload(Iterable<Product> products) {
+        byId.clear();
+        idsBySku.clear();
+        missingIds.clear();
+        missingSkus.clear();
+        hand = null;
+        modCount++;
+        for (Product p : products) put(p);
+    }
+
+    @Override
+    public void markMissing(int productId) {
+        if (missingTtlNanos == 0) return;
+        trim(missingIds);
+        missingIds.put(productId, System.nanoTime() + missingTtlNanos);
+        // a put() that ran meanwhile wins
+        if (byId.containsKey(productId)) missingIds.remove(productId);
+    }
+
+    @Override
+    public void markMissing(String sku) {
+        if (missingTtlNanos == 0 || sku == null) return;
+        trim(missingSkus);
+        missingSkus.put(sku, System.nanoTime() + missingTtlNanos);
+        if (idsBySku.containsKey(sku)) missingSkus.remove(sku);
+    }
+
+    @Override
+    public boolean isKnownMissing(int productId) {
+        return isLive(missingIds, productId);
+    }
+
+    @Override
+    public boolean isKnownMissing(String sku) {
+        return isLive(missingSkus, sku);
+    }
+
+    private static <K> boolean isLive(ConcurrentHashMap<K, Long> missing, K key) {
+        Long until = missing.get(key);
+        if (until == null) return false;
+        if (until - System.nanoTime() > 0) {
+            NEGATIVE_HITS.increment();
+            return true;
+        }
+        missing.remove(key, until);
+        return false;
+    }
+
+    // negative entries are capped at capacity: expired ones go first, then all of them
+    private <K> void trim(ConcurrentHashMap<K, Long> missing) {
+        if (missing.size() < capacity) return;
+        long now = System.nanoTime();
+        missing.values().removeIf(until -> until - now <= 0);
+        if (missing.size() >= capacity) missing.clear();
+    }
+
+    // CLOCK: referenced nodes get a second chance, the first unreferenced one goes
+    private void evictOverCapacity() {
+        while (byId.size() > capacity) {
+            if (hand == null || !hand.hasNext()) hand = byId.entrySet().iterator();
+            Map.Entry<Integer, Node> e = hand.next();
+            Node n = e.getValue();
+            if (n.referenced) {
+                n.referenced = false;
+            } else if (byId.remove(e.getKey(), n)) {
+                if (n.product.getSku() != null) idsBySku.remove(n.product.getSku(), e.getKey());
+                EVICTIONS.increment();
+            }
+        }
+    }
+
+    @Override
+    public synchronized CatalogSnapshot snapshot() {
+        if (snapshot.version() != modCount) {
+            CatalogSnapshot.Builder b = new CatalogSnapshot.Builder();
+            for (Node n : byId.values()) b.put(n.product);
+            snapshot = b.build(modCount);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public int size() {
+        return byId.size();
+    }
+
+    @Override
+    public Iterator<Product> iterator() {
+        Iterator<Node> nodes = byId.values().iterator();
+        return new Iterator<Product>() {
+            @Override
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            @Override
+            public Product next() {
+                return nodes.next().product;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "bounded store, " + size() + " of " + capacity + " products";
+    }
+}
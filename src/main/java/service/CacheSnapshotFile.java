@@ -0,0 +1,186 @@
+package service;
+
+import dao.DbManager;
+import model.Product;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The product cache as a binary file, written on shutdown and memory-mapped
+ * on the next start instead of reading the product table row by row.
+ *
+ * Layout: a fixed header (magic, format, the catalog_meta change count the
+ * cache was taken at, product count, body length, CRC32 of the body), then
+ * one record per product: id, quantity, min_stock, supplier (-1 for none),
+ * price, and SKU, name and description as length-prefixed UTF-8 (-1 for null).
+ * A file is only used if its change count and product count still match the
+ * database, so any write since, from any process, sends startup back to SQL.
+ */
+final class CacheSnapshotFile {
+
+    private static final int MAGIC = 0x574D5343; // "WMSC"
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 8 + 8;
+    private static final int NO_SUPPLIER = -1;
+
+    private CacheSnapshotFile() {
+    }
+
+    /**
+     * The file named by wms.cache.snapshotFile, by default the database file
+     * plus ".snapshot"; null if that is "none" or the database is in memory.
+     */
+    static Path fromSystemProperties() {
+        String name = System.getProperty("wms.cache.snapshotFile");
+        if (name == null) {
+            Path db = DbManager.getDatabaseFile();
+            if (db == null) return null;
+            name = db + ".snapshot";
+        }
+        return name.equals("none") ? null : Paths.get(name);
+    }
+
+    /** The change count a readable file was written at, or -1. */
+    static long changeCountOf(Path file) {
+        if (!Files.isRegularFile(file)) return -1;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && ch.read(header) >= 0) {
+                // fill the header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != FORMAT) return -1;
+            return header.getLong();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Writes to a temporary file and renames it over {@code file}, so readers
+     * never see half a snapshot; returns the number of products written.
+     */
+    static int write(Path file, long changeCount, Iterable<Product> products) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            long bodyBytes;
+            int count = 0;
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ch.position(HEADER_BYTES);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new CheckedOutputStream(Channels.newOutputStream(ch), crc), 1 << 16));
+                for (Product p : products) {
+                    out.writeInt(p.getProductId());
+                    out.writeInt(p.getQuantity());
+                    out.writeInt(p.getMinStock());
+                    out.writeInt(p.getSupplierId() == null ? NO_SUPPLIER : p.getSupplierId());
+                    out.writeDouble(p.getPrice());
+                    writeString(out, p.getSku());
+                    writeString(out, p.getName());
+                    writeString(out, p.getDescription());
+                    count++;
+                }
+                out.flush();
+                // size() stops counting at Integer.MAX_VALUE, which is also the most read() can map
+                if (out.size() == Integer.MAX_VALUE) throw new IOException("Catalog too large for a cache snapshot");
+                bodyBytes = out.size();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(FORMAT).putLong(changeCount).putInt(count)
+                        .putLong(bodyBytes).putLong(crc.getValue()).flip();
+                ch.write(header, 0);
+                ch.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * The products in {@code file} if it is intact and was written at
+     * changeCount with productCount products; null if it is missing or stale.
+     * The returned products decode from the mapping as they are iterated.
+     */
+    static Iterable<Product> read(Path file, long changeCount, int productCount) throws IOException {
+        if (!Files.isRegularFile(file)) return null;
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) return null;
+            // the mapping stays valid after the channel is closed
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buf.getInt() != MAGIC || buf.getInt() != FORMAT) return null;
+        if (buf.getLong() != changeCount || buf.getInt() != productCount) return null;
+        long bodyBytes = buf.getLong();
+        long expectedCrc = buf.getLong();
+        if (bodyBytes != buf.capacity() - HEADER_BYTES) return null;
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate());
+        if (crc.getValue() != expectedCrc) return null;
+        ByteBuffer body = buf.slice();
+        return () -> new Iterator<Product>() {
+            private final ByteBuffer in = body.duplicate();
+            private int left = productCount;
+
+            @Override
+            public boolean hasNext() {
+                return left > 0;
+            }
+
+            @Override
+            public Product next() {
+                if (left == 0) throw new NoSuchElementException();
+                left--;
+                Product p = new Product();
+                p.setProductId(in.getInt());
+                p.setQuantity(in.getInt());
+                p.setMinStock(in.getInt());
+                int supplier = in.getInt();
+                p.setSupplierId(supplier == NO_SUPPLIER ? null : supplier);
+                p.setPrice(in.getDouble());
+                p.setSku(readString(in));
+                p.setName(readString(in));
+                p.setDescription(readString(in));
+                return p.freeze();
+            }
+        };
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,145 @@
+package service;
+
+import dao.ProductDao;
+import model.Product;
+import util.Csv;
+import util.Log;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming CSV import/export of the product catalog. Rows are read one at a
+ * time and upserted by SKU in chunks of ProductDao.BATCH_CHUNK, so memory use
+ * does not grow with the file. A bad row is rejected on its own: parse errors
+ * are caught up front, and a chunk that fails in the database is replayed row
+ * by row to find the offenders.
+ */
+class CatalogCsv {
+    static final String[] HEADER = {"sku", "name", "description", "price", "quantity", "min_stock", "supplier_id"};
+
+    private final ProductDao productDao;
+
+    CatalogCsv(ProductDao productDao) {
+        this.productDao = productDao;
+    }
+
+    ImportReport importCsv(Reader in) throws IOException {
+        long start = System.nanoTime();
+        ImportReport report = new ImportReport();
+        Csv.RecordReader reader = new Csv.RecordReader(in);
+        List<String> header = reader.next();
+        if (header == null) throw new IOException("Empty catalog file");
+        Map<String, Integer> cols = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) cols.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        for (String required : new String[]{"sku", "name", "price"}) {
+            if (!cols.containsKey(required)) throw new IOException("Missing column: " + required);
+        }
+
+        List<Product> chunk = new ArrayList<>(ProductDao.BATCH_CHUNK);
+        long[] lines = new long[ProductDao.BATCH_CHUNK];
+        List<String> row;
+        while ((row = reader.next()) != null) {
+            report.rowRead();
+            Product p;
+            try {
+                p = parse(row, cols);
+            } catch (IllegalArgumentException e) {
+                report.reject(reader.getRecordLine(), e.getMessage());
+                continue;
+            }
+            lines[chunk.size()] = reader.getRecordLine();
+            chunk.add(p);
+            if (chunk.size() == ProductDao.BATCH_CHUNK) flush(chunk, lines, report);
+        }
+        flush(chunk, lines, report);
+        report.finish(System.nanoTime() - start);
+        Log.info("Catalog import: {}", report);
+        return report;
+    }
+
+    private void flush(List<Product> chunk, long[] lines, ImportReport report) {
+        if (chunk.isEmpty()) return;
+        try {
+            report.imported(productDao.upsertAll(chunk));
+        } catch (SQLException chunkFailure) {
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    report.imported(productDao.upsertAll(Collections.singletonList(chunk.get(i))));
+                } catch (SQLException e) {
+                    report.reject(lines[i], e.getMessage());
+                }
+            }
+        }
+        chunk.clear();
+    }
+
+    private static Product parse(List<String> row, Map<String, Integer> cols) {
+        Product p = new Product();
+        p.setSku(required(row, cols, "sku"));
+        p.setName(required(row, cols, "name"));
+        p.setDescription(optional(row, cols, "description"));
+        p.setPrice(parseNumber(required(row, cols, "price"), "price", true));
+        String qty = optional(row, cols, "quantity");
+        p.setQuantity(qty == null ? 0 : (int) parseNumber(qty, "quantity", false));
+        String min = optional(row, cols, "min_stock");
+        p.setMinStock(min == null ? 5 : (int) parseNumber(min, "min_stock", false));
+        String supplier = optional(row, cols, "supplier_id");
+        p.setSupplierId(supplier == null ? null : (int) parseNumber(supplier, "supplier_id", false));
+        return p;
+    }
+
+    private static String required(List<String> row, Map<String, Integer> cols, String name) {
+        String v = optional(row, cols, name);
+        if (v == null) throw new IllegalArgumentException(name + " is required");
+        return v;
+    }
+
+    private static String optional(List<String> row, Map<String, Integer> cols, String name) {
+        Integer i = cols.get(name);
+        if (i == null || i >= row.size()) return null;
+        String v = row.get(i).trim();
+        return v.isEmpty() ? null : v;
+    }
+
+    private static double parseNumber(String v, String name, boolean decimal) {
+        try {
+            double d = decimal ? Double.parseDouble(v) : Integer.parseInt(v);
+            if (Double.isNaN(d) || Double.isInfinite(d)) throw new NumberFormatException();
+            if (d < 0) throw new IllegalArgumentException(name + " must not be negative: " + v);
+            return d;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + v);
+        }
+    }
+
+    /** Writes the header and one row per product; returns the number of rows written. */
+    long exportCsv(Iterable<Product> products, Writer out) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        Csv.writeRecord(out, HEADER);
+        for (Product p : products) {
+            Csv.writeRecord(out,
+                    p.getSku(),
+                    p.getName(),
+                    p.getDescription(),
+                    String.valueOf(p.getPrice()),
+                    String.valueOf(p.getQuantity()),
+                    String.valueOf(p.getMinStock()),
+                    p.getSupplierId() == null ? null : String.valueOf(p.getSupplierId()));
+            rows++;
+        }
+        out.flush();
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        Log.info("Catalog export: {} rows in {} ms", rows, ms);
+        return rows;
+    }
+}
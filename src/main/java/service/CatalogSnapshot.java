@@ -0,0 +1,230 @@
+package service;
+
+import model.Product;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * An immutable, versioned view of the cached catalog. Holding one costs
+ * nothing and it never changes underneath the reader; a later change
+ * publishes a new snapshot instead.
+ *
+ * Products live in a 32-way radix trie indexed by product id. A change copies
+ * only the nodes on the path to that id (a handful for a million products) and
+ * shares everything else with the previous snapshot. Iteration is in id order.
+ * All products in a snapshot are frozen.
+ */
+public final class CatalogSnapshot implements Iterable<Product> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final CatalogSnapshot EMPTY = new CatalogSnapshot(new Object[WIDTH], 0, 0, 0);
+
+    // inner nodes hold Object[] children, the bottom level holds Products
+    private final Object[] root;
+    private final int shift;
+    private final int size;
+    private final long version;
+
+    private CatalogSnapshot(Object[] root, int shift, int size, long version) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+        this.version = version;
+    }
+
+    static CatalogSnapshot empty() {
+        return EMPTY;
+    }
+
+    /** Increases with every published change. */
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Optional<Product> findById(int productId) {
+        return Optional.ofNullable(get(productId));
+    }
+
+    /** The product with this id, or null. */
+    public Product get(int productId) {
+        if (productId < 0 || !fits(productId, shift)) return null;
+        Object[] node = root;
+        for (int s = shift; s > 0; s -= BITS) {
+            node = (Object[]) node[(productId >>> s) & MASK];
+            if (node == null) return null;
+        }
+        return (Product) node[productId & MASK];
+    }
+
+    /** A snapshot with p added or replaced; p must be frozen. */
+    CatalogSnapshot with(Product p) {
+        int id = p.getProductId();
+        if (id < 0) throw new IllegalArgumentException("Negative product id: " + id);
+        if (!p.isFrozen()) throw new IllegalArgumentException("Snapshot products must be frozen");
+        Object[] newRoot = root;
+        int newShift = shift;
+        while (!fits(id, newShift)) {
+            Object[] up = new Object[WIDTH];
+            up[0] = newRoot;
+            newRoot = up;
+            newShift += BITS;
+        }
+        boolean added = get(id) == null;
+        newRoot = assoc(newRoot, newShift, id, p);
+        return new CatalogSnapshot(newRoot, newShift, added ? size + 1 : size, version + 1);
+    }
+
+    /** A snapshot without the given id; this one if it was absent. */
+    CatalogSnapshot without(int productId) {
+        if (get(productId) == null) return this;
+        Object[] newRoot = dissoc(root, shift, productId);
+        return new CatalogSnapshot(newRoot == null ? new Object[WIDTH] : newRoot, shift, size - 1, version + 1);
+    }
+
+    @Override
+    public Iterator<Product> iterator() {
+        return iterator(0);
+    }
+
+    /** The products with ids above productId, in id order; starts at that id instead of walking past the lower ones. */
+    public Iterable<Product> after(int productId) {
+        if (productId == Integer.MAX_VALUE) return Collections.emptyList();
+        int from = Math.max(0, productId + 1);
+        return () -> iterator(from);
+    }
+
+    private Iterator<Product> iterator(int from) {
+        return new Iterator<Product>() {
+            // one cursor per level, root first
+            private final Object[][] nodes = new Object[shift / BITS + 1][];
+            private final int[] index = new int[shift / BITS + 1];
+            private int depth;
+            private Product next;
+
+            {
+                nodes[0] = root;
+                if (!fits(from, shift)) {
+                    depth = -1; // beyond every id the trie can hold
+                } else {
+                    // point each level's cursor at from's path, down to the first missing node
+                    for (int s = shift; ; s -= BITS) {
+                        index[depth] = (from >>> s) & MASK;
+                        Object child = nodes[depth][index[depth]];
+                        if (s == 0 || child == null) break;
+                        nodes[++depth] = (Object[]) child;
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && depth >= 0) {
+                    if (index[depth] == WIDTH) {
+                        depth--;
+                        if (depth >= 0) index[depth]++;
+                        continue;
+                    }
+                    Object child = nodes[depth][index[depth]];
+                    if (child == null) {
+                        index[depth]++;
+                    } else if (depth == nodes.length - 1) {
+                        next = (Product) child;
+                        index[depth]++;
+                    } else {
+                        nodes[++depth] = (Object[]) child;
+                        index[depth] = 0;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Product next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Product p = next;
+                next = null;
+                return p;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogSnapshot v" + version + " (" + size + " products)";
+    }
+
+    private static boolean fits(int id, int shift) {
+        return shift + BITS >= 32 || (id >>> (shift + BITS)) == 0;
+    }
+
+    private static Object[] assoc(Object[] node, int shift, int id, Product p) {
+        Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        int i = (id >>> shift) & MASK;
+        copy[i] = shift == 0 ? p : assoc((Object[]) copy[i], shift - BITS, id, p);
+        return copy;
+    }
+
+    // null once a node has no children left, so deleted ranges do not keep empty nodes
+    private static Object[] dissoc(Object[] node, int shift, int id) {
+        int i = (id >>> shift) & MASK;
+        Object child = shift == 0 ? null : dissoc((Object[]) node[i], shift - BITS, id);
+        Object[] copy = node.clone();
+        copy[i] = child;
+        for (Object o : copy) {
+            if (o != null) return copy;
+        }
+        return null;
+    }
+
+    /**
+     * Builds a snapshot in place for bulk loads. Every node belongs to the
+     * builder until build(), so no path copying is needed.
+     */
+    static final class Builder {
+        private Object[] root = new Object[WIDTH];
+        private int shift;
+        private int size;
+
+        /** Adds or replaces p; p must be frozen. */
+        Builder put(Product p) {
+            int id = p.getProductId();
+            if (id < 0) throw new IllegalArgumentException("Negative product id: " + id);
+            if (!p.isFrozen()) throw new IllegalArgumentException("Snapshot products must be frozen");
+            while (!fits(id, shift)) {
+                Object[] up = new Object[WIDTH];
+                up[0] = root;
+                root = up;
+                shift += BITS;
+            }
+            Object[] node = root;
+            for (int s = shift; s > 0; s -= BITS) {
+                int i = (id >>> s) & MASK;
+                if (node[i] == null) node[i] = new Object[WIDTH];
+                node = (Object[]) node[i];
+            }
+            if (node[id & MASK] == null) size++;
+            node[id & MASK] = p;
+            return this;
+        }
+
+        CatalogSnapshot build(long version) {
+            CatalogSnapshot s = new CatalogSnapshot(root, shift, size, version);
+            root = null; // the builder must not touch published nodes
+            return s;
+        }
+    }
+}
@@ -0,0 +1,650 @@
+package service;
+
+import model.Product;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact product store for very large catalogs. Each product is a slot in
+ * parallel primitive arrays; ids map to slots through an id-indexed array
+ * (an open-addressing int map when ids are sparse), and strings are
+ * dictionary-encoded as UTF-8 in shared byte arenas. At a million products it
+ * takes about a third of the heap of the map store, which keeps a Product
+ * object graph with separate String instances per product.
+ *
+ * Reads materialize a fresh frozen Product. Iteration materializes one
+ * product per step and keeps none of them. snapshot() materializes the whole
+ * catalog on every call and is not kept, so callers iterate, count and look
+ * up through the store instead. A replaced string stays in its arena until
+ * the next compaction, which rewrites the dictionaries with only the strings
+ * in use and trims the arrays: after every reload, and whenever more than half
+ * of a dictionary is unused. SKU lookups find the SKU's dictionary code and
+ * read the slot holding it from a code-indexed array. Enable with
+ * {@code -Dwms.cache.store=columnar}.
+ */
+class ColumnarProductStore implements ProductStore {
+
+    private static final int NO_SUPPLIER = Integer.MIN_VALUE;
+    private static final int NO_STRING = -1;
+    // compaction waits until a dictionary has this many codes beyond twice the product count
+    private static final int COMPACT_SLACK = 1024;
+
+    private final SlotIndex slotsById = new SlotIndex();
+    private StringDictionary skus = new StringDictionary(true);
+    // slot holding each SKU code, -1 if none; SKUs are unique, so one slot per code
+    private int[] slotBySku = new int[0];
+    private StringDictionary names = new StringDictionary(true);
+    // mostly one per product, so equal descriptions are only merged by compaction
+    private StringDictionary descriptions = new StringDictionary(false);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // one slot per product; ids[slot] == 0 marks a free slot
+    private int[] ids = new int[1024];
+    private int[] quantity = new int[1024];
+    private int[] minStock = new int[1024];
+    private int[] supplier = new int[1024];
+    private int[] sku = new int[1024];
+    private int[] name = new int[1024];
+    private int[] description = new int[1024];
+    private double[] price = new double[1024];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private long modCount;
+
+    @Override
+    public Product get(int productId) {
+        lock.readLock().lock();
+        try {
+            int slot = slotsById.get(productId);
+            return slot < 0 ? null : materialize(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Product getBySku(String sku) {
+        lock.readLock().lock();
+        try {
+            int code = skus.find(sku);
+            int slot = code < 0 || code >= slotBySku.length ? -1 : slotBySku[code];
+            return slot < 0 ? null : materialize(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Product put(Product p) {
+        lock.writeLock().lock();
+        try {
+            store(p);
+            return materialize(slotsById.get(p.getProductId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Product remove(int productId) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotsById.remove(productId);
+            if (slot < 0) return null;
+            modCount++;
+            Product last = materialize(slot);
+            freeSlot(slot);
+            compactIfMostlyUnused();
+            return last;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Product updateStock(int productId, int qty, int min) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotsById.get(productId);
+            if (slot < 0) return null;
+            modCount++;
+            quantity[slot] = qty;
+            minStock[slot] = min;
+            return materialize(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reload(Iterable<Product> products) {
+        BitSet keep = new BitSet();
+        for (Product p : products) {
+            lock.writeLock().lock();
+            try {
+                store(p);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            keep.set(p.getProductId());
+        }
+        lock.writeLock().lock();
+        try {
+            modCount++;
+            for (int slot = 0; slot < slotCount; slot++) {
+                int id = ids[slot];
+                if (id != 0 && !keep.get(id)) {
+                    slotsById.remove(id);
+                    freeSlot(slot);
+                }
+            }
+            compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** A full copy as Product objects, built per call; the store keeps no reference to it. */
+    @Override
+    public CatalogSnapshot snapshot() {
+        lock.readLock().lock();
+        try {
+            CatalogSnapshot.Builder b = new CatalogSnapshot.Builder();
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (ids[slot] != 0) b.put(materialize(slot));
+            }
+            return b.build(modCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean hasSharedSnapshots() {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Walks the slots in order; each step reads under the lock, so concurrent writes are allowed. */
+    @Override
+    public Iterator<Product> iterator() {
+        return new Iterator<Product>() {
+            private int slot;
+            private Product next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) return true;
+                lock.readLock().lock();
+                try {
+                    while (slot < slotCount) {
+                        int s = slot++;
+                        if (ids[s] != 0) {
+                            next = materialize(s);
+                            return true;
+                        }
+                    }
+                    return false;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+
+            @Override
+            public Product next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Product p = next;
+                next = null;
+                return p;
+            }
+        };
+    }
+
+    /** Approximate bytes held by the arrays and dictionaries, for sizing the cache. */
+    long estimatedHeapBytes() {
+        lock.readLock().lock();
+        try {
+            long columns = (long) ids.length * (7 * Integer.BYTES + Double.BYTES);
+            return columns + (long) (freeSlots.length + slotBySku.length) * Integer.BYTES + slotsById.heapBytes()
+                    + skus.heapBytes() + names.heapBytes() + descriptions.heapBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "columnar store, " + size() + " products, ~" + (estimatedHeapBytes() >> 10) + " KiB";
+    }
+
+    private void store(Product p) {
+        if (p.getProductId() <= 0) throw new IllegalArgumentException("Product id must be positive: " + p.getProductId());
+        modCount++;
+        int slot = slotsById.get(p.getProductId());
+        boolean added = slot < 0;
+        if (added) {
+            slot = allocateSlot();
+            slotsById.put(p.getProductId(), slot);
+        } else {
+            unindexSku(slot);
+        }
+        ids[slot] = p.getProductId();
+        quantity[slot] = p.getQuantity();
+        minStock[slot] = p.getMinStock();
+        supplier[slot] = p.getSupplierId() == null ? NO_SUPPLIER : p.getSupplierId();
+        price[slot] = p.getPrice();
+        // an unchanged string keeps its code, so rewriting a product adds nothing to the arenas
+        sku[slot] = skus.encode(p.getSku(), added ? NO_STRING : sku[slot]);
+        indexSku(slot);
+        name[slot] = names.encode(p.getName(), added ? NO_STRING : name[slot]);
+        description[slot] = descriptions.encode(p.getDescription(), added ? NO_STRING : description[slot]);
+        if (!added) compactIfMostlyUnused();
+    }
+
+    // live codes per dictionary are at most one per product, so past twice that most are unused;
+    // each compaction follows at least as many replaced strings as there are products
+    private void compactIfMostlyUnused() {
+        long limit = 2L * slotsById.size + COMPACT_SLACK;
+        if (skus.count > limit || names.count > limit || descriptions.count > limit) compact();
+    }
+
+    /**
+     * Rewrites the dictionaries with only the strings live slots use, rebuilds
+     * the SKU and id indexes for the new codes and trims every array to what
+     * is in use. Slots keep their positions, so iterators carry on.
+     */
+    private void compact() {
+        skus = skus.compact(sku, ids, slotCount);
+        names = names.compact(name, ids, slotCount);
+        descriptions = descriptions.compact(description, ids, slotCount);
+        slotBySku = new int[skus.count];
+        Arrays.fill(slotBySku, -1);
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (ids[slot] != 0) indexSku(slot);
+        }
+        slotsById.rebuild(ids, slotCount);
+        int n = Math.max(slotCount, 16);
+        if (n < ids.length) resize(n);
+        freeSlots = Arrays.copyOf(freeSlots, Math.max(freeCount, 16));
+    }
+
+    private Product materialize(int slot) {
+        Product p = new Product();
+        p.setProductId(ids[slot]);
+        p.setSku(skus.decode(sku[slot]));
+        p.setName(names.decode(name[slot]));
+        p.setDescription(descriptions.decode(description[slot]));
+        p.setPrice(price[slot]);
+        p.setQuantity(quantity[slot]);
+        p.setMinStock(minStock[slot]);
+        p.setSupplierId(supplier[slot] == NO_SUPPLIER ? null : supplier[slot]);
+        return p.freeze();
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) return freeSlots[--freeCount];
+        if (slotCount == ids.length) resize(ids.length * 2);
+        return slotCount++;
+    }
+
+    private void resize(int n) {
+        ids = Arrays.copyOf(ids, n);
+        quantity = Arrays.copyOf(quantity, n);
+        minStock = Arrays.copyOf(minStock, n);
+        supplier = Arrays.copyOf(supplier, n);
+        sku = Arrays.copyOf(sku, n);
+        name = Arrays.copyOf(name, n);
+        description = Arrays.copyOf(description, n);
+        price = Arrays.copyOf(price, n);
+    }
+
+    private void indexSku(int slot) {
+        int code = sku[slot];
+        if (code == NO_STRING) return;
+        if (code >= slotBySku.length) {
+            int old = slotBySku.length;
+            slotBySku = Arrays.copyOf(slotBySku, Math.max(old * 2, code + 1));
+            Arrays.fill(slotBySku, old, slotBySku.length, -1);
+        }
+        slotBySku[code] = slot;
+    }
+
+    private void unindexSku(int slot) {
+        int code = sku[slot];
+        if (code != NO_STRING && code < slotBySku.length && slotBySku[code] == slot) slotBySku[code] = -1;
+    }
+
+    private void freeSlot(int slot) {
+        unindexSku(slot);
+        ids[slot] = 0;
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Product id -> slot: an array indexed by id while the ids are dense (none
+     * above twice the count, plus slack), else an IntIntMap. An id past that
+     * bound switches to the map; rebuild() picks the form again.
+     */
+    static final class SlotIndex {
+        private static final int DENSE_SLACK = 1024;
+
+        private int[] dense = emptyDense(DENSE_SLACK);
+        private IntIntMap sparse;
+        int size;
+
+        /** The slot for id, or -1. */
+        int get(int id) {
+            if (sparse != null) return sparse.get(id);
+            return id < dense.length ? dense[id] : -1;
+        }
+
+        void put(int id, int slot) {
+            if (sparse == null && id >= dense.length) {
+                if (id > 2L * (size + 1) + DENSE_SLACK) {
+                    toSparse();
+                } else {
+                    int old = dense.length;
+                    dense = Arrays.copyOf(dense, Math.max(id + 1, old * 2));
+                    Arrays.fill(dense, old, dense.length, -1);
+                }
+            }
+            if (sparse != null) {
+                sparse.put(id, slot);
+                size = sparse.size;
+                return;
+            }
+            if (dense[id] < 0) size++;
+            dense[id] = slot;
+        }
+
+        /** Removes id and returns its slot, or -1. */
+        int remove(int id) {
+            if (sparse != null) {
+                int slot = sparse.remove(id);
+                size = sparse.size;
+                return slot;
+            }
+            if (id >= dense.length || dense[id] < 0) return -1;
+            int slot = dense[id];
+            dense[id] = -1;
+            size--;
+            return slot;
+        }
+
+        /** Re-indexes the slots whose ids[slot] is non-zero, in whichever form fits them now. */
+        void rebuild(int[] ids, int slotCount) {
+            int maxId = 0;
+            int count = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (ids[slot] == 0) continue;
+                maxId = Math.max(maxId, ids[slot]);
+                count++;
+            }
+            size = 0;
+            if (maxId <= 2L * count + DENSE_SLACK) {
+                sparse = null;
+                dense = emptyDense(maxId + 1);
+            } else {
+                sparse = new IntIntMap(count);
+                dense = null;
+            }
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (ids[slot] != 0) put(ids[slot], slot);
+            }
+        }
+
+        long heapBytes() {
+            return sparse != null ? sparse.heapBytes() : (long) dense.length * Integer.BYTES;
+        }
+
+        private void toSparse() {
+            sparse = new IntIntMap(size + 1);
+            for (int id = 0; id < dense.length; id++) {
+                if (dense[id] >= 0) sparse.put(id, dense[id]);
+            }
+            dense = null;
+        }
+
+        private static int[] emptyDense(int n) {
+            int[] a = new int[n];
+            Arrays.fill(a, -1);
+            return a;
+        }
+    }
+
+    /** int -> non-negative int map with linear probing at load <= 3/4; key 0 marks an empty bucket. */
+    static final class IntIntMap {
+        private int[] keys;
+        private int[] values;
+        int size;
+
+        /** Sized so that {@code expected} keys fit without growing. */
+        IntIntMap(int expected) {
+            keys = new int[tableSize(expected)];
+            values = new int[keys.length];
+        }
+
+        /** The value for key, or -1. */
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+                if (keys[i] == 0) return -1;
+            }
+        }
+
+        void put(int key, int value) {
+            if ((size + 1) * 4L > keys.length * 3L) grow();
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != 0 && keys[i] != key) i = (i + 1) & mask;
+            if (keys[i] == 0) size++;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        /** Removes key and returns its value, or -1. Shifts the probe run back so no tombstones are needed. */
+        int remove(int key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != key) {
+                if (keys[i] == 0) return -1;
+                i = (i + 1) & mask;
+            }
+            int removed = values[i];
+            size--;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = mix(keys[j]) & mask;
+                // move keys[j] into the hole unless its home lies cyclically in (i, j]
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            return removed;
+        }
+
+        long heapBytes() {
+            return 2L * keys.length * Integer.BYTES;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Interns strings as UTF-8 runs in one byte arena and hands out int codes.
+     * With dedupe, equal strings share a code through a hash table; without,
+     * every new string is appended and only compact() merges equal ones, which
+     * saves the table for strings that rarely repeat. Decoding allocates a new
+     * String.
+     */
+    static final class StringDictionary {
+        private final boolean dedupe;
+        private byte[] arena = new byte[1 << 16];
+        private int arenaSize;
+        // offsets[code + 1] - offsets[code] is the length of code's bytes
+        private int[] offsets = new int[1024];
+        private int count;
+        // code + 1 per bucket, 0 = empty; null without dedupe
+        private int[] table;
+
+        StringDictionary(boolean dedupe) {
+            this.dedupe = dedupe;
+            if (dedupe) table = new int[2048];
+        }
+
+        /** The code for s; current (the code the slot holds now) if s is still that string. */
+        int encode(String s, int current) {
+            if (s == null) return NO_STRING;
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (current != NO_STRING && equalsAt(current, bytes, 0, bytes.length)) return current;
+            return table == null ? append(bytes, 0, bytes.length) : intern(bytes, 0, bytes.length);
+        }
+
+        /** The code of s, or NO_STRING if it was never encoded; needs dedupe. */
+        int find(String s) {
+            if (s == null) return NO_STRING;
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            int mask = table.length - 1;
+            for (int i = hash(bytes, 0, bytes.length) & mask; table[i] != 0; i = (i + 1) & mask) {
+                int code = table[i] - 1;
+                if (equalsAt(code, bytes, 0, bytes.length)) return code;
+            }
+            return NO_STRING;
+        }
+
+        String decode(int code) {
+            return code == NO_STRING ? null : new String(arena, offsets[code], length(code), StandardCharsets.UTF_8);
+        }
+
+        long heapBytes() {
+            return arena.length + (long) (offsets.length + (table == null ? 0 : table.length)) * Integer.BYTES;
+        }
+
+        /**
+         * A new dictionary with just the strings of the slots whose ids[slot]
+         * is non-zero, equal ones merged, its arrays trimmed to fit; rewrites
+         * codes[slot] to the new codes.
+         */
+        StringDictionary compact(int[] codes, int[] ids, int slotCount) {
+            StringDictionary fresh = new StringDictionary(dedupe);
+            int live = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (ids[slot] != 0 && codes[slot] != NO_STRING) live++;
+            }
+            // merging needs the table even when the dictionary keeps none
+            fresh.table = new int[tableSize(live)];
+            for (int slot = 0; slot < slotCount; slot++) {
+                int code = codes[slot];
+                if (ids[slot] == 0 || code == NO_STRING) continue;
+                codes[slot] = fresh.intern(arena, offsets[code], length(code));
+            }
+            fresh.arena = Arrays.copyOf(fresh.arena, fresh.arenaSize);
+            fresh.offsets = Arrays.copyOf(fresh.offsets, fresh.count + 1);
+            if (dedupe) {
+                fresh.table = new int[tableSize(fresh.count)];
+                fresh.rehash();
+            } else {
+                fresh.table = null;
+            }
+            return fresh;
+        }
+
+        private int intern(byte[] b, int off, int len) {
+            int mask = table.length - 1;
+            int i = hash(b, off, len) & mask;
+            for (; table[i] != 0; i = (i + 1) & mask) {
+                int code = table[i] - 1;
+                if (equalsAt(code, b, off, len)) return code;
+            }
+            int code = append(b, off, len);
+            table[i] = code + 1;
+            if (count * 4L > table.length * 3L) {
+                table = new int[table.length * 2];
+                rehash();
+            }
+            return code;
+        }
+
+        private int append(byte[] b, int off, int len) {
+            if (arenaSize + len > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(Math.max(arena.length * 2, 1 << 16), arenaSize + len));
+            }
+            System.arraycopy(b, off, arena, arenaSize, len);
+            if (count + 1 >= offsets.length) offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, 1024));
+            arenaSize += len;
+            offsets[count + 1] = arenaSize;
+            return count++;
+        }
+
+        private boolean equalsAt(int code, byte[] b, int off, int len) {
+            if (length(code) != len) return false;
+            int at = offsets[code];
+            for (int k = 0; k < len; k++) {
+                if (arena[at + k] != b[off + k]) return false;
+            }
+            return true;
+        }
+
+        // fills the (empty) table from the codes
+        private void rehash() {
+            int mask = table.length - 1;
+            for (int code = 0; code < count; code++) {
+                int i = hash(arena, offsets[code], length(code)) & mask;
+                while (table[i] != 0) i = (i + 1) & mask;
+                table[i] = code + 1;
+            }
+        }
+
+        private int length(int code) {
+            return offsets[code + 1] - offsets[code];
+        }
+
+        private static int hash(byte[] b, int off, int len) {
+            int h = 1;
+            for (int k = off; k < off + len; k++) h = 31 * h + b[k];
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // a power of two that holds n keys at load <= 3/4
+    private static int tableSize(int n) {
+        int size = 16;
+        while (size * 3L < n * 4L) size <<= 1;
+        return size;
+    }
+}
@@ -0,0 +1,175 @@
+package service;
+
+import dao.MovementBatchResult;
+import dao.ProductDao;
+import model.StockLevel;
+import model.StockMovement;
+import util.Log;
+import util.Metrics;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Single writer thread that applies queued stock movements in shared
+ * transactions. A batch closes when it holds maxBatch movements or maxDelayMs
+ * has passed since its first movement arrived, so one commit (and one fsync)
+ * covers a whole scanner burst. Futures complete only after the commit.
+ *
+ * The queue keeps each product's movements in submission order. A batch holds
+ * the stripe locks of its products from before the commit until the cache has
+ * been updated, so edits and deletes of those products cannot interleave.
+ */
+class GroupCommitWriter {
+
+    private static final Metrics.Histogram BATCH_SIZE = Metrics.histogram("stock.batch.size");
+    // submit() to commit, including the time spent queued behind earlier batches
+    private static final Metrics.Histogram LATENCY = Metrics.timer("stock.movement.latency");
+
+    private static final class Pending {
+        final StockMovement movement;
+        final CompletableFuture<StockLevel> future = new CompletableFuture<>();
+        final long submitted = System.nanoTime();
+
+        Pending(StockMovement movement) {
+            this.movement = movement;
+        }
+    }
+
+    private static final Pending STOP = new Pending(null);
+
+    private final ProductDao productDao;
+    private final StripedLocks locks;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final Consumer<StockLevel> onCommitted;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private boolean stopping;
+
+    GroupCommitWriter(ProductDao productDao, StripedLocks locks, int maxBatch, long maxDelayMs,
+                      Consumer<StockLevel> onCommitted) {
+        this.productDao = productDao;
+        this.locks = locks;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMs));
+        this.onCommitted = onCommitted;
+        this.thread = new Thread(this::run, "stock-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    CompletableFuture<StockLevel> submit(StockMovement movement) {
+        Pending p = new Pending(movement);
+        // checked and enqueued together, so nothing lands behind the stop marker after the writer has drained
+        synchronized (queue) {
+            if (!stopping) {
+                queue.add(p);
+                return p.future;
+            }
+        }
+        p.future.completeExceptionally(new SQLException("Stock writer is shut down"));
+        return p.future;
+    }
+
+    /** Stops accepting movements and waits for the queued ones to be committed. */
+    void close() {
+        synchronized (queue) {
+            if (!stopping) queue.add(STOP);
+            stopping = true;
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        boolean running = true;
+        while (running) {
+            try {
+                Pending first = queue.take();
+                if (first == STOP) break;
+                batch.add(first);
+                running = fill(batch);
+                commit(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                Log.error("Stock writer error", e);
+            } finally {
+                for (Pending p : batch) {
+                    p.future.completeExceptionally(new SQLException("Stock writer stopped"));
+                }
+                batch.clear();
+            }
+        }
+        Pending p;
+        while ((p = queue.poll()) != null) {
+            p.future.completeExceptionally(new SQLException("Stock writer is shut down"));
+        }
+    }
+
+    // Returns false once the stop marker has been seen
+    private boolean fill(List<Pending> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatch) {
+            long wait = deadline - System.nanoTime();
+            Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) return true;
+            if (next == STOP) return false;
+            batch.add(next);
+        }
+        return true;
+    }
+
+    private void commit(List<Pending> batch) {
+        List<StockMovement> movements = new ArrayList<>(batch.size());
+        int[] ids = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            movements.add(batch.get(i).movement);
+            ids[i] = batch.get(i).movement.getProductId();
+        }
+        BATCH_SIZE.record(batch.size());
+        MovementBatchResult result = null;
+        SQLException failure = null;
+        int[] taken = locks.lockAll(ids);
+        try {
+            result = productDao.applyMovements(movements);
+            for (int i = 0; i < batch.size(); i++) {
+                StockLevel level = result.level(i);
+                if (level == null) continue;
+                try {
+                    onCommitted.accept(level);
+                } catch (RuntimeException e) {
+                    Log.error("Post-commit update failed: {}", e.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("Group commit of {} movements failed: {}", batch.size(), e.getMessage());
+            failure = e;
+        } finally {
+            locks.unlock(taken);
+        }
+        long now = System.nanoTime();
+        for (Pending p : batch) LATENCY.record(now - p.submitted);
+        // completed outside the locks, so callers' dependent actions cannot stall the writer's stripes
+        if (failure != null) {
+            for (Pending p : batch) p.future.completeExceptionally(failure);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            StockLevel level = result.level(i);
+            if (level != null) batch.get(i).future.complete(level);
+            else batch.get(i).future.completeExceptionally(result.error(i));
+        }
+    }
+}
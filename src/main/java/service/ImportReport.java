@@ -0,0 +1,62 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Outcome of a catalog import: counts, throughput and the rows that were rejected. */
+public class ImportReport {
+    // keep memory bounded on a bad file; the count still covers every reject
+    private static final int MAX_KEPT_REJECTS = 1000;
+
+    public static class Reject {
+        private final long line;
+        private final String reason;
+
+        Reject(long line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        public long getLine() { return line; }
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + reason;
+        }
+    }
+
+    private final List<Reject> rejects = new ArrayList<>();
+    private long rowsRead;
+    private long imported;
+    private long rejected;
+    private long elapsedNanos;
+
+    void rowRead() { rowsRead++; }
+    void imported(int n) { imported += n; }
+    void finish(long elapsedNanos) { this.elapsedNanos = elapsedNanos; }
+
+    void reject(long line, String reason) {
+        rejected++;
+        if (rejects.size() < MAX_KEPT_REJECTS) rejects.add(new Reject(line, reason));
+    }
+
+    public long getRowsRead() { return rowsRead; }
+    public long getImported() { return imported; }
+    public long getRejected() { return rejected; }
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    /** The first rejects in file order; getRejected() has the full count. */
+    public List<Reject> getRejects() { return Collections.unmodifiableList(rejects); }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsRead * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows read, %d imported, %d rejected in %d ms (%.0f rows/s)",
+                rowsRead, imported, rejected, getElapsedMillis(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,36 @@
+package service;
+
+import model.Product;
+
+/** A product crossing its min_stock threshold, in either direction. */
+public class LowStockEvent {
+    public enum Type { BECAME_LOW, RESTORED }
+
+    private final Type type;
+    private final int productId;
+    private final Product product;
+    private final int quantity;
+    private final int minStock;
+
+    LowStockEvent(Type type, int productId, Product product, int quantity, int minStock) {
+        this.type = type;
+        this.productId = productId;
+        this.product = product;
+        this.quantity = quantity;
+        this.minStock = minStock;
+    }
+
+    public Type getType() { return type; }
+    public int getProductId() { return productId; }
+
+    /** The cached product, if known; may be null for a product that was never cached. */
+    public Product getProduct() { return product; }
+
+    public int getQuantity() { return quantity; }
+    public int getMinStock() { return minStock; }
+
+    @Override
+    public String toString() {
+        return type + " product " + productId + " qty=" + quantity + " min=" + minStock;
+    }
+}
@@ -0,0 +1,11 @@
+package service;
+
+/**
+ * Notified the moment a product crosses its low-stock threshold. Called on
+ * the thread that committed the change, with the monitor's lock held so
+ * events for a product arrive in order; hand UI work to the EDT.
+ */
+@FunctionalInterface
+public interface LowStockListener {
+    void lowStockChanged(LowStockEvent event);
+}
@@ -0,0 +1,137 @@
+package service;
+
+import model.Product;
+import util.Log;
+import util.Metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Live set of products at or below min_stock. Thresholds are checked only
+ * when a change event touches a product's quantity or min_stock, so there is
+ * no periodic scan; crossings are reported once, as they happen.
+ *
+ * The set is ordered by quantity/min_stock, most depleted first.
+ */
+class LowStockMonitor implements ProductChangeListener {
+
+    private static final class Low {
+        final int productId;
+        final double ratio;
+        final Product product;
+        int quantity;
+        int minStock;
+
+        Low(int productId, Product product, int quantity, int minStock) {
+            this.productId = productId;
+            this.product = product;
+            this.quantity = quantity;
+            this.minStock = minStock;
+            this.ratio = minStock <= 0 ? (quantity <= 0 ? 0 : Double.MAX_VALUE) : (double) quantity / minStock;
+        }
+    }
+
+    private static final Metrics.Histogram T_REBUILD = Metrics.timer("lowstock.rebuild");
+    private static final Metrics.Histogram T_EVALUATE = Metrics.timer("lowstock.evaluate");
+    private static final Metrics.Counter CROSSINGS = Metrics.counter("lowstock.crossings");
+
+    private static final Comparator<Low> MOST_DEPLETED_FIRST =
+            Comparator.<Low>comparingDouble(l -> l.ratio).thenComparingInt(l -> l.productId);
+
+    private final Map<Integer, Low> byId = new HashMap<>();
+    private final TreeSet<Low> ordered = new TreeSet<>(MOST_DEPLETED_FIRST);
+    private final List<LowStockListener> listeners = new CopyOnWriteArrayList<>();
+
+    Subscription addListener(LowStockListener l) {
+        listeners.add(l);
+        return () -> listeners.remove(l);
+    }
+
+    /** Resets the set from a full catalog; reports only products whose state differs from before. */
+    synchronized void rebuild(Iterable<Product> products) {
+        long start = System.nanoTime();
+        Map<Integer, Low> before = new HashMap<>(byId);
+        byId.clear();
+        ordered.clear();
+        for (Product p : products) {
+            if (p.getQuantity() > p.getMinStock()) continue;
+            Low low = new Low(p.getProductId(), p, p.getQuantity(), p.getMinStock());
+            byId.put(low.productId, low);
+            ordered.add(low);
+            if (before.remove(low.productId) == null) notify(LowStockEvent.Type.BECAME_LOW, low);
+        }
+        for (Low restored : before.values()) notify(LowStockEvent.Type.RESTORED, restored);
+        T_REBUILD.recordSince(start);
+    }
+
+    @Override
+    public void productChanged(ProductChangeEvent e) {
+        switch (e.getType()) {
+            case CREATED:
+            case UPDATED:
+            case QUANTITY_CHANGED:
+                evaluate(e.getProductId(), e.getProduct(), e.getNewQuantity(), e.getMinStock());
+                break;
+            case DELETED:
+                forget(e.getProductId());
+                break;
+            default:
+                // RELOADED is handled by the service calling rebuild()
+        }
+    }
+
+    synchronized void evaluate(int productId, Product product, int quantity, int minStock) {
+        long start = System.nanoTime();
+        Low old = byId.remove(productId);
+        if (old != null) ordered.remove(old);
+        if (quantity <= minStock) {
+            Low low = new Low(productId, product, quantity, minStock);
+            byId.put(productId, low);
+            ordered.add(low);
+            if (old == null) notify(LowStockEvent.Type.BECAME_LOW, low);
+        } else if (old != null) {
+            old.quantity = quantity;
+            old.minStock = minStock;
+            notify(LowStockEvent.Type.RESTORED, old);
+        }
+        T_EVALUATE.recordSince(start);
+    }
+
+    private synchronized void forget(int productId) {
+        Low old = byId.remove(productId);
+        if (old != null) ordered.remove(old);
+    }
+
+    synchronized boolean isLow(int productId) {
+        return byId.containsKey(productId);
+    }
+
+    synchronized int size() {
+        return byId.size();
+    }
+
+    /** Ids in the low set, most depleted first. */
+    synchronized List<Integer> lowIds() {
+        List<Integer> ids = new ArrayList<>(ordered.size());
+        for (Low l : ordered) ids.add(l.productId);
+        return ids;
+    }
+
+    private void notify(LowStockEvent.Type type, Low low) {
+        CROSSINGS.increment();
+        LowStockEvent event = new LowStockEvent(type, low.productId, low.product, low.quantity, low.minStock);
+        for (LowStockListener l : listeners) {
+            try {
+                l.lowStockChanged(event);
+            } catch (RuntimeException ex) {
+                Log.error("Low stock listener failed on {}", event, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package service;
+
+import model.Product;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The default store: frozen Product objects in a persistent id-keyed map.
+ * Every write publishes a new CatalogSnapshot that shares all untouched
+ * nodes with the previous one, so snapshot() and reads never copy or lock.
+ * A SKU -> id map beside it serves scans; lookups re-check the SKU against
+ * the snapshot, so a reader racing a rename never gets the wrong product.
+ */
+class MapProductStore implements ProductStore {
+    private final AtomicReference<CatalogSnapshot> current = new AtomicReference<>(CatalogSnapshot.empty());
+    // replaced wholesale by reload(), changed in place by the other writers
+    private volatile ConcurrentHashMap<String, Integer> idsBySku = new ConcurrentHashMap<>();
+
+    @Override
+    public Product get(int productId) {
+        return current.get().get(productId);
+    }
+
+    @Override
+    public Product getBySku(String sku) {
+        Integer id = idsBySku.get(sku);
+        if (id == null) return null;
+        Product p = current.get().get(id);
+        return p != null && sku.equals(p.getSku()) ? p : null;
+    }
+
+    @Override
+    public synchronized Product put(Product p) {
+        Product frozen = p.isFrozen() ? p : p.copy().freeze();
+        CatalogSnapshot before = current.get();
+        current.set(before.with(frozen));
+        Product old = before.get(frozen.getProductId());
+        if (old != null && old.getSku() != null && !old.getSku().equals(frozen.getSku())) {
+            idsBySku.remove(old.getSku(), old.getProductId());
+        }
+        if (frozen.getSku() != null) idsBySku.put(frozen.getSku(), frozen.getProductId());
+        return frozen;
+    }
+
+    @Override
+    public synchronized Product remove(int productId) {
+        CatalogSnapshot before = current.get();
+        current.set(before.without(productId));
+        Product last = before.get(productId);
+        if (last != null && last.getSku() != null) idsBySku.remove(last.getSku(), productId);
+        return last;
+    }
+
+    @Override
+    public synchronized Product updateStock(int productId, int quantity, int minStock) {
+        CatalogSnapshot before = current.get();
+        Product old = before.get(productId);
+        if (old == null) return null;
+        Product p = old.copy();
+        p.setQuantity(quantity);
+        p.setMinStock(minStock);
+        p.freeze();
+        current.set(before.with(p));
+        return p;
+    }
+
+    @Override
+    public void reload(Iterable<Product> products) {
+        // built off to the side; readers keep the old snapshot until the swap
+        CatalogSnapshot.Builder b = new CatalogSnapshot.Builder();
+        ConcurrentHashMap<String, Integer> skus = new ConcurrentHashMap<>();
+        for (Product p : products) {
+            b.put(p.freeze());
+            if (p.getSku() != null) skus.put(p.getSku(), p.getProductId());
+        }
+        synchronized (this) {
+            current.set(b.build(current.get().version() + 1));
+            idsBySku = skus;
+        }
+    }
+
+    @Override
+    public CatalogSnapshot snapshot() {
+        return current.get();
+    }
+
+    @Override
+    public int size() {
+        return current.get().size();
+    }
+
+    @Override
+    public Iterator<Product> iterator() {
+        return current.get().iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "map store, " + size() + " products";
+    }
+}
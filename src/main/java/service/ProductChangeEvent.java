@@ -0,0 +1,70 @@
+package service;
+
+import model.Product;
+
+/**
+ * A committed change to one product. Quantity events carry the before/after
+ * values so listeners can react to the delta without re-reading the catalog.
+ */
+public class ProductChangeEvent {
+    // RELOADED: the whole cache was re-read (e.g. after a catalog import); there is no single product
+    public enum Type { CREATED, UPDATED, DELETED, QUANTITY_CHANGED, RELOADED }
+
+    private final Type type;
+    private final int productId;
+    private final Product product;
+    private final int oldQuantity;
+    private final int newQuantity;
+    private final int minStock;
+
+    private ProductChangeEvent(Type type, int productId, Product product, int oldQuantity, int newQuantity, int minStock) {
+        this.type = type;
+        this.productId = productId;
+        this.product = product;
+        this.oldQuantity = oldQuantity;
+        this.newQuantity = newQuantity;
+        this.minStock = minStock;
+    }
+
+    static ProductChangeEvent reloaded() {
+        return new ProductChangeEvent(Type.RELOADED, -1, null, 0, 0, 0);
+    }
+
+    static ProductChangeEvent created(Product p) {
+        return new ProductChangeEvent(Type.CREATED, p.getProductId(), p, p.getQuantity(), p.getQuantity(), p.getMinStock());
+    }
+
+    static ProductChangeEvent updated(Product p, int oldQuantity) {
+        return new ProductChangeEvent(Type.UPDATED, p.getProductId(), p, oldQuantity, p.getQuantity(), p.getMinStock());
+    }
+
+    static ProductChangeEvent deleted(int productId, Product last) {
+        int qty = last == null ? 0 : last.getQuantity();
+        int min = last == null ? 0 : last.getMinStock();
+        return new ProductChangeEvent(Type.DELETED, productId, last, qty, qty, min);
+    }
+
+    static ProductChangeEvent quantityChanged(int productId, Product p, int oldQuantity, int newQuantity, int minStock) {
+        return new ProductChangeEvent(Type.QUANTITY_CHANGED, productId, p, oldQuantity, newQuantity, minStock);
+    }
+
+    public Type getType() { return type; }
+    public int getProductId() { return productId; }
+
+    /** The product after the change; for DELETED the last cached state. May be null if it was not cached. */
+    public Product getProduct() { return product; }
+
+    public int getOldQuantity() { return oldQuantity; }
+    public int getNewQuantity() { return newQuantity; }
+    public int getMinStock() { return minStock; }
+
+    public boolean isLow() {
+        return (type == Type.CREATED || type == Type.UPDATED || type == Type.QUANTITY_CHANGED)
+                && newQuantity <= minStock;
+    }
+
+    @Override
+    public String toString() {
+        return type + " product " + productId + " qty " + oldQuantity + " -> " + newQuantity;
+    }
+}
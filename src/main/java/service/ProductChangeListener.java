@@ -0,0 +1,12 @@
+package service;
+
+/**
+ * Receives committed product changes. Called on the thread that made the
+ * change (the stock writer thread for quantity changes) while that product is
+ * locked, so events for one product arrive in commit order. Listeners must be
+ * quick, must not write to other products, and should hand UI work to the EDT.
+ */
+@FunctionalInterface
+public interface ProductChangeListener {
+    void productChanged(ProductChangeEvent event);
+}
@@ -0,0 +1,339 @@
+package service;
+
+import model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory search over product names and SKUs, kept up to date on every
+ * create/update/delete instead of lower-casing the whole catalog per query.
+ *
+ * Matches are what the catalog scan matched: products whose name or SKU
+ * contains the query, ignoring case. Keys are lower-cased once on insert.
+ * Every query reads the SKU prefix range of a sorted map first, and stops
+ * there once it has {@code limit} hits, since nothing else can outrank them.
+ * Queries of three or more characters then walk the shortest trigram
+ * posting list of the names (and only if still short of hits, of the SKUs)
+ * and confirm the substring against the stored keys. Shorter queries use
+ * the name-word map and fall back to a scan only while short of hits.
+ * Results are ranked: exact SKU, SKU prefix (in SKU order), name prefix,
+ * name word prefix, then any substring.
+ */
+class ProductSearchIndex {
+
+    private static final class Entry {
+        final int id;
+        final String name;
+        final String sku;
+        // position in each posting list holding this entry: name tokens, then name trigrams, then SKU trigrams
+        int[] at;
+
+        Entry(int id, String name, String sku) {
+            this.id = id;
+            this.name = name;
+            this.sku = sku;
+        }
+    }
+
+    /**
+     * Growable posting list; order does not matter. Each entry records its
+     * position here in its own {@code at[slot]}, so removal swaps the last
+     * entry into the hole instead of searching for it.
+     */
+    private static final class Postings {
+        Entry[] entries = new Entry[4];
+        int[] slots = new int[4];
+        int size;
+
+        void add(Entry e, int slot) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            entries[size] = e;
+            slots[size] = slot;
+            e.at[slot] = size++;
+        }
+
+        void remove(Entry e, int slot) {
+            int i = e.at[slot];
+            Entry last = entries[--size];
+            entries[i] = last;
+            slots[i] = slots[size];
+            last.at[slots[i]] = i;
+            entries[size] = null;
+        }
+    }
+
+    private static final class Hit {
+        final Entry entry;
+        final int rank;
+
+        Hit(Entry entry, int rank) {
+            this.entry = entry;
+            this.rank = rank;
+        }
+    }
+
+    private static final int SUBSTRING = 4;
+
+    private static final Comparator<Hit> BEST_FIRST = (a, b) -> compare(a.entry, a.rank, b.entry, b.rank);
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    // sku + '\0' + id, so SKUs differing only in case keep separate keys
+    private final TreeMap<String, Entry> skus = new TreeMap<>();
+    private final TreeMap<String, Postings> nameTokens = new TreeMap<>();
+    private final Map<Long, Postings> nameTrigrams = new HashMap<>();
+    private final Map<Long, Postings> skuTrigrams = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    static String normalize(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    void rebuild(Iterable<Product> products) {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            skus.clear();
+            nameTokens.clear();
+            nameTrigrams.clear();
+            skuTrigrams.clear();
+            for (Product p : products) insert(p);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Adds a product, replacing whatever was indexed for its id. */
+    void put(Product p) {
+        lock.writeLock().lock();
+        try {
+            Entry old = entries.get(p.getProductId());
+            if (old != null) delete(old);
+            insert(p);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(int productId) {
+        lock.writeLock().lock();
+        try {
+            Entry old = entries.get(productId);
+            if (old != null) delete(old);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Ids of the best matches, best first, at most {@code limit} of them. */
+    List<Integer> search(String query, int limit) {
+        String q = normalize(query);
+        if (limit <= 0) return Collections.emptyList();
+        lock.readLock().lock();
+        try {
+            PriorityQueue<Hit> top = new PriorityQueue<>(BEST_FIRST.reversed());
+            // SKU hits come out of the map already in result order, so stop after limit of them
+            int taken = 0;
+            for (Entry e : skus.subMap(q, q + Character.MAX_VALUE).values()) {
+                if (taken++ == limit) break;
+                offer(top, e, rank(e, q), limit);
+            }
+            // everything below ranks after every SKU-prefix hit, so a full heap is final
+            if (top.size() < limit) {
+                if (q.length() >= 3) {
+                    Postings names = shortestPosting(nameTrigrams, q);
+                    if (names != null) {
+                        for (int i = 0; i < names.size; i++) {
+                            Entry e = names.entries[i];
+                            if (e.sku.startsWith(q)) continue;
+                            int rank = rank(e, q);
+                            if (rank >= 0) offer(top, e, rank, limit);
+                        }
+                    }
+                    // products matching on the middle of the SKU only, at the lowest rank
+                    if (top.size() < limit || top.peek().rank == SUBSTRING) {
+                        Postings skuIds = shortestPosting(skuTrigrams, q);
+                        if (skuIds != null) {
+                            for (int i = 0; i < skuIds.size; i++) {
+                                Entry e = skuIds.entries[i];
+                                if (!e.sku.startsWith(q) && !e.name.contains(q) && e.sku.contains(q)) {
+                                    offer(top, e, SUBSTRING, limit);
+                                }
+                            }
+                        }
+                    }
+                } else {
+                    for (Map.Entry<String, Postings> t : nameTokens.subMap(q, q + Character.MAX_VALUE).entrySet()) {
+                        Postings ids = t.getValue();
+                        for (int i = 0; i < ids.size; i++) {
+                            Entry e = ids.entries[i];
+                            // offer each entry once: via its SKU above, or via its first matching word
+                            if (!e.sku.startsWith(q) && isFirstWordWithPrefix(e.name, q, t.getKey())) {
+                                offer(top, e, rank(e, q), limit);
+                            }
+                        }
+                    }
+                    // one or two characters have no trigram: other substrings (and the empty query) need the scan
+                    if (top.size() < limit || top.peek().rank == SUBSTRING) {
+                        top.clear();
+                        for (Entry e : entries.values()) {
+                            int rank = rank(e, q);
+                            if (rank >= 0) offer(top, e, rank, limit);
+                        }
+                    }
+                }
+            }
+            List<Hit> hits = new ArrayList<>(top);
+            hits.sort(BEST_FIRST);
+            List<Integer> ids = new ArrayList<>(hits.size());
+            for (Hit h : hits) ids.add(h.entry.id);
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void offer(PriorityQueue<Hit> top, Entry e, int rank, int limit) {
+        if (top.size() < limit) {
+            top.add(new Hit(e, rank));
+        } else if (better(e, rank, top.peek())) {
+            top.poll();
+            top.add(new Hit(e, rank));
+        }
+    }
+
+    // checked before allocating a Hit, so losing candidates cost nothing
+    private static boolean better(Entry e, int rank, Hit worst) {
+        return compare(e, rank, worst.entry, worst.rank) < 0;
+    }
+
+    // best first: rank; SKU hits in SKU order, the rest shorter name first; then id
+    private static int compare(Entry a, int rankA, Entry b, int rankB) {
+        if (rankA != rankB) return Integer.compare(rankA, rankB);
+        int c = rankA <= 1 ? a.sku.compareTo(b.sku) : Integer.compare(a.name.length(), b.name.length());
+        return c != 0 ? c : Integer.compare(a.id, b.id);
+    }
+
+    // true if the first word of name starting with q is exactly token
+    private static boolean isFirstWordWithPrefix(String name, String q, String token) {
+        for (int i = name.indexOf(q); i >= 0; i = name.indexOf(q, i + 1)) {
+            if (i > 0 && Character.isLetterOrDigit(name.charAt(i - 1))) continue;
+            int end = i + token.length();
+            return name.startsWith(token, i)
+                    && (end == name.length() || !Character.isLetterOrDigit(name.charAt(end)));
+        }
+        return false;
+    }
+
+    // -1 if the entry does not match at all
+    private static int rank(Entry e, String q) {
+        if (e.sku.equals(q)) return 0;
+        if (e.sku.startsWith(q)) return 1;
+        if (e.name.startsWith(q)) return 2;
+        int at = e.name.indexOf(q);
+        if (at > 0 && !Character.isLetterOrDigit(e.name.charAt(at - 1))) return 3;
+        if (at >= 0 || e.sku.contains(q)) return SUBSTRING;
+        return -1;
+    }
+
+    private static Postings shortestPosting(Map<Long, Postings> trigrams, String q) {
+        Postings best = null;
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            Postings ids = trigrams.get(trigram(q, i));
+            if (ids == null) return null; // some trigram never occurs: no match possible
+            if (best == null || ids.size < best.size) best = ids;
+        }
+        return best;
+    }
+
+    private void insert(Product p) {
+        Entry e = new Entry(p.getProductId(), normalize(p.getName()), normalize(p.getSku()));
+        List<String> tokens = tokens(e.name);
+        long[] nameKeys = trigramsOf(e.name);
+        long[] skuKeys = trigramsOf(e.sku);
+        e.at = new int[tokens.size() + nameKeys.length + skuKeys.length];
+        entries.put(e.id, e);
+        skus.put(e.sku + '\0' + e.id, e);
+        int slot = 0;
+        for (String token : tokens) nameTokens.computeIfAbsent(token, t -> new Postings()).add(e, slot++);
+        for (long t : nameKeys) nameTrigrams.computeIfAbsent(t, k -> new Postings()).add(e, slot++);
+        for (long t : skuKeys) skuTrigrams.computeIfAbsent(t, k -> new Postings()).add(e, slot++);
+    }
+
+    // walks the keys in the order insert() assigned the slots
+    private void delete(Entry e) {
+        entries.remove(e.id);
+        skus.remove(e.sku + '\0' + e.id);
+        int slot = 0;
+        for (String token : tokens(e.name)) {
+            Postings ids = nameTokens.get(token);
+            ids.remove(e, slot++);
+            if (ids.size == 0) nameTokens.remove(token);
+        }
+        slot = unindex(nameTrigrams, trigramsOf(e.name), e, slot);
+        unindex(skuTrigrams, trigramsOf(e.sku), e, slot);
+    }
+
+    // returns the slot after the last one used
+    private static int unindex(Map<Long, Postings> trigrams, long[] keys, Entry e, int slot) {
+        for (long t : keys) {
+            Postings ids = trigrams.get(t);
+            ids.remove(e, slot++);
+            if (ids.size == 0) trigrams.remove(t);
+        }
+        return slot;
+    }
+
+    private static List<String> tokens(String name) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= name.length(); i++) {
+            boolean word = i < name.length() && Character.isLetterOrDigit(name.charAt(i));
+            if (word && start < 0) start = i;
+            if (!word && start >= 0) {
+                String t = name.substring(start, i);
+                if (!out.contains(t)) out.add(t);
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    // distinct trigrams of a key, so each id appears once per posting list
+    private static long[] trigramsOf(String key) {
+        long[] out = new long[Math.max(0, key.length() - 2)];
+        for (int i = 0; i < out.length; i++) out[i] = trigram(key, i);
+        Arrays.sort(out);
+        int distinct = 0;
+        for (int i = 0; i < out.length; i++) {
+            if (i == 0 || out[i] != out[i - 1]) out[distinct++] = out[i];
+        }
+        return Arrays.copyOf(out, distinct);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
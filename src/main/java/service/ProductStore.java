@@ -0,0 +1,70 @@
+package service;
+
+import model.Product;
+
+/**
+ * Where WarehouseService keeps its cached catalog. Implementations must be
+ * safe for concurrent readers and writers, and hand out frozen products;
+ * iteration is weakly consistent, use snapshot() for a consistent view.
+ */
+interface ProductStore extends Iterable<Product> {
+
+    Product get(int productId);
+
+    /** The product with this SKU, or null; one hash probe, kept in step with put/remove/reload. */
+    Product getBySku(String sku);
+
+    /** Stores a frozen copy of p (p itself if already frozen) and returns it. */
+    Product put(Product p);
+
+    /** Removes and returns the product, or null if it was not cached. */
+    Product remove(int productId);
+
+    /** Applies a committed stock level; returns the updated product, or null if it was not cached. */
+    Product updateStock(int productId, int quantity, int minStock);
+
+    /** Replaces the whole contents with {@code products}, which are frozen and kept as they are. */
+    void reload(Iterable<Product> products);
+
+    /** The current contents as an immutable snapshot. */
+    CatalogSnapshot snapshot();
+
+    /** False if snapshot() copies the whole store, so iterate or use size() and get() instead. */
+    default boolean hasSharedSnapshots() {
+        return true;
+    }
+
+    int size();
+
+    /** False if the store holds only part of the catalog, so a miss says nothing about the database. */
+    default boolean isComplete() {
+        return true;
+    }
+
+    // negative caching for incomplete stores: database misses remembered for a while, cleared by put()
+    default void markMissing(int productId) {
+    }
+
+    default void markMissing(String sku) {
+    }
+
+    default boolean isKnownMissing(int productId) {
+        return false;
+    }
+
+    default boolean isKnownMissing(String sku) {
+        return false;
+    }
+
+    static ProductStore fromSystemProperties() {
+        String mode = System.getProperty("wms.cache.store", "map");
+        switch (mode) {
+            case "map": return new MapProductStore();
+            case "columnar": return new ColumnarProductStore();
+            case "bounded":
+                return new BoundedProductStore(Integer.getInteger("wms.cache.maxProducts", 100_000),
+                        Long.getLong("wms.cache.missingTtlMs", 30_000));
+            default: throw new IllegalArgumentException("Unknown wms.cache.store: " + mode);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package service;
+
+import util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the service's async API and the API server. Work there is mostly blocking JDBC,
+ * so on JDK 21+ the default is a virtual thread per task; older JDKs get a
+ * bounded pool of daemon platform threads.
+ *
+ * {@code wms.service.executor}: {@code auto} (default), {@code virtual} or
+ * {@code platform}; {@code wms.service.threads} sizes the platform pool.
+ */
+public final class ServiceExecutors {
+    private ServiceExecutors() {}
+
+    public static ExecutorService fromSystemProperties() {
+        String mode = System.getProperty("wms.service.executor", "auto");
+        int threads = Integer.getInteger("wms.service.threads", 16);
+        switch (mode) {
+            case "auto": {
+                ExecutorService virtual = virtualThreads();
+                return virtual != null ? virtual : platformPool(threads);
+            }
+            case "virtual": {
+                ExecutorService virtual = virtualThreads();
+                if (virtual == null) throw new IllegalStateException("Virtual threads need JDK 21+, running " + Runtime.version());
+                return virtual;
+            }
+            case "platform":
+                return platformPool(threads);
+            default:
+                throw new IllegalArgumentException("Unknown wms.service.executor: " + mode);
+        }
+    }
+
+    /** Null when this JDK has no virtual threads; looked up reflectively so the code still targets 11. */
+    static ExecutorService virtualThreads() {
+        try {
+            ExecutorService e = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            Log.info("Service executor: virtual threads");
+            return e;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    static ExecutorService platformPool(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("wms.service.threads must be at least 1: " + threads);
+        AtomicInteger n = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "wms-service-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        Log.info("Service executor: {} platform threads", threads);
+        return pool;
+    }
+}
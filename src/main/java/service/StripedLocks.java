@@ -0,0 +1,64 @@
+package service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared out by product id. Holding a product's stripe
+ * serializes its database write, cache update and change event against every
+ * other writer of that product; products on other stripes proceed in parallel.
+ *
+ * Several stripes are always taken in ascending stripe order, so callers of
+ * lockAll never deadlock with each other or with single-product lock().
+ */
+class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    StripedLocks(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) this.stripes[i] = new ReentrantLock();
+        this.mask = n - 1;
+    }
+
+    void lock(int productId) {
+        stripes[stripe(productId)].lock();
+    }
+
+    void unlock(int productId) {
+        stripes[stripe(productId)].unlock();
+    }
+
+    /** Locks the stripes of all ids; returns the stripes taken, to pass to unlock(int[]). */
+    int[] lockAll(int[] productIds) {
+        int[] taken = new int[productIds.length];
+        for (int i = 0; i < productIds.length; i++) taken[i] = stripe(productIds[i]);
+        Arrays.sort(taken);
+        int n = 0;
+        for (int i = 0; i < taken.length; i++) {
+            if (i == 0 || taken[i] != taken[i - 1]) taken[n++] = taken[i];
+        }
+        taken = Arrays.copyOf(taken, n);
+        for (int s : taken) stripes[s].lock();
+        return taken;
+    }
+
+    void unlock(int[] taken) {
+        for (int i = taken.length - 1; i >= 0; i--) stripes[taken[i]].unlock();
+    }
+
+    /** Locks every stripe, e.g. to reload the whole cache. */
+    void lockAll() {
+        for (ReentrantLock l : stripes) l.lock();
+    }
+
+    void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) stripes[i].unlock();
+    }
+
+    private int stripe(int productId) {
+        int h = productId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
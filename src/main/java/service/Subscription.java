@@ -0,0 +1,7 @@
+package service;
+
+/** Handle returned when registering a listener; close() unregisters it. */
+public interface Subscription extends AutoCloseable {
+    @Override
+    void close();
+}
@@ -1,119 +1,800 @@
 package service;
 
+import dao.LocationDao;
+import dao.LocationDaoImpl;
 import dao.ProductDao;
 import dao.ProductDaoImpl;
+import dao.SiteMoves;
+import dao.StockLedgerDao;
+import dao.StockLedgerDaoImpl;
+import dao.TransactionDao;
+import dao.TransactionDaoImpl;
+import dao.UncheckedSQLException;
+import model.BinStock;
+import model.InventoryTransaction;
+import model.LocatedStockDrift;
+import model.Location;
+import model.MovementTotal;
 import model.Product;
-import util.SimpleLogger;
+import model.StockDrift;
+import model.StockLevel;
+import model.StockMovement;
+import util.Csv;
+import util.Log;
+import util.Metrics;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 public class WarehouseService {
 
+    private static final int LOCK_STRIPES = 64;
+    // bin movements folded into the catalog per transaction
+    private static final int SITE_SYNC_BATCH = 10_000;
+
+    private static final Metrics.Counter CACHE_HIT = Metrics.counter("cache.hit");
+    private static final Metrics.Counter CACHE_MISS = Metrics.counter("cache.miss");
+    private static final Metrics.Histogram T_LOAD_CACHE = Metrics.timer("cache.load");
+    private static final Metrics.Histogram T_READ_THROUGH = Metrics.timer("cache.readThrough");
+    private static final Metrics.Histogram T_SEARCH = Metrics.timer("search.query");
+    private static final Metrics.Histogram T_LOW_STOCK = Metrics.timer("lowstock.list");
+
     private final ProductDao productDao = new ProductDaoImpl();
-    private final Map<Integer, Product> productCache = new ConcurrentHashMap<>();
+    private final TransactionDao transactionDao = new TransactionDaoImpl();
+    private final StockLedgerDao stockLedger = new StockLedgerDaoImpl();
+    private final LocationDao locationDao = new LocationDaoImpl();
+    private final ProductStore productCache = ProductStore.fromSystemProperties();
+    // false for the bounded store: misses read through, search and low stock go to the database
+    private final boolean fullCatalog = productCache.isComplete();
+    // written on shutdown, reused by the next start while the catalog is unchanged; null when off
+    private final Path snapshotFile = fullCatalog ? CacheSnapshotFile.fromSystemProperties() : null;
+    // per-product order between stock movements, edits, deletes and reloads
+    private final StripedLocks productLocks = new StripedLocks(LOCK_STRIPES);
+    private final GroupCommitWriter stockWriter = new GroupCommitWriter(
+            productDao,
+            productLocks,
+            Integer.getInteger("wms.stock.maxBatch", 256),
+            Long.getLong("wms.stock.maxDelayMs", 2),
+            this::applyCommittedLevel);
+    private final long stockWaitMs = Long.getLong("wms.stock.waitMs", 30_000);
+
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex();
+    // false while the index is built in the background after a warm start; search() asks the database meanwhile
+    private volatile boolean searchReady = true;
+    private final List<ProductChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final LowStockMonitor lowStockMonitor = new LowStockMonitor();
 
-    // ✅ NEW: Track products already alerted for low stock
-    private final Set<Integer> lowStockAlerted =
-            ConcurrentHashMap.newKeySet();
+    // folds the stock ledger into stock_snapshot every wms.ledger.snapshotMinutes; null when off
+    private final ScheduledExecutorService ledgerSnapshots = startLedgerSnapshots();
+    // folds the sites' bin movements into product.quantity every wms.sites.syncMs; null when off
+    private final ScheduledExecutorService siteSync = startSiteSync();
 
+    // runs the *Async methods; shut down with the service only if we created it
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    /** A service whose async work runs on virtual threads where available (see ServiceExecutors). */
     public WarehouseService() {
+        this(ServiceExecutors.fromSystemProperties(), true);
+    }
+
+    /** A service whose async work runs on the given executor; the caller keeps ownership of it. */
+    public WarehouseService(ExecutorService executor) {
+        this(executor, false);
+    }
+
+    private WarehouseService(ExecutorService executor, boolean ownsExecutor) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        listeners.add(lowStockMonitor); // first, so other listeners see the updated low set
         try {
-            loadCache();
+            if (!restoreCacheSnapshot()) loadCache();
         } catch (SQLException e) {
-            SimpleLogger.error("Failed to load cache: " + e.getMessage());
+            Log.error("Failed to load cache: {}", e.getMessage());
+        }
+    }
+
+    /** Registers a listener for committed product changes; close the subscription to stop. */
+    public Subscription addChangeListener(ProductChangeListener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /** Registers a listener for low-stock threshold crossings; close the subscription to stop. */
+    public Subscription addLowStockListener(LowStockListener listener) {
+        return lowStockMonitor.addListener(listener);
+    }
+
+    private void publish(ProductChangeEvent event) {
+        for (ProductChangeListener l : listeners) {
+            try {
+                l.productChanged(event);
+            } catch (RuntimeException e) {
+                Log.error("Change listener failed on {}", event, e);
+            }
         }
     }
 
     public void deleteProduct(int id) throws SQLException {
-        productDao.delete(id);
-        productCache.remove(id);
-        lowStockAlerted.remove(id); // cleanup if deleted
+        productLocks.lock(id);
+        try {
+            productDao.delete(id);
+            Product last = productCache.remove(id);
+            productCache.markMissing(id);
+            if (last != null) productCache.markMissing(last.getSku());
+            searchIndex.remove(id);
+            publish(ProductChangeEvent.deleted(id, last));
+        } finally {
+            productLocks.unlock(id);
+        }
     }
 
     public void loadCache() throws SQLException {
-        List<Product> all = productDao.findAll();
-        productCache.clear();
-        for (Product p : all) {
-            productCache.put(p.getProductId(), p);
+        // No product may change while the rows stream in, or the reload could overwrite a newer value
+        long start = System.nanoTime();
+        productLocks.lockAll();
+        try {
+            if (fullCatalog) {
+                try (Stream<Product> rows = productDao.streamAll()) {
+                    // ids not seen in this pass were deleted elsewhere
+                    productCache.reload(rows::iterator);
+                }
+                searchIndex.rebuild(productCache);
+                lowStockMonitor.rebuild(productCache);
+            } else {
+                // start cold and read through; only the low-stock set is loaded up front
+                productCache.reload(Collections.emptyList());
+                lowStockMonitor.rebuild(productDao.findLowStock());
+            }
+            T_LOAD_CACHE.recordSince(start);
+            Log.info("Product cache loaded: {}", productCache.toString());
+            publish(ProductChangeEvent.reloaded());
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        } finally {
+            productLocks.unlockAll();
         }
     }
 
+    /** True unless the cache is bounded (wms.cache.store=bounded) and holds only the products in use. */
+    public boolean isCatalogCached() {
+        return fullCatalog;
+    }
+
+    /** Every product in id order, read lazily from the database; close the stream to release its connection. */
+    public Stream<Product> streamProducts() throws SQLException {
+        return productDao.streamAll();
+    }
+
+    /**
+     * Fills the cache from the snapshot file if it still matches the database,
+     * then builds the search index in the background; false if there was none.
+     */
+    private boolean restoreCacheSnapshot() throws SQLException {
+        if (snapshotFile == null) return false;
+        long start = System.nanoTime();
+        productLocks.lockAll();
+        try {
+            Iterable<Product> products = CacheSnapshotFile.read(snapshotFile, productDao.changeCount(), productDao.count());
+            if (products == null) {
+                // stale or damaged; shutdown() writes a fresh one
+                Files.deleteIfExists(snapshotFile);
+                return false;
+            }
+            productCache.reload(products);
+            lowStockMonitor.rebuild(productCache);
+            searchReady = false;
+            executor.execute(() -> {
+                searchIndex.rebuild(productCache);
+                searchReady = true;
+            });
+            T_LOAD_CACHE.recordSince(start);
+            Log.info("Product cache restored from {}: {} in {} ms", snapshotFile, productCache.toString(),
+                    (System.nanoTime() - start) / 1_000_000);
+            publish(ProductChangeEvent.reloaded());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.warn("Ignoring cache snapshot {}: {}", snapshotFile, e.toString());
+            return false;
+        } finally {
+            productLocks.unlockAll();
+        }
+    }
+
+    // Takes the change count before the snapshot under all stripes: a write that lands in between
+    // makes the file stale (it is then ignored), never silently missing from it
+    private void writeCacheSnapshot() {
+        if (snapshotFile == null) return;
+        long start = System.nanoTime();
+        productLocks.lockAll();
+        try {
+            long changes = productDao.changeCount();
+            if (CacheSnapshotFile.changeCountOf(snapshotFile) == changes) return;
+            // no product changes while every stripe is held, so iterating the store is consistent
+            int saved = CacheSnapshotFile.write(snapshotFile, changes, productCache);
+            Log.info("Product cache saved to {}: {} products in {} ms", snapshotFile, saved,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | SQLException e) {
+            Log.warn("Failed to save cache snapshot {}: {}", snapshotFile, e.getMessage());
+        } finally {
+            productLocks.unlockAll();
+        }
+    }
+
+    /** A copy of the cached catalog, read by iterating the cache. */
     public List<Product> listAll() {
-        return new ArrayList<>(productCache.values());
+        List<Product> all = new ArrayList<>(productCache.size());
+        for (Product p : productCache) all.add(p);
+        return all;
+    }
+
+    /** Products in the cache: the whole catalog, or the resident ones with a bounded cache. */
+    public int productCount() {
+        return productCache.size();
+    }
+
+    /**
+     * The cached catalog as of the last committed change. The snapshot and its
+     * frozen products never change; call again to see later changes. With a
+     * bounded cache it holds only the resident products. Free unless
+     * hasCatalogSnapshots() is false, in which case each call copies the cache.
+     */
+    public CatalogSnapshot snapshot() {
+        return productCache.snapshot();
+    }
+
+    /** True if snapshot() shares the cache's own view; false for the columnar store, which copies. */
+    public boolean hasCatalogSnapshots() {
+        return productCache.hasSharedSnapshots();
+    }
+
+    /** The product with this id, read through a bounded cache; frozen, so copy() it to edit. */
+    public Optional<Product> findProduct(int productId) {
+        return Optional.ofNullable(cached(productId));
+    }
+
+    /**
+     * The product with this SKU: one probe of the cache's SKU index, falling
+     * back to the database for rows the cache does not hold yet.
+     */
+    public Optional<Product> findProductBySku(String sku) throws SQLException {
+        Product p = productCache.getBySku(sku);
+        if (p != null) {
+            CACHE_HIT.increment();
+            return Optional.of(p);
+        }
+        CACHE_MISS.increment();
+        if (fullCatalog) return productDao.findBySku(sku).map(Product::freeze);
+        if (productCache.isKnownMissing(sku)) return Optional.empty();
+        Optional<Product> row = productDao.findBySku(sku);
+        if (!row.isPresent()) {
+            productCache.markMissing(sku);
+            return Optional.empty();
+        }
+        // re-read under the product's stripe, so a concurrent write cannot be overwritten by this row
+        return Optional.ofNullable(readThrough(row.get().getProductId())).filter(q -> sku.equals(q.getSku()));
+    }
+
+    /** Upserts every row of a catalog CSV by SKU, then reloads the cache. */
+    public ImportReport importCatalog(Reader in) throws IOException, SQLException {
+        ImportReport report = new CatalogCsv(productDao).importCsv(in);
+        loadCache();
+        return report;
+    }
+
+    /** Streams the catalog from the database as CSV in constant memory; returns the row count. */
+    public long exportCatalog(Writer out) throws IOException, SQLException {
+        try (Stream<Product> rows = productDao.streamAll()) {
+            return new CatalogCsv(productDao).exportCsv(rows::iterator, out);
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * One keyset page of a product's stock history in time order (UTC, window
+     * [from, to), nulls unbounded); pass afterTime=null for the first page.
+     */
+    public List<InventoryTransaction> productHistory(int productId, LocalDateTime from, LocalDateTime to,
+                                                     LocalDateTime afterTime, long afterId, int limit) throws SQLException {
+        return transactionDao.findByProduct(productId, from, to, afterTime, afterId, limit);
+    }
+
+    /** Streams every stock transaction in [from, to) as CSV, archived ones included; returns the row count. */
+    public long exportHistory(Writer out, LocalDateTime from, LocalDateTime to) throws IOException, SQLException {
+        long rows = 0;
+        Csv.writeRecord(out, "tx_id", "tx_time", "product_id", "change", "tx_type", "note");
+        try (Stream<InventoryTransaction> txs = transactionDao.streamHistory(null, from, to)) {
+            for (Iterator<InventoryTransaction> it = txs.iterator(); it.hasNext(); ) {
+                InventoryTransaction t = it.next();
+                Csv.writeRecord(out,
+                        String.valueOf(t.getTxId()),
+                        DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(t.getTxTime()),
+                        String.valueOf(t.getProductId()),
+                        String.valueOf(t.getChange()),
+                        t.getTxType(),
+                        t.getNote());
+                rows++;
+            }
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+        out.flush();
+        Log.info("History export: {} transactions", rows);
+        return rows;
+    }
+
+    /** Per-day sums of a product's stock changes by tx_type for the UTC days in [from, to), from the rollups. */
+    public List<MovementTotal> dailyMovements(int productId, LocalDate from, LocalDate to) throws SQLException {
+        return transactionDao.dailyTotals(productId, from, to);
+    }
+
+    /**
+     * Average units per day moved by one tx_type over the last {@code days} UTC
+     * days, today included; e.g. unitsPerDay(id, "dispatch", 30). Reads at most
+     * one rollup row per day, whatever the size of the history.
+     */
+    public double unitsPerDay(int productId, String txType, int days) throws SQLException {
+        if (days <= 0) throw new IllegalArgumentException("days must be positive");
+        LocalDate tomorrow = LocalDate.now(ZoneOffset.UTC).plusDays(1);
+        long units = transactionDao.sumUnits(productId, txType, tomorrow.minusDays(days), tomorrow);
+        return Math.abs(units) / (double) days;
+    }
+
+    /**
+     * Replays the stock ledger and returns the products whose quantity drifts
+     * from it. With repair, those quantities are then set to the ledger's
+     * under all stripes, so no movement interleaves, and the cache and
+     * listeners see the corrected levels; the result lists what was repaired.
+     */
+    public List<StockDrift> reconcileStock(boolean repair) throws SQLException {
+        List<StockDrift> drift = stockLedger.findDrift();
+        if (!repair || drift.isEmpty()) return drift;
+        productLocks.lockAll();
+        try {
+            List<StockDrift> repaired = stockLedger.repairDrift(drift);
+            for (StockDrift d : repaired) {
+                Optional<Product> p = productDao.findById(d.getProductId());
+                if (p.isPresent()) {
+                    applyCommittedLevel(new StockLevel(d.getProductId(), d.getQuantity(),
+                            p.get().getQuantity(), p.get().getMinStock()));
+                }
+            }
+            return repaired;
+        } finally {
+            productLocks.unlockAll();
+        }
+    }
+
+    /** Folds the stock ledger into stock_snapshot, so replays start from here; returns the transactions folded in. */
+    public long snapshotStock() throws SQLException {
+        return stockLedger.takeSnapshot();
+    }
+
+    private ScheduledExecutorService startLedgerSnapshots() {
+        long minutes = Long.getLong("wms.ledger.snapshotMinutes", 0);
+        if (minutes <= 0) return null;
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ledger-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(() -> {
+            try {
+                stockLedger.takeSnapshot();
+            } catch (SQLException e) {
+                Log.error("Stock snapshot failed: {}", e.getMessage());
+            }
+        }, minutes, minutes, TimeUnit.MINUTES);
+        return s;
+    }
+
+    /** Registers a site (warehouse) and creates its shard file; codes are letters, digits, '-' and '_'. */
+    public void createSite(String code, String name) throws SQLException {
+        locationDao.createSite(code, name);
+    }
+
+    public List<String> siteCodes() throws SQLException {
+        return locationDao.siteCodes();
+    }
+
+    /** The bin, created if the site does not have it yet. */
+    public Location createLocation(String site, String zone, String bin) throws SQLException {
+        return locationDao.createLocation(site, zone, bin);
+    }
+
+    public List<Location> findLocations(String site) throws SQLException {
+        return locationDao.findLocations(site);
+    }
+
+    /** The bin named "SITE/ZONE/BIN". */
+    public Location findLocation(String code) throws SQLException {
+        String[] parts = Location.parseCode(code);
+        return locationDao.findLocation(parts[0], parts[1], parts[2])
+                .orElseThrow(() -> new SQLException("Location not found: " + code));
+    }
+
+    /** Where the product is stocked, across all sites; bins not yet folded into its quantity included. */
+    public List<BinStock> findBinStock(int productId) throws SQLException {
+        return locationDao.findStock(productId);
+    }
+
+    /**
+     * A movement at one bin. Only the site's shard is written, so sites never
+     * wait on each other; product.quantity, the cache and listeners follow
+     * when the site's movements are next folded in (see syncSites).
+     */
+    public BinStock moveBinStock(Location location, int productId, int delta, String type, String note) throws SQLException {
+        requireProduct(productId);
+        return locationDao.moveStock(location, productId, delta, type, note);
+    }
+
+    /** Moves stock between two bins; the product's total is unchanged once both sites are folded in. */
+    public void transferStock(Location from, Location to, int productId, int qty, String note) throws SQLException {
+        requireProduct(productId);
+        locationDao.transfer(from, to, productId, qty, note);
+    }
+
+    private void requireProduct(int productId) throws SQLException {
+        try {
+            if (cached(productId) == null) throw new SQLException("Product not found");
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Folds every site's new bin movements into product.quantity, the ledger
+     * and the rollups, then the cache, under the stripes of the products
+     * moved. Runs every wms.sites.syncMs and on shutdown; returns the number
+     * of bin movements folded.
+     */
+    public synchronized long syncSites() throws SQLException {
+        long folded = 0;
+        for (String site : locationDao.siteCodes()) {
+            while (true) {
+                SiteMoves moves = locationDao.readUnsynced(site, SITE_SYNC_BATCH);
+                if (moves.isEmpty()) break;
+                int[] taken = productLocks.lockAll(moves.productIds());
+                try {
+                    for (StockLevel level : locationDao.fold(moves)) applyCommittedLevel(level);
+                } finally {
+                    productLocks.unlock(taken);
+                }
+                folded += moves.size();
+                if (moves.size() < SITE_SYNC_BATCH) break;
+            }
+        }
+        return folded;
+    }
+
+    /**
+     * Checks that the stock the catalog places in bins (located_quantity)
+     * plus each site's movements not folded yet equals what the bins hold;
+     * returns the products where it does not. Shares syncSites' monitor, so
+     * no fold moves a watermark while the sites are read.
+     */
+    public synchronized List<LocatedStockDrift> checkLocatedStock() throws SQLException {
+        return locationDao.findLocatedDrift();
+    }
+
+    private ScheduledExecutorService startSiteSync() {
+        long millis = Long.getLong("wms.sites.syncMs", 1000);
+        if (millis <= 0) return null;
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "site-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(() -> {
+            try {
+                syncSites();
+            } catch (SQLException | RuntimeException e) {
+                Log.error("Site sync failed: {}", e.getMessage());
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+        return s;
+    }
+
+    /** Moves stock transactions older than cutoff (UTC) into monthly archive tables; returns the number moved. */
+    public int archiveHistoryBefore(LocalDateTime cutoff) throws SQLException {
+        return transactionDao.archiveBefore(cutoff);
+    }
+
+    /** One keyset page of the catalog in name order; pass afterName=null for the first page. */
+    public List<Product> listPage(String afterName, int afterId, int limit) throws SQLException {
+        return productDao.findPage(afterName, afterId, limit);
+    }
+
+    /** One keyset page of the catalog in id order, read from the database: the products with ids above afterId. */
+    public List<Product> listAfterId(int afterId, int limit) throws SQLException {
+        return productDao.findAfterId(afterId, limit);
+    }
+
+    /** Like listPage, but first skips {@code skip} rows past the key. */
+    public List<Product> listPage(String afterName, int afterId, int skip, int limit) throws SQLException {
+        return productDao.findPage(afterName, afterId, skip, limit);
+    }
+
+    public int countProducts() throws SQLException {
+        return productDao.count();
     }
 
     public Product createProduct(Product p) throws SQLException {
         Product created = productDao.create(p);
-        productCache.put(created.getProductId(), created);
+        int id = created.getProductId();
+        productLocks.lock(id);
+        try {
+            // a movement on the new id may already have cached a newer row
+            Product cached = productCache.get(id);
+            if (cached == null) cached = productCache.put(created);
+            if (fullCatalog) searchIndex.put(cached);
+            publish(ProductChangeEvent.created(cached));
+        } finally {
+            productLocks.unlock(id);
+        }
         return created;
     }
 
+    /** Saves everything but the quantity, which changes only through movements and adjustStock. */
     public void updateProduct(Product p) throws SQLException {
-        productDao.update(p);
-        productCache.put(p.getProductId(), p);
+        productLocks.lock(p.getProductId());
+        try {
+            int quantity = productDao.update(p);
+            if (quantity < 0) throw new SQLException("Product not found");
+            Product stored = p.copy();
+            stored.setQuantity(quantity);
+            Product before = productCache.get(p.getProductId());
+            Product cached = productCache.put(stored);
+            if (fullCatalog) searchIndex.put(cached);
+            int oldQty = before == null ? cached.getQuantity() : before.getQuantity();
+            publish(ProductChangeEvent.updated(cached, oldQty));
+        } finally {
+            productLocks.unlock(p.getProductId());
+        }
     }
+    /**
+     * Sets a product's stock to a counted quantity, recorded as an adjust
+     * movement, if it is still expectedQuantity (what the caller last read);
+     * otherwise fails, so a count never undoes movements it did not see.
+     */
+    public StockLevel adjustStock(int productId, int expectedQuantity, int quantity, String note) throws SQLException {
+        productLocks.lock(productId);
+        try {
+            StockLevel level = productDao.adjustQuantity(productId, expectedQuantity, quantity, note);
+            if (level.getQuantity() != level.getPreviousQuantity()) applyCommittedLevel(level);
+            return level;
+        } finally {
+            productLocks.unlock(productId);
+        }
+    }
+
     public boolean changeStock(int productId, int delta, String type, String note) throws SQLException {
-        Product before = productCache.get(productId);
-        int oldQty = (before != null) ? before.getQuantity() : Integer.MAX_VALUE;
+        try {
+            // 🔔 Detect threshold crossing from the committed before/after values
+            return submitStockChange(productId, delta, type, note)
+                    .get(stockWaitMs, TimeUnit.MILLISECONDS).crossedBelowMin();
+        } catch (TimeoutException e) {
+            throw new SQLException("Stock change for product " + productId + " not committed within " + stockWaitMs + " ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw new SQLException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for stock change", e);
+        }
+    }
 
-        productDao.changeQuantity(productId, delta, type, note);
+    /**
+     * Queues a movement for the group-commit writer. The future completes once the
+     * batch holding it is committed, or exceptionally if this movement was rejected.
+     */
+    public CompletableFuture<StockLevel> submitStockChange(int productId, int delta, String type, String note) {
+        return stockWriter.submit(new StockMovement(productId, delta, type, note));
+    }
 
-        Product updated = productDao.findById(productId).orElse(null);
-        if (updated != null) {
-            productCache.put(productId, updated);
+    /** A barcode scan into stock: resolves the SKU through the cache index and queues a receive. */
+    public CompletableFuture<StockLevel> receiveBySku(String sku, int qty, String note) {
+        return scan(sku, qty, "receive", note);
+    }
 
-            // 🔔 Detect threshold crossing
-            if (oldQty > updated.getMinStock() &&
-                    updated.getQuantity() <= updated.getMinStock()) {
-                return true;   // LOW STOCK JUST TRIGGERED
-            }
-        }
-        return false;
+    /** A barcode scan out of stock: resolves the SKU through the cache index and queues a dispatch. */
+    public CompletableFuture<StockLevel> dispatchBySku(String sku, int qty, String note) {
+        return scan(sku, -qty, "dispatch", note);
     }
 
+    private CompletableFuture<StockLevel> scan(String sku, int delta, String type, String note) {
+        try {
+            int id = findProductBySku(sku).orElseThrow(() -> new SQLException("Product not found")).getProductId();
+            return submitStockChange(id, delta, type, note);
+        } catch (SQLException e) {
+            CompletableFuture<StockLevel> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
 
-    // 🔹 OLD method (unchanged, still usable)
-    public List<Product> findLowStock() {
-        List<Product> low = new ArrayList<>();
-        for (Product p : productCache.values()) {
-            if (p.getQuantity() <= p.getMinStock()) {
-                low.add(p);
+    // Runs under the product's stripe: on the writer thread before the caller's future completes, in adjustStock,
+    // or in syncSites
+    private void applyCommittedLevel(StockLevel level) {
+        Product cached = productCache.updateStock(level.getProductId(), level.getQuantity(), level.getMinStock());
+        if (cached != null) {
+            CACHE_HIT.increment();
+        } else if (fullCatalog) {
+            // a bounded cache leaves products it does not hold to be read through when asked for
+            CACHE_MISS.increment();
+            try {
+                cached = productDao.findById(level.getProductId()).map(productCache::put).orElse(null);
+                if (cached != null) searchIndex.put(cached);
+            } catch (SQLException e) {
+                Log.error("Failed to cache product {}: {}", level.getProductId(), e.getMessage());
             }
         }
-        return low;
+        publish(ProductChangeEvent.quantityChanged(level.getProductId(), cached,
+                level.getPreviousQuantity(), level.getQuantity(), level.getMinStock()));
     }
 
-    // ✅ NEW method: returns ONLY newly low-stock items (no repeat alerts)
-    public List<Product> findNewLowStockItems() {
-        List<Product> result = new ArrayList<>();
+    /**
+     * Stops periodic stock snapshots, folds in the sites' bin movements, commits
+     * queued stock movements, saves the cache snapshot for the next start, and
+     * stops the writer thread and the service executor.
+     */
+    public void shutdown() {
+        if (ledgerSnapshots != null) ledgerSnapshots.shutdownNow();
+        if (siteSync != null) siteSync.shutdownNow();
+        try {
+            syncSites();
+        } catch (SQLException e) {
+            Log.error("Final site sync failed: {}", e.getMessage());
+        }
+        stockWriter.close();
+        writeCacheSnapshot();
+        if (ownsExecutor) executor.shutdown();
+    }
 
-        for (Product p : productCache.values()) {
-            int id = p.getProductId();
+    // ---- Async API: the same operations, run on the service executor ----
+    // Failures complete the future with a CompletionException wrapping the SQLException.
 
-            if (p.getQuantity() <= p.getMinStock()) {
-                // show alert only once per low-stock event
-                if (lowStockAlerted.add(id)) {
-                    result.add(p);
-                }
-            } else {
-                // stock restored → allow future alert
-                lowStockAlerted.remove(id);
+    public CompletableFuture<Integer> countProductsAsync() {
+        return async(this::countProducts);
+    }
+
+    public CompletableFuture<List<Product>> listPageAsync(String afterName, int afterId, int skip, int limit) {
+        return async(() -> listPage(afterName, afterId, skip, limit));
+    }
+
+    public CompletableFuture<List<Product>> searchAsync(String query, int limit) {
+        return async(() -> search(query, limit));
+    }
+
+    public CompletableFuture<Product> createProductAsync(Product p) {
+        return async(() -> createProduct(p));
+    }
+
+    public CompletableFuture<Void> updateProductAsync(Product p) {
+        return async(() -> {
+            updateProduct(p);
+            return null;
+        });
+    }
+
+    public CompletableFuture<StockLevel> adjustStockAsync(int productId, int expectedQuantity, int quantity, String note) {
+        return async(() -> adjustStock(productId, expectedQuantity, quantity, note));
+    }
+
+    public CompletableFuture<Void> deleteProductAsync(int id) {
+        return async(() -> {
+            deleteProduct(id);
+            return null;
+        });
+    }
+
+    @FunctionalInterface
+    private interface SqlTask<T> {
+        T run() throws SQLException;
+    }
+
+    private <T> CompletableFuture<T> async(SqlTask<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
             }
+        }, executor);
+    }
+
+
+    /** Products at or below min_stock, most depleted first, read from the live low-stock set. */
+    public List<Product> findLowStock() {
+        long start = System.nanoTime();
+        List<Product> low = new ArrayList<>();
+        for (int id : lowStockMonitor.lowIds()) {
+            Product p = cached(id);
+            if (p != null) low.add(p);
         }
-        return result;
+        T_LOW_STOCK.recordSince(start);
+        return low;
     }
 
+    /** Every product whose name or SKU contains the query, ignoring case, best matches first. */
     public List<Product> searchByName(String query) {
-        String q = query.toLowerCase(Locale.ROOT);
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The best {@code limit} products whose name or SKU contains the query,
+     * ignoring case (the query is not trimmed), ranked as in ProductSearchIndex.
+     */
+    public List<Product> search(String query, int limit) {
+        long start = System.nanoTime();
         List<Product> res = new ArrayList<>();
-        for (Product p : productCache.values()) {
-            if (p.getName().toLowerCase(Locale.ROOT).contains(q) ||
-                    p.getSku().toLowerCase(Locale.ROOT).contains(q)) {
-                res.add(p);
+        if (!fullCatalog || !searchReady) {
+            try {
+                for (Product p : productDao.search(query, limit)) res.add(p.freeze());
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
             }
+            T_SEARCH.recordSince(start);
+            return res;
         }
+        for (int id : searchIndex.search(query, limit)) {
+            Product p = cached(id);
+            if (p != null) res.add(p);
+        }
+        T_SEARCH.recordSince(start);
         return res;
     }
+
+    // a cache read that counts towards the cache.hit / cache.miss metrics; a bounded cache reads through
+    private Product cached(int productId) {
+        Product p = productCache.get(productId);
+        if (p != null) {
+            CACHE_HIT.increment();
+            return p;
+        }
+        CACHE_MISS.increment();
+        if (fullCatalog || productCache.isKnownMissing(productId)) return null;
+        try {
+            return readThrough(productId);
+        } catch (SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+    }
+
+    // Loads under the product's stripe: writers hold it while they update the cache, so the row read here is current
+    private Product readThrough(int productId) throws SQLException {
+        long start = System.nanoTime();
+        productLocks.lock(productId);
+        try {
+            Product p = productCache.get(productId);
+            if (p != null) return p;
+            Optional<Product> row = productDao.findById(productId);
+            if (row.isPresent()) return productCache.put(row.get());
+            productCache.markMissing(productId);
+            return null;
+        } finally {
+            productLocks.unlock(productId);
+            T_READ_THROUGH.recordSince(start);
+        }
+    }
 }
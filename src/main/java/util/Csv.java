@@ -0,0 +1,118 @@
+package util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal RFC 4180 CSV reader/writer. Reads one record at a time so large
+ * files stream in constant memory; quoted fields may contain commas, quotes
+ * ("") and line breaks.
+ */
+public final class Csv {
+    private Csv() {}
+
+    public static final class RecordReader {
+        private final Reader in;
+        private final char[] buf = new char[8192];
+        private int pos, len;
+        private long line = 1;
+        private long recordLine;
+
+        public RecordReader(Reader in) {
+            this.in = in;
+        }
+
+        /** Line number where the last record returned by next() started. */
+        public long getRecordLine() {
+            return recordLine;
+        }
+
+        /** Next record, or null at end of input. Blank lines are skipped. */
+        public List<String> next() throws IOException {
+            int c;
+            while ((c = read()) == '\r' || c == '\n') {
+                if (c == '\n') line++;
+            }
+            if (c < 0) return null;
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) throw new IOException("Unterminated quoted field at line " + recordLine);
+                    if (c == '"') {
+                        int n = read();
+                        if (n == '"') field.append('"');
+                        else {
+                            quoted = false;
+                            c = n;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == '\r' || c < 0) {
+                    if (c == '\r' && peek() == '\n') read();
+                    if (c >= 0) line++;
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (pos == len) {
+                len = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (len <= 0) {
+                    len = 0;
+                    return -1;
+                }
+            }
+            return buf[pos++];
+        }
+
+        private int peek() throws IOException {
+            int c = read();
+            if (c >= 0) pos--;
+            return c;
+        }
+    }
+
+    public static void writeRecord(Writer out, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) out.write(',');
+            writeField(out, fields[i]);
+        }
+        out.write('\n');
+    }
+
+    private static void writeField(Writer out, String v) throws IOException {
+        if (v == null) return;
+        boolean quote = false;
+        for (int i = 0; i < v.length() && !quote; i++) {
+            char ch = v.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        if (!quote) {
+            out.write(v);
+            return;
+        }
+        out.write('"');
+        out.write(v.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,406 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logger. Callers only claim a slot in a preallocated ring
+ * buffer and store the message template and its arguments; a background
+ * thread formats the lines and writes them to the console or a rolling file.
+ * The level is checked before anything is stored, so disabled calls cost a
+ * comparison.
+ *
+ * Messages use {} placeholders: {@code Log.info("Product {} moved by {}", id, delta)}.
+ * A trailing Throwable without a placeholder has its stack trace appended.
+ * Arguments are rendered later on the flusher thread, so pass values that
+ * will not change (ids, strings, frozen products).
+ *
+ * Configured with system properties: wms.log.level, wms.log.file,
+ * wms.log.maxFileMb, wms.log.maxFiles, wms.log.bufferSize and wms.log.overflow
+ * (drop: when the buffer is full DEBUG and INFO events are dropped and
+ * counted, WARN and ERROR wait; block: every event waits).
+ */
+public final class Log {
+    private Log() {}
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static volatile Level threshold = parseLevel(System.getProperty("wms.log.level", "INFO"));
+    private static final boolean BLOCK_WHEN_FULL = "block".equalsIgnoreCase(System.getProperty("wms.log.overflow", "drop"));
+
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(64, Integer.getInteger("wms.log.bufferSize", 8192)));
+    private static final int MASK = CAPACITY - 1;
+    private static final Event[] RING = new Event[CAPACITY];
+    // slot i is free for position p when sequence == p, and holds a published event when sequence == p + 1
+    private static final AtomicLongArray SEQUENCES = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong TAIL = new AtomicLong();
+    private static volatile long head;      // written by the flusher only
+    private static volatile long written;   // everything before this is in the sink
+    // set while the flusher is parked with nothing to do; the next producer wakes it
+    private static volatile boolean idle;
+    private static final Object FLUSHED = new Object();
+    private static int flushWaiters;        // guarded by FLUSHED
+
+    private static final AtomicLong droppedSinceReport = new AtomicLong();
+    private static final Metrics.Counter DROPPED = Metrics.counter("log.dropped");
+
+    private static final Sink SINK = Sink.fromSystemProperties();
+    private static final Thread FLUSHER;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            RING[i] = new Event();
+            SEQUENCES.set(i, i);
+        }
+        FLUSHER = new Thread(Log::runFlusher, "log-flusher");
+        FLUSHER.setDaemon(true);
+        FLUSHER.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-shutdown"));
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold.ordinal();
+    }
+
+    public static boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level;
+    }
+
+    public static void debug(String msg) { if (isEnabled(Level.DEBUG)) enqueue(Level.DEBUG, msg, null, null, null, 0); }
+    public static void debug(String fmt, Object a) { if (isEnabled(Level.DEBUG)) enqueue(Level.DEBUG, fmt, a, null, null, 1); }
+    public static void debug(String fmt, Object a, Object b) { if (isEnabled(Level.DEBUG)) enqueue(Level.DEBUG, fmt, a, b, null, 2); }
+    public static void debug(String fmt, Object... args) { if (isEnabled(Level.DEBUG)) enqueue(Level.DEBUG, fmt, null, null, args, args.length); }
+
+    public static void info(String msg) { if (isEnabled(Level.INFO)) enqueue(Level.INFO, msg, null, null, null, 0); }
+    public static void info(String fmt, Object a) { if (isEnabled(Level.INFO)) enqueue(Level.INFO, fmt, a, null, null, 1); }
+    public static void info(String fmt, Object a, Object b) { if (isEnabled(Level.INFO)) enqueue(Level.INFO, fmt, a, b, null, 2); }
+    public static void info(String fmt, Object... args) { if (isEnabled(Level.INFO)) enqueue(Level.INFO, fmt, null, null, args, args.length); }
+
+    public static void warn(String msg) { if (isEnabled(Level.WARN)) enqueue(Level.WARN, msg, null, null, null, 0); }
+    public static void warn(String fmt, Object a) { if (isEnabled(Level.WARN)) enqueue(Level.WARN, fmt, a, null, null, 1); }
+    public static void warn(String fmt, Object a, Object b) { if (isEnabled(Level.WARN)) enqueue(Level.WARN, fmt, a, b, null, 2); }
+    public static void warn(String fmt, Object... args) { if (isEnabled(Level.WARN)) enqueue(Level.WARN, fmt, null, null, args, args.length); }
+
+    public static void error(String msg) { if (isEnabled(Level.ERROR)) enqueue(Level.ERROR, msg, null, null, null, 0); }
+    public static void error(String fmt, Object a) { if (isEnabled(Level.ERROR)) enqueue(Level.ERROR, fmt, a, null, null, 1); }
+    public static void error(String fmt, Object a, Object b) { if (isEnabled(Level.ERROR)) enqueue(Level.ERROR, fmt, a, b, null, 2); }
+    public static void error(String fmt, Object... args) { if (isEnabled(Level.ERROR)) enqueue(Level.ERROR, fmt, null, null, args, args.length); }
+
+    /** Waits (up to 5 s) until everything logged so far has been written out. */
+    public static void flush() {
+        long target = TAIL.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        synchronized (FLUSHED) {
+            flushWaiters++;
+            try {
+                long left;
+                while (written < target && (left = deadline - System.nanoTime()) > 0 && FLUSHER.isAlive()) {
+                    LockSupport.unpark(FLUSHER);
+                    FLUSHED.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(left)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                flushWaiters--;
+            }
+        }
+    }
+
+    // ---------------- producers ----------------
+
+    private static final class Event {
+        Level level;
+        long millis;
+        String thread;
+        String format;
+        Object a;
+        Object b;
+        Object[] args;
+        int argCount;
+
+        Object arg(int i) {
+            if (args != null) return args[i];
+            return i == 0 ? a : b;
+        }
+
+        void clear() {
+            thread = null;
+            format = null;
+            a = null;
+            b = null;
+            args = null;
+        }
+    }
+
+    private static void enqueue(Level level, String format, Object a, Object b, Object[] args, int argCount) {
+        long pos;
+        while ((pos = claim()) < 0) {
+            if (!BLOCK_WHEN_FULL && level.ordinal() < Level.WARN.ordinal()) {
+                DROPPED.increment();
+                droppedSinceReport.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(FLUSHER);
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        int i = (int) pos & MASK;
+        Event e = RING[i];
+        e.level = level;
+        e.millis = System.currentTimeMillis();
+        e.thread = Thread.currentThread().getName();
+        e.format = format;
+        e.a = a;
+        e.b = b;
+        e.args = args;
+        e.argCount = argCount;
+        SEQUENCES.set(i, pos + 1); // publishes the fields above
+        if (idle) LockSupport.unpark(FLUSHER);
+    }
+
+    // The claimed position, or -1 when the ring is full
+    private static long claim() {
+        while (true) {
+            long pos = TAIL.get();
+            long seq = SEQUENCES.get((int) pos & MASK);
+            if (seq == pos) {
+                if (TAIL.compareAndSet(pos, pos + 1)) return pos;
+            } else if (seq < pos) {
+                return -1; // the flusher has not freed this slot yet
+            }
+            // another producer took the slot; retry with the new tail
+        }
+    }
+
+    // ---------------- flusher ----------------
+
+    private static final StringBuilder line = new StringBuilder(256);
+    private static final DateTimeFormatter TF =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss", Locale.ROOT).withZone(ZoneId.systemDefault());
+    private static long cachedSecond = Long.MIN_VALUE;
+    private static String cachedStamp;
+
+    private static void runFlusher() {
+        while (true) {
+            long pos = head;
+            int drained = 0;
+            while (true) {
+                int i = (int) pos & MASK;
+                if (SEQUENCES.get(i) != pos + 1) break;
+                Event e = RING[i];
+                write(e);
+                e.clear();
+                SEQUENCES.set(i, pos + CAPACITY);
+                head = ++pos;
+                drained++;
+            }
+            long dropped = droppedSinceReport.getAndSet(0);
+            if (dropped > 0) {
+                line.setLength(0);
+                stamp(System.currentTimeMillis());
+                line.append(" WARN [log-flusher] ").append(dropped).append(" log events dropped, buffer full");
+                SINK.write(Level.WARN, line);
+            }
+            if (drained == 0) {
+                SINK.flush();
+                written = pos;
+                synchronized (FLUSHED) {
+                    if (flushWaiters > 0) FLUSHED.notifyAll();
+                }
+                // announce the park, then look once more: a producer either sees idle or is seen here
+                idle = true;
+                if (SEQUENCES.get((int) pos & MASK) != pos + 1) LockSupport.park();
+                idle = false;
+            }
+        }
+    }
+
+    private static void write(Event e) {
+        line.setLength(0);
+        stamp(e.millis);
+        line.append(' ').append(e.level).append(" [").append(e.thread).append("] ");
+        Throwable thrown = render(e);
+        if (thrown != null) appendStackTrace(thrown);
+        SINK.write(e.level, line);
+    }
+
+    private static void stamp(long millis) {
+        long second = millis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedStamp = TF.format(Instant.ofEpochMilli(millis));
+        }
+        int ms = (int) (millis % 1000);
+        line.append(cachedStamp).append('.');
+        if (ms < 100) line.append('0');
+        if (ms < 10) line.append('0');
+        line.append(ms);
+    }
+
+    // Substitutes {} placeholders; returns a trailing Throwable that no placeholder used
+    private static Throwable render(Event e) {
+        String f = e.format;
+        if (f == null) {
+            line.append("null");
+            return null;
+        }
+        int used = 0;
+        int from = 0;
+        while (used < e.argCount) {
+            int at = f.indexOf("{}", from);
+            if (at < 0) break;
+            line.append(f, from, at);
+            appendArg(e.arg(used++));
+            from = at + 2;
+        }
+        line.append(f, from, f.length());
+        if (used < e.argCount && e.arg(e.argCount - 1) instanceof Throwable) {
+            return (Throwable) e.arg(e.argCount - 1);
+        }
+        return null;
+    }
+
+    private static void appendArg(Object o) {
+        try {
+            line.append(o);
+        } catch (RuntimeException ex) {
+            line.append("[toString failed: ").append(ex).append(']');
+        }
+    }
+
+    private static void appendStackTrace(Throwable t) {
+        StringWriter sw = new StringWriter();
+        t.printStackTrace(new PrintWriter(sw));
+        line.append(System.lineSeparator()).append(sw.toString().trim());
+    }
+
+    private static Level parseLevel(String s) {
+        try {
+            return Level.valueOf(s.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    // ---------------- sinks ----------------
+
+    private interface Sink {
+        void write(Level level, CharSequence line);
+
+        void flush();
+
+        static Sink fromSystemProperties() {
+            String file = System.getProperty("wms.log.file");
+            if (file == null || file.isEmpty()) return new ConsoleSink();
+            long maxBytes = Long.getLong("wms.log.maxFileMb", 10) * 1024 * 1024;
+            int maxFiles = Integer.getInteger("wms.log.maxFiles", 5);
+            try {
+                return new RollingFileSink(Paths.get(file), maxBytes, maxFiles);
+            } catch (IOException e) {
+                System.err.println("Cannot open log file " + file + " (" + e.getMessage() + "); logging to the console");
+                return new ConsoleSink();
+            }
+        }
+    }
+
+    // DEBUG and INFO to stdout, WARN and ERROR to stderr
+    private static final class ConsoleSink implements Sink {
+        private final PrintStream out = System.out;
+        private final PrintStream err = System.err;
+
+        @Override
+        public void write(Level level, CharSequence line) {
+            PrintStream s = level.ordinal() >= Level.WARN.ordinal() ? err : out;
+            s.append(line).append(System.lineSeparator());
+        }
+
+        @Override
+        public void flush() {
+            out.flush();
+            err.flush();
+        }
+    }
+
+    /** Appends to file; past maxBytes it becomes file.1, file.1 becomes file.2, ... up to maxFiles. */
+    private static final class RollingFileSink implements Sink {
+        private final Path file;
+        private final long maxBytes;
+        private final int maxFiles;
+        private Writer out;
+        private long size;
+
+        RollingFileSink(Path file, long maxBytes, int maxFiles) throws IOException {
+            this.file = file;
+            this.maxBytes = Math.max(1024, maxBytes);
+            this.maxFiles = Math.max(1, maxFiles);
+            open();
+        }
+
+        private void open() throws IOException {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            size = Files.exists(file) ? Files.size(file) : 0;
+            out = new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                    StandardCharsets.UTF_8), 64 * 1024);
+        }
+
+        @Override
+        public void write(Level level, CharSequence line) {
+            try {
+                if (size >= maxBytes) roll();
+                out.append(line).append(System.lineSeparator());
+                size += line.length() + 1; // close enough: most log text is ASCII
+            } catch (IOException e) {
+                System.err.println("Log write failed: " + e.getMessage() + ": " + line);
+            }
+        }
+
+        private void roll() throws IOException {
+            out.close();
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path from = sibling(i);
+                if (Files.exists(from)) Files.move(from, sibling(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(file, sibling(1), StandardCopyOption.REPLACE_EXISTING);
+            open();
+        }
+
+        private Path sibling(int n) {
+            return file.resolveSibling(file.getFileName() + "." + n);
+        }
+
+        @Override
+        public void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Log flush failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and latency histograms for the hot paths.
+ *
+ * Look metrics up once (static final fields) and record on them; recording
+ * never allocates or locks. Histograms are log-linear like HdrHistogram: 16
+ * sub-buckets per power of two, so any recorded value is reported within
+ * about 6%. Timers record nanoseconds and are printed in microseconds.
+ *
+ * Set {@code wms.metrics.dumpSeconds} to log a text dump periodically; the
+ * API server also serves the registry at /metrics.
+ */
+public final class Metrics {
+    private Metrics() {}
+
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService dumper;
+
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /** A histogram of nanosecond durations. */
+    public static Histogram timer(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new Histogram(true));
+    }
+
+    /** A histogram of plain values, e.g. batch sizes. */
+    public static Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new Histogram(false));
+    }
+
+    public static final class Counter {
+        private final LongAdder adder = new LongAdder();
+
+        public void increment() {
+            adder.increment();
+        }
+
+        public void add(long n) {
+            adder.add(n);
+        }
+
+        public long get() {
+            return adder.sum();
+        }
+    }
+
+    public static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        // values up to 2^44 (about 4.9 hours in ns); larger ones land in the last bucket
+        private static final int MAX_EXPONENT = 44;
+        private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+        private final boolean nanos;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(boolean nanos) {
+            this.nanos = nanos;
+        }
+
+        public void record(long value) {
+            if (value < 0) value = 0;
+            counts.incrementAndGet(bucket(value));
+            count.increment();
+            sum.add(value);
+            long m;
+            while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+                // lost a race with a larger value; re-check
+            }
+        }
+
+        /** Records System.nanoTime() - startNanos. */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public Snapshot snapshot() {
+            long[] c = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                c[i] = counts.get(i);
+                total += c[i];
+            }
+            return new Snapshot(nanos, c, total, sum.sum(), max.get());
+        }
+
+        // values below SUB_COUNT are exact; above, the top SUB_BITS+1 bits pick the bucket
+        static int bucket(long v) {
+            if (v < SUB_COUNT) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            if (exp > MAX_EXPONENT) return BUCKETS - 1;
+            int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+
+        // the largest value that falls in bucket i
+        static long upperBound(int i) {
+            if (i < SUB_COUNT) return i;
+            int exp = i / SUB_COUNT + SUB_BITS - 1;
+            int sub = i % SUB_COUNT;
+            return ((long) (SUB_COUNT + sub + 1) << (exp - SUB_BITS)) - 1;
+        }
+    }
+
+    /** A consistent-enough copy of one histogram; percentiles are bucket upper bounds. */
+    public static final class Snapshot {
+        private final boolean nanos;
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(boolean nanos, long[] counts, long count, long sum, long max) {
+            this.nanos = nanos;
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() { return count; }
+        public long getMax() { return max; }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /** The value at quantile q (0..1), never above the recorded max. */
+        public long percentile(double q) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) return Math.min(Histogram.upperBound(i), max);
+            }
+            return max;
+        }
+
+        boolean isNanos() {
+            return nanos;
+        }
+    }
+
+    // ---------------- export ----------------
+
+    /** One line per metric, sorted by name; timers in microseconds. */
+    public static String dumpText() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Counter> e : new TreeMap<>(COUNTERS).entrySet()) {
+            out.append(e.getKey()).append(" count=").append(e.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            Snapshot s = e.getValue().snapshot();
+            if (s.getCount() == 0) continue;
+            String unit = s.isNanos() ? "us" : "";
+            out.append(e.getKey())
+                    .append(" count=").append(s.getCount())
+                    .append(" mean=").append(format(s.getMean(), s)).append(unit)
+                    .append(" p50=").append(format(s.percentile(0.50), s)).append(unit)
+                    .append(" p90=").append(format(s.percentile(0.90), s)).append(unit)
+                    .append(" p99=").append(format(s.percentile(0.99), s)).append(unit)
+                    .append(" p999=").append(format(s.percentile(0.999), s)).append(unit)
+                    .append(" max=").append(format(s.getMax(), s)).append(unit)
+                    .append('\n');
+        }
+        return out.toString();
+    }
+
+    /** {"counters":{name:n,...},"histograms":{name:{count,mean,p50,...,unit},...}} */
+    public static String dumpJson() {
+        StringBuilder out = new StringBuilder("{\"counters\":{");
+        boolean first = true;
+        for (Map.Entry<String, Counter> e : new TreeMap<>(COUNTERS).entrySet()) {
+            if (!first) out.append(',');
+            first = false;
+            out.append('"').append(e.getKey()).append("\":").append(e.getValue().get());
+        }
+        out.append("},\"histograms\":{");
+        first = true;
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            Snapshot s = e.getValue().snapshot();
+            if (!first) out.append(',');
+            first = false;
+            out.append('"').append(e.getKey()).append("\":{")
+                    .append("\"unit\":\"").append(s.isNanos() ? "us" : "count").append('"')
+                    .append(",\"count\":").append(s.getCount())
+                    .append(",\"mean\":").append(format(s.getMean(), s))
+                    .append(",\"p50\":").append(format(s.percentile(0.50), s))
+                    .append(",\"p90\":").append(format(s.percentile(0.90), s))
+                    .append(",\"p99\":").append(format(s.percentile(0.99), s))
+                    .append(",\"p999\":").append(format(s.percentile(0.999), s))
+                    .append(",\"max\":").append(format(s.getMax(), s))
+                    .append('}');
+        }
+        return out.append("}}").toString();
+    }
+
+    private static String format(double v, Snapshot s) {
+        return String.format(Locale.ROOT, "%.1f", s.isNanos() ? v / 1000.0 : v);
+    }
+
+    /** Logs dumpText() every wms.metrics.dumpSeconds seconds; does nothing when unset or 0. */
+    public static synchronized void startPeriodicDump() {
+        long seconds = Long.getLong("wms.metrics.dumpSeconds", 0);
+        if (seconds <= 0 || dumper != null) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> Log.info("Metrics:\n{}", dumpText()), seconds, seconds, TimeUnit.SECONDS);
+    }
+}
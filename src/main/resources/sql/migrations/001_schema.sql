@@ -0,0 +1,65 @@
+PRAGMA foreign_keys = ON;
+
+CREATE TABLE IF NOT EXISTS supplier (
+    supplier_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    name TEXT NOT NULL,
+    contact TEXT
+);
+
+CREATE TABLE IF NOT EXISTS product (
+    product_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    sku TEXT UNIQUE NOT NULL,
+    name TEXT NOT NULL,
+    description TEXT,
+    price REAL NOT NULL,
+    quantity INTEGER NOT NULL DEFAULT 0,
+    min_stock INTEGER NOT NULL DEFAULT 5,
+    supplier_id INTEGER,
+    FOREIGN KEY (supplier_id) REFERENCES supplier(supplier_id) ON DELETE SET NULL
+);
+
+-- keyset pagination and ordered listing walk (name, product_id)
+CREATE INDEX IF NOT EXISTS idx_product_name ON product(name, product_id);
+
+CREATE TABLE IF NOT EXISTS inventory_transaction (
+    tx_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    product_id INTEGER NOT NULL,
+    change INTEGER NOT NULL,
+    tx_type TEXT NOT NULL,
+    note TEXT,
+    tx_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (product_id) REFERENCES product(product_id) ON DELETE CASCADE
+);
+
+-- per-product history, and the lookup behind ON DELETE CASCADE from product
+CREATE INDEX IF NOT EXISTS idx_tx_product_time ON inventory_transaction(product_id, tx_time);
+-- time-window history and archival
+CREATE INDEX IF NOT EXISTS idx_tx_time ON inventory_transaction(tx_time);
+
+-- archive partitions of inventory_transaction, one table per calendar month.
+-- Each holds rows in [from_time, to_time), and every archived row is older than any row left in the hot table
+CREATE TABLE IF NOT EXISTS tx_archive (
+    table_name TEXT PRIMARY KEY,
+    from_time TEXT NOT NULL,
+    to_time TEXT NOT NULL
+);
+
+-- pre-aggregated stock changes per product, UTC hour or day, and tx_type.
+-- Written in the same transaction as the ledger rows and kept when those rows are archived
+CREATE TABLE IF NOT EXISTS stock_rollup_hourly (
+    product_id INTEGER NOT NULL,
+    bucket TEXT NOT NULL,
+    tx_type TEXT NOT NULL,
+    units INTEGER NOT NULL,
+    movements INTEGER NOT NULL,
+    PRIMARY KEY (product_id, bucket, tx_type)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS stock_rollup_daily (
+    product_id INTEGER NOT NULL,
+    bucket TEXT NOT NULL,
+    tx_type TEXT NOT NULL,
+    units INTEGER NOT NULL,
+    movements INTEGER NOT NULL,
+    PRIMARY KEY (product_id, bucket, tx_type)
+) WITHOUT ROWID;
@@ -0,0 +1,23 @@
+-- catalog change counter: every insert, update and delete on product bumps it,
+-- whoever makes the change. The product cache snapshot is only reused while it still matches
+CREATE TABLE IF NOT EXISTS catalog_meta (
+    key TEXT PRIMARY KEY,
+    value INTEGER NOT NULL
+);
+
+INSERT OR IGNORE INTO catalog_meta (key, value) VALUES ('product_changes', 0);
+
+CREATE TRIGGER IF NOT EXISTS trg_product_insert_count AFTER INSERT ON product
+BEGIN
+    UPDATE catalog_meta SET value = value + 1 WHERE key = 'product_changes';
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_product_update_count AFTER UPDATE ON product
+BEGIN
+    UPDATE catalog_meta SET value = value + 1 WHERE key = 'product_changes';
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_product_delete_count AFTER DELETE ON product
+BEGIN
+    UPDATE catalog_meta SET value = value + 1 WHERE key = 'product_changes';
+END;
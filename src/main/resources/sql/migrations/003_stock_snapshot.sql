@@ -0,0 +1,16 @@
+-- event-sourced stock: inventory_transaction is the source of truth and product.quantity a projection of it.
+-- stock_snapshot holds each product's quantity folded up to the global watermark catalog_meta 'stock_snapshot_tx',
+-- and a product's ledger quantity is its snapshot (0 if none) plus the changes with tx_id above the watermark
+CREATE TABLE IF NOT EXISTS stock_snapshot (
+    product_id INTEGER PRIMARY KEY,
+    quantity INTEGER NOT NULL,
+    taken_at TEXT NOT NULL,
+    FOREIGN KEY (product_id) REFERENCES product(product_id) ON DELETE CASCADE
+);
+
+-- existing stock is taken as it stands: the baseline covers every transaction written so far
+INSERT OR IGNORE INTO stock_snapshot (product_id, quantity, taken_at)
+SELECT product_id, quantity, CURRENT_TIMESTAMP FROM product;
+
+INSERT OR IGNORE INTO catalog_meta (key, value)
+VALUES ('stock_snapshot_tx', IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'inventory_transaction'), 0));
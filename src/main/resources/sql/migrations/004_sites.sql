@@ -0,0 +1,10 @@
+-- sites (warehouses). Each keeps its locations, bin stock and bin movements in its own SQLite file,
+-- a site shard, so writes at different sites never share a file or a write lock.
+-- product.quantity stays the total: bin movements are folded into it, and into the ledger, in batches
+CREATE TABLE IF NOT EXISTS site (
+    site_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    code TEXT UNIQUE NOT NULL,
+    name TEXT NOT NULL,
+    -- the last bin movement of the shard folded into product.quantity, advanced in the same transaction
+    synced_move_id INTEGER NOT NULL DEFAULT 0
+);
@@ -0,0 +1,8 @@
+-- the part of product.quantity that sits in site bins, as folded so far. Catalog movements, stock counts
+-- and imports only act on the rest, so they can never spend stock that is in a bin
+ALTER TABLE product ADD COLUMN located_quantity INTEGER NOT NULL DEFAULT 0;
+-- bin movements folded before this column existed carry the ledger note 'site <code>'
+UPDATE product SET located_quantity = MAX(0, MIN(quantity,
+    (SELECT IFNULL(SUM(t.change), 0) FROM inventory_transaction t
+     WHERE t.product_id = product.product_id AND t.note LIKE 'site %')))
+WHERE product_id IN (SELECT product_id FROM inventory_transaction WHERE note LIKE 'site %');
@@ -1,29 +0,0 @@
-PRAGMA foreign_keys = ON;
-
-CREATE TABLE IF NOT EXISTS supplier (
-    supplier_id INTEGER PRIMARY KEY AUTOINCREMENT,
-    name TEXT NOT NULL,
-    contact TEXT
-);
-
-CREATE TABLE IF NOT EXISTS product (
-    product_id INTEGER PRIMARY KEY AUTOINCREMENT,
-    sku TEXT UNIQUE NOT NULL,
-    name TEXT NOT NULL,
-    description TEXT,
-    price REAL NOT NULL,
-    quantity INTEGER NOT NULL DEFAULT 0,
-    min_stock INTEGER NOT NULL DEFAULT 5,
-    supplier_id INTEGER,
-    FOREIGN KEY (supplier_id) REFERENCES supplier(supplier_id) ON DELETE SET NULL
-);
-
-CREATE TABLE IF NOT EXISTS inventory_transaction (
-    tx_id INTEGER PRIMARY KEY AUTOINCREMENT,
-    product_id INTEGER NOT NULL,
-    change INTEGER NOT NULL,
-    tx_type TEXT NOT NULL,
-    note TEXT,
-    tx_time DATETIME DEFAULT CURRENT_TIMESTAMP,
-    FOREIGN KEY (product_id) REFERENCES product(product_id) ON DELETE CASCADE
-);
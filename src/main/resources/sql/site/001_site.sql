@@ -0,0 +1,32 @@
+-- schema of a site shard (one file per site, see migration 004_sites.sql in the catalog database).
+-- product_id refers to the catalog database, so it has no foreign key here
+
+-- zone and bin within the site, e.g. zone 'A', bin 'A-01-03'
+CREATE TABLE IF NOT EXISTS location (
+    location_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    zone TEXT NOT NULL,
+    bin TEXT NOT NULL,
+    UNIQUE (zone, bin)
+);
+
+CREATE TABLE IF NOT EXISTS bin_stock (
+    location_id INTEGER NOT NULL,
+    product_id INTEGER NOT NULL,
+    quantity INTEGER NOT NULL CHECK (quantity >= 0),
+    PRIMARY KEY (location_id, product_id),
+    FOREIGN KEY (location_id) REFERENCES location(location_id)
+) WITHOUT ROWID;
+
+-- where a product is stocked across the site's bins
+CREATE INDEX IF NOT EXISTS idx_bin_stock_product ON bin_stock(product_id);
+
+-- the site's movement log, move_id order is commit order, which the catalog folds by
+CREATE TABLE IF NOT EXISTS bin_movement (
+    move_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    location_id INTEGER NOT NULL,
+    product_id INTEGER NOT NULL,
+    change INTEGER NOT NULL,
+    tx_type TEXT NOT NULL,
+    note TEXT,
+    tx_time TEXT NOT NULL
+);
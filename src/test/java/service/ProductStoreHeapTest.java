@@ -0,0 +1,79 @@
+package service;
+
+import model.Product;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Heap held by the cache stores, counted by JOL over everything reachable
+ * from the store. Stores are filled through reload(), as loadCache() does;
+ * the products are generated as the store takes them, so only what the store
+ * keeps is counted.
+ */
+class ProductStoreHeapTest {
+
+    private static final int PRODUCTS = 1_000_000;
+    private static final String[] WORDS = {
+            "steel", "bolt", "washer", "cable", "widget", "bracket", "hinge", "panel",
+            "screw", "valve", "gasket", "spring", "clamp", "relay", "switch", "sensor"};
+
+    @Test
+    void columnarStoreRetainsAThirdOfTheMapStore() {
+        long map = loadedBytes(new MapProductStore(), PRODUCTS);
+        long columnar = loadedBytes(new ColumnarProductStore(), PRODUCTS);
+        String sizes = PRODUCTS + " products: map store " + (map >> 10) + " KiB, columnar store "
+                + (columnar >> 10) + " KiB";
+        assertTrue(columnar > 0, sizes);
+        // a third, less 10%
+        assertTrue(map * 10 >= columnar * 27, sizes);
+    }
+
+    @Test
+    void columnarEstimateIsCloseToTheMeasuredHeap() {
+        ColumnarProductStore store = new ColumnarProductStore();
+        long measured = loadedBytes(store, PRODUCTS);
+        long estimated = store.estimatedHeapBytes();
+        String sizes = "measured " + (measured >> 10) + " KiB, estimated " + (estimated >> 10) + " KiB";
+        assertTrue(Math.abs(estimated - measured) < measured / 10, sizes);
+    }
+
+    @Test
+    void rewritingEveryStringDoesNotGrowTheColumnarStore() {
+        int n = 100_000;
+        ColumnarProductStore store = new ColumnarProductStore();
+        long loaded = loadedBytes(store, n);
+        long largest = 0;
+        for (int round = 1; round <= 20; round++) {
+            for (int i = 0; i < n; i++) {
+                Product p = product(i);
+                p.setSku(p.getSku() + "-" + round);
+                p.setName(p.getName() + " r" + round);
+                p.setDescription(p.getDescription() + " r" + round);
+                store.put(p);
+            }
+            largest = Math.max(largest, GraphLayout.parseInstance(store).totalSize());
+        }
+        String sizes = "loaded " + (loaded >> 10) + " KiB, largest after edits " + (largest >> 10) + " KiB";
+        assertTrue(largest < 3 * loaded, sizes);
+    }
+
+    private static long loadedBytes(ProductStore store, int n) {
+        store.reload(() -> IntStream.range(0, n).mapToObj(i -> product(i).freeze()).iterator());
+        assertEquals(n, store.size());
+        return GraphLayout.parseInstance(store).totalSize();
+    }
+
+    private static Product product(int n) {
+        String name = WORDS[n % WORDS.length] + " " + WORDS[(n / 16) % WORDS.length] + " " + (n % 997);
+        Product p = new Product(String.format("SKU-%08d", n), name, 1 + (n % 500) / 10.0, 100 + n % 50, 10);
+        p.setProductId(n + 1);
+        p.setDescription("item " + n);
+        if (n % 4 != 0) p.setSupplierId(1 + n % 20);
+        return p;
+    }
+}
@@ -0,0 +1,227 @@
+package service;
+
+import dao.DbManager;
+import model.Product;
+import model.StockLevel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Concurrent receipts and dispatches through WarehouseService: the stored,
+ * cached and ledger quantities must agree, and every low-stock crossing must
+ * be reported exactly once. Runs on warehouse.db in the working directory,
+ * which the test task points at build/tmp/test; the SKUs are new on every
+ * run, so rows left by earlier runs do not matter.
+ */
+class StockStressTest {
+
+    private static final int THREADS = 8;
+    private static final int MOVES_PER_THREAD = 2000;
+    private static final int START_QUANTITY = 30;
+    private static final int MIN_STOCK = 20;
+    private static final String RUN = Long.toString(System.currentTimeMillis(), 36);
+
+    private WarehouseService service;
+    // per product, in the order the service published them
+    private final Map<Integer, List<Integer>> quantities = new ConcurrentHashMap<>();
+    private final Map<Integer, List<LowStockEvent.Type>> crossings = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void openDatabase() throws Exception {
+        DbManager.initDatabase();
+        service = new WarehouseService();
+        service.addChangeListener(e -> {
+            if (e.getType() == ProductChangeEvent.Type.QUANTITY_CHANGED) {
+                listOf(quantities, e.getProductId()).add(e.getNewQuantity());
+            }
+        });
+        service.addLowStockListener(e -> listOf(crossings, e.getProductId()).add(e.getType()));
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        service.shutdown();
+        DbManager.shutdown();
+    }
+
+    @Test
+    void sharedProductsMatchTheLedgerAndCrossOnce() throws Exception {
+        int[] ids = createProducts("SHARED-", 4);
+        AtomicLongArray applied = new AtomicLongArray(ids.length);
+        runThreads(thread -> {
+            Random random = new Random(thread);
+            List<CompletableFuture<StockLevel>> pending = new ArrayList<>();
+            List<int[]> moves = new ArrayList<>();
+            for (int k = 0; k < MOVES_PER_THREAD; k++) {
+                int product = random.nextInt(ids.length);
+                int delta = delta(random);
+                pending.add(service.submitStockChange(ids[product], delta, delta > 0 ? "receive" : "dispatch", null));
+                moves.add(new int[]{product, delta});
+                if (pending.size() == 50 || k == MOVES_PER_THREAD - 1) {
+                    for (int i = 0; i < pending.size(); i++) {
+                        if (succeeded(pending.get(i))) applied.addAndGet(moves.get(i)[0], moves.get(i)[1]);
+                    }
+                    pending.clear();
+                    moves.clear();
+                }
+            }
+        });
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(START_QUANTITY + applied.get(i), quantityOf(ids[i]), "product " + ids[i]);
+            assertConsistent(ids[i]);
+        }
+    }
+
+    @Test
+    void disjointProductsKeepEachThreadsOrder() throws Exception {
+        int[] ids = createProducts("OWN-", THREADS);
+        runThreads(thread -> {
+            Random random = new Random(100 + thread);
+            int id = ids[thread];
+            // one thread per product, so the outcome of every movement is known in advance
+            int expected = START_QUANTITY;
+            List<LowStockEvent.Type> expectedCrossings = new ArrayList<>();
+            for (int k = 0; k < MOVES_PER_THREAD; k++) {
+                int delta = delta(random);
+                boolean accepted = expected + delta >= 0;
+                try {
+                    service.changeStock(id, delta, delta > 0 ? "receive" : "dispatch", null);
+                    assertTrue(accepted, "accepted a dispatch below zero");
+                } catch (SQLException e) {
+                    assertTrue(!accepted && e.getMessage().startsWith("Insufficient stock"), e.getMessage());
+                    continue;
+                }
+                LowStockEvent.Type crossing = crossing(expected, expected + delta);
+                if (crossing != null) expectedCrossings.add(crossing);
+                expected += delta;
+            }
+            assertEquals(expected, quantityOf(id), "product " + id);
+            assertEquals(expectedCrossings, crossings.getOrDefault(id, Collections.emptyList()), "product " + id);
+        });
+        for (int id : ids) assertConsistent(id);
+    }
+
+    // the published quantities chain from the start to the stored quantity,
+    // and the reported crossings are exactly the ones along that chain
+    private void assertConsistent(int id) throws SQLException {
+        int stored = quantityOf(id);
+        assertEquals(stored, service.findProduct(id).get().getQuantity(), "cached quantity of " + id);
+        assertEquals(stored, START_QUANTITY + movedInLedger(id), "ledger of " + id);
+        List<LowStockEvent.Type> expected = new ArrayList<>();
+        int previous = START_QUANTITY;
+        for (int quantity : quantities.getOrDefault(id, Collections.emptyList())) {
+            LowStockEvent.Type crossing = crossing(previous, quantity);
+            if (crossing != null) expected.add(crossing);
+            previous = quantity;
+        }
+        assertEquals(stored, previous, "last published quantity of " + id);
+        assertEquals(expected, crossings.getOrDefault(id, Collections.emptyList()), "crossings of " + id);
+    }
+
+    private int[] createProducts(String prefix, int n) throws SQLException {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            Product p = new Product(prefix + RUN + "-" + i, "stress " + i, 1, START_QUANTITY, MIN_STOCK);
+            ids[i] = service.createProduct(p).getProductId();
+        }
+        return ids;
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runThreads(Worker worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                done.add(pool.submit(() -> {
+                    worker.run(thread);
+                    return null;
+                }));
+            }
+            for (Future<?> f : done) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof AssertionError) throw (AssertionError) e.getCause();
+                    throw e;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // mostly small moves around the threshold, so products cross it in both directions many times
+    private static int delta(Random random) {
+        int size = 1 + random.nextInt(5);
+        return random.nextBoolean() ? size : -size;
+    }
+
+    private static LowStockEvent.Type crossing(int before, int after) {
+        if (before > MIN_STOCK && after <= MIN_STOCK) return LowStockEvent.Type.BECAME_LOW;
+        if (before <= MIN_STOCK && after > MIN_STOCK) return LowStockEvent.Type.RESTORED;
+        return null;
+    }
+
+    private static boolean succeeded(CompletableFuture<StockLevel> f) throws InterruptedException {
+        try {
+            f.get();
+            return true;
+        } catch (ExecutionException e) {
+            String message = String.valueOf(e.getCause().getMessage());
+            assertTrue(message.startsWith("Insufficient stock"), e.getCause().toString());
+            return false;
+        }
+    }
+
+    private static <T> List<T> listOf(Map<Integer, List<T>> map, int id) {
+        return map.computeIfAbsent(id, k -> Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    private static int quantityOf(int id) throws SQLException {
+        return queryInt("SELECT quantity FROM product WHERE product_id = ?", id);
+    }
+
+    // the receipts and dispatches recorded in the ledger, which are all this test makes
+    private static int movedInLedger(int id) throws SQLException {
+        return queryInt("SELECT IFNULL(SUM(change), 0) FROM inventory_transaction"
+                + " WHERE product_id = ? AND tx_type IN ('receive', 'dispatch')", id);
+    }
+
+    private static int queryInt(String sql, int id) throws SQLException {
+        try (Connection c = DbManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                int value = rs.next() ? rs.getInt(1) : -1;
+                c.commit();
+                return value;
+            }
+        }
+    }
+}